@@ -0,0 +1,51 @@
+package br.com.nerdslab.libraryapi.benchmark;
+
+import br.com.nerdslab.libraryapi.api.dto.BookDTO;
+import br.com.nerdslab.libraryapi.api.dto.LoanDTO;
+import br.com.nerdslab.libraryapi.api.resource.BookController;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BookControllerBenchmark {
+
+    private BookController controller;
+    private BookDTO filter;
+    private PageRequest pageRequest;
+    private Long popularBookId;
+
+    @Setup
+    public void setUp(SeededApplication application) {
+        controller = application.bean(BookController.class);
+        filter = BookDTO.builder().title("aventuras").build();
+        pageRequest = PageRequest.of(0, application.rows);
+        popularBookId = application.popularBook.getId();
+    }
+
+    @Benchmark
+    public Page<BookDTO> find() {
+        return controller.find(filter, pageRequest);
+    }
+
+    @Benchmark
+    public Page<LoanDTO> loansByBook() {
+        return controller.loansByBook(popularBookId, pageRequest);
+    }
+}
@@ -0,0 +1,114 @@
+package br.com.nerdslab.libraryapi.benchmark;
+
+import br.com.nerdslab.libraryapi.model.entity.Book;
+import br.com.nerdslab.libraryapi.model.repository.BookRepository;
+import br.com.nerdslab.libraryapi.service.BookSearchIndex;
+import br.com.nerdslab.libraryapi.service.BookService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.data.domain.Example;
+import org.springframework.data.domain.ExampleMatcher;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Catalog substring search through the trigram index against the former Example/CONTAINING scan.
+ * The reference run is {@code -p books=1000000}; the default keeps a local run short.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class BookSearchBenchmark {
+
+    private static final String[] WORDS = {
+            "aventuras", "castelo", "dragão", "espada", "floresta", "guerra", "herói", "ilha", "jardim", "lenda",
+            "mar", "noite", "oceano", "pedra", "rei", "sombra", "tempo", "vento", "xadrez", "zona"
+    };
+
+    @Param({"100000"})
+    public int books;
+
+    @Param({"xadrez", "sombra do 4242"})
+    public String title;
+
+    private ConfigurableApplicationContext context;
+    private BookService service;
+    private BookRepository repository;
+    private Book filter;
+    private Example<Book> example;
+    private PageRequest pageRequest;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = SeededApplication.boot("search");
+        service = context.getBean(BookService.class);
+        repository = context.getBean(BookRepository.class);
+        seed(context.getBean(JdbcTemplate.class));
+        context.getBean(BookSearchIndex.class).rebuild();
+
+        filter = Book.builder().title(title).build();
+        example = Example.of(filter,
+                ExampleMatcher
+                        .matching()
+                        .withIgnoreCase()
+                        .withIgnoreNullValues()
+                        .withStringMatcher(ExampleMatcher.StringMatcher.CONTAINING));
+        pageRequest = PageRequest.of(0, 20);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public Page<Book> example() {
+        return repository.findAll(example, pageRequest);
+    }
+
+    @Benchmark
+    public Page<Book> trigramIndex() {
+        return service.find(filter, pageRequest);
+    }
+
+    private void seed(JdbcTemplate jdbcTemplate) {
+        Random random = new Random(42);
+        List<Object[]> rows = new ArrayList<>(10_000);
+        for (int i = 0; i < books; i++) {
+            String bookTitle = WORDS[random.nextInt(WORDS.length)] + " do " + WORDS[random.nextInt(WORDS.length)] + " " + i;
+            String author = "Autor " + WORDS[random.nextInt(WORDS.length)] + " " + (i % 5000);
+            rows.add(new Object[]{i + 1L, bookTitle, author, "isbn-" + i});
+            if (rows.size() == 10_000) {
+                insert(jdbcTemplate, rows);
+            }
+        }
+        insert(jdbcTemplate, rows);
+        jdbcTemplate.execute(" alter sequence book_seq restart with " + (books + 1) + " ");
+    }
+
+    private void insert(JdbcTemplate jdbcTemplate, List<Object[]> rows) {
+        jdbcTemplate.batchUpdate(" insert into book (id, title, author, isbn) values (?, ?, ?, ?) ", rows);
+        rows.clear();
+    }
+}
@@ -0,0 +1,43 @@
+package br.com.nerdslab.libraryapi.benchmark;
+
+import br.com.nerdslab.libraryapi.model.entity.Book;
+import br.com.nerdslab.libraryapi.service.BookService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BookServiceBenchmark {
+
+    private BookService service;
+    private Book filter;
+    private PageRequest pageRequest;
+
+    @Setup
+    public void setUp(SeededApplication application) {
+        service = application.bean(BookService.class);
+        filter = Book.builder().title("aventuras").author("autor").build();
+        pageRequest = PageRequest.of(0, 20);
+    }
+
+    @Benchmark
+    public Page<Book> findByExample() {
+        return service.find(filter, pageRequest);
+    }
+}
@@ -0,0 +1,112 @@
+package br.com.nerdslab.libraryapi.benchmark;
+
+import br.com.nerdslab.libraryapi.api.dto.BookImportResultDTO;
+import br.com.nerdslab.libraryapi.model.entity.Book;
+import br.com.nerdslab.libraryapi.model.entity.Loan;
+import br.com.nerdslab.libraryapi.model.repository.BookRepository;
+import br.com.nerdslab.libraryapi.model.repository.LoanRepository;
+import br.com.nerdslab.libraryapi.service.BookImportService;
+import org.h2.tools.Server;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rows inserted per second by loan creation and book import. {@code batch=1} reserves one id per
+ * sequence call and sends one statement per row, as identity keys forced before; {@code batch=50}
+ * is the configured pooled-lo allocation with JDBC batching. The database is reached over H2's TCP
+ * server, so every statement pays a round trip as it would against a real database.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 3)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class InsertBenchmark {
+
+    private static final int ROWS = 500;
+
+    @Param({"1", "50"})
+    public int batch;
+
+    private Server server;
+    private ConfigurableApplicationContext context;
+    private LoanRepository loanRepository;
+    private BookImportService importService;
+    private TransactionTemplate transactionTemplate;
+    private Book book;
+    private long isbn;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException {
+        server = Server.createTcpServer("-tcpPort", "0", "-ifNotExists").start();
+        context = SeededApplication.boot("insert",
+                "spring.datasource.url=jdbc:h2:tcp://localhost:" + server.getPort() + "/mem:insert;DB_CLOSE_DELAY=-1",
+                "spring.jpa.properties.library-api.id.allocation-size=" + batch,
+                "spring.jpa.properties.hibernate.jdbc.batch_size=" + batch);
+        loanRepository = context.getBean(LoanRepository.class);
+        importService = context.getBean(BookImportService.class);
+        transactionTemplate = context.getBean(TransactionTemplate.class);
+        book = context.getBean(BookRepository.class)
+                .save(Book.builder().title("Popular").author("Autor").isbn("popular").build());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+        server.stop();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public List<Loan> createLoans() {
+        List<Loan> loans = new ArrayList<>(ROWS);
+        for (int i = 0; i < ROWS; i++) {
+            loans.add(Loan.builder()
+                    .book(book)
+                    .customer(SeededApplication.CUSTOMER)
+                    .customerEmail("fulano@email.com")
+                    .loanDate(LocalDate.now())
+                    .returned(true)
+                    .build());
+        }
+        return transactionTemplate.execute(status -> loanRepository.saveAll(loans));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public BookImportResultDTO importBooks() throws IOException {
+        StringBuilder input = new StringBuilder();
+        for (int i = 0; i < ROWS; i++) {
+            long next = isbn++;
+            input.append("{\"title\": \"Aventuras ").append(next)
+                    .append("\", \"author\": \"Autor\", \"isbn\": \"isbn-").append(next).append("\"}\n");
+        }
+        return importService.importBooks(
+                new ByteArrayInputStream(input.toString().getBytes(StandardCharsets.UTF_8)),
+                BookImportService.Format.NDJSON);
+    }
+}
@@ -0,0 +1,44 @@
+package br.com.nerdslab.libraryapi.benchmark;
+
+import br.com.nerdslab.libraryapi.api.dto.LoanDTO;
+import br.com.nerdslab.libraryapi.api.dto.LoanFilterDTO;
+import br.com.nerdslab.libraryapi.api.resource.LoanController;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LoanControllerBenchmark {
+
+    private LoanController controller;
+    private LoanFilterDTO filter;
+    private PageRequest pageRequest;
+
+    @Setup
+    public void setUp(SeededApplication application) {
+        controller = application.bean(LoanController.class);
+        filter = LoanFilterDTO.builder().isbn(SeededApplication.POPULAR_ISBN).customer(SeededApplication.CUSTOMER).build();
+        pageRequest = PageRequest.of(0, application.rows);
+    }
+
+    @Benchmark
+    public Page<LoanDTO> find() {
+        return controller.find(filter, pageRequest);
+    }
+}
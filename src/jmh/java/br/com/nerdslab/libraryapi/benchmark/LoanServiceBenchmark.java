@@ -0,0 +1,89 @@
+package br.com.nerdslab.libraryapi.benchmark;
+
+import br.com.nerdslab.libraryapi.model.entity.Book;
+import br.com.nerdslab.libraryapi.model.entity.Loan;
+import br.com.nerdslab.libraryapi.model.repository.BookRepository;
+import br.com.nerdslab.libraryapi.service.LoanService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.LocalDate;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LoanServiceBenchmark {
+
+    private LoanService service;
+    private Book book;
+
+    @Setup
+    public void setUp(SeededApplication application) {
+        service = application.bean(LoanService.class);
+        book = application.popularBook;
+    }
+
+    /**
+     * Every saved loan is already returned, so the availability check keeps passing
+     * while the loan history of the book grows as it would in production.
+     */
+    @Benchmark
+    public Loan save() {
+        Loan loan = Loan.builder()
+                .book(book)
+                .customer(SeededApplication.CUSTOMER)
+                .customerEmail("fulano@email.com")
+                .loanDate(LocalDate.now())
+                .returned(true)
+                .build();
+        return service.save(loan);
+    }
+
+    /**
+     * Each thread loans and returns a book of its own, so the threads only share the pool, the sequences and
+     * the tables. Compare a run with {@code -t 1} against this one to see how the loan path scales with threads.
+     */
+    @Benchmark
+    @Threads(Threads.MAX)
+    public Loan loanAndReturn(OwnBook own) {
+        Loan loan = service.save(Loan.builder()
+                .book(own.book)
+                .customer(SeededApplication.CUSTOMER)
+                .customerEmail("fulano@email.com")
+                .loanDate(LocalDate.now())
+                .build());
+        loan.setReturned(true);
+        return service.update(loan);
+    }
+
+    @State(Scope.Thread)
+    public static class OwnBook {
+
+        private static final AtomicInteger SEQUENCE = new AtomicInteger();
+
+        private Book book;
+
+        @Setup
+        public void setUp(SeededApplication application) {
+            book = application.bean(BookRepository.class).save(Book.builder()
+                    .title("Concorrente")
+                    .author("Autor")
+                    .isbn("thread-" + SEQUENCE.incrementAndGet())
+                    .build());
+        }
+    }
+}
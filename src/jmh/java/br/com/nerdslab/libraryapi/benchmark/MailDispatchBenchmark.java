@@ -0,0 +1,98 @@
+package br.com.nerdslab.libraryapi.benchmark;
+
+import br.com.nerdslab.libraryapi.service.EmailService;
+import com.icegreen.greenmail.util.GreenMail;
+import com.icegreen.greenmail.util.ServerSetup;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.autoconfigure.mail.MailProperties;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to deliver the late loan mail to {@code recipients} customers through an in-process SMTP server,
+ * by worker count and by messages per SMTP connection.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class MailDispatchBenchmark {
+
+    private static final int SMTP_PORT = 3125;
+
+    @Param({"100000"})
+    public int recipients;
+
+    @Param({"1", "4"})
+    public int threads;
+
+    @Param({"1", "50"})
+    public int batchSize;
+
+    private GreenMail smtp;
+    private ConfigurableApplicationContext context;
+    private EmailService emailService;
+    private Counter sent;
+    private List<String> mails;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        smtp = new GreenMail(new ServerSetup(SMTP_PORT, "localhost", ServerSetup.PROTOCOL_SMTP));
+        smtp.start();
+        context = SeededApplication.boot("mail",
+                "spring.mail.host=localhost",
+                "spring.mail.port=" + SMTP_PORT,
+                "spring.mail.properties.mail.smtp.starttls.enable=false",
+                "application.mail.dispatcher.threads=" + threads,
+                "application.mail.dispatcher.batch-size=" + batchSize,
+                "application.mail.dispatcher.rate-per-second=0");
+        MailProperties mail = context.getBean(MailProperties.class);
+        smtp.setUser(mail.getUsername(), mail.getUsername(), mail.getPassword());
+        emailService = context.getBean(EmailService.class);
+        sent = context.getBean(MeterRegistry.class).counter("library.mail.sent");
+        mails = new ArrayList<>(recipients);
+        for (int i = 0; i < recipients; i++) {
+            mails.add("cliente" + i + "@email.com");
+        }
+    }
+
+    @TearDown(Level.Iteration)
+    public void purge() throws Exception {
+        smtp.purgeEmailFromAllMailboxes();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+        smtp.stop();
+    }
+
+    @Benchmark
+    public double sendMails() throws InterruptedException {
+        double target = sent.count() + recipients;
+        emailService.sendMails("Atenção! Você tem um empréstimo atrasado.", mails);
+        while (sent.count() < target) {
+            TimeUnit.MILLISECONDS.sleep(1);
+        }
+        return sent.count();
+    }
+}
@@ -0,0 +1,95 @@
+package br.com.nerdslab.libraryapi.benchmark;
+
+import br.com.nerdslab.libraryapi.api.dto.BookDTO;
+import br.com.nerdslab.libraryapi.api.dto.LoanDTO;
+import br.com.nerdslab.libraryapi.api.mapper.BookMapper;
+import br.com.nerdslab.libraryapi.api.mapper.LoanMapper;
+import br.com.nerdslab.libraryapi.model.entity.Book;
+import br.com.nerdslab.libraryapi.model.entity.Loan;
+import org.modelmapper.ModelMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Mapping cost of a result page in isolation, without the database: the reflective ModelMapper
+ * the controllers used to call against the hand-written mappers that replaced it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MappingBenchmark {
+
+    @Param({"100"})
+    public int rows;
+
+    private ModelMapper modelMapper;
+    private BookMapper bookMapper;
+    private LoanMapper loanMapper;
+    private List<Book> books;
+    private List<Loan> loans;
+
+    @Setup
+    public void setUp() {
+        modelMapper = new ModelMapper();
+        bookMapper = new BookMapper();
+        loanMapper = new LoanMapper(bookMapper);
+        books = new ArrayList<>(rows);
+        loans = new ArrayList<>(rows);
+        for (long i = 0; i < rows; i++) {
+            Book book = Book.builder().id(i).title("Aventuras " + i).author("Autor " + i).isbn("isbn-" + i).build();
+            books.add(book);
+            loans.add(Loan.builder().id(i).book(book).customer("Fulano").loanDate(LocalDate.now()).build());
+        }
+    }
+
+    @Benchmark
+    public List<BookDTO> modelMapperBooks() {
+        return books.stream()
+                .map(entity -> modelMapper.map(entity, BookDTO.class))
+                .collect(Collectors.toList());
+    }
+
+    @Benchmark
+    public List<LoanDTO> modelMapperLoans() {
+        return loans.stream()
+                .map(entity -> {
+                    BookDTO bookDTO = modelMapper.map(entity.getBook(), BookDTO.class);
+                    LoanDTO loanDTO = modelMapper.map(entity, LoanDTO.class);
+                    loanDTO.setBook(bookDTO);
+                    return loanDTO;
+                })
+                .collect(Collectors.toList());
+    }
+
+    @Benchmark
+    public List<BookDTO> mapperBooks() {
+        return books.stream()
+                .map(bookMapper::toDto)
+                .collect(Collectors.toList());
+    }
+
+    @Benchmark
+    public List<LoanDTO> mapperLoans() {
+        return loans.stream()
+                .map(loanMapper::toDto)
+                .collect(Collectors.toList());
+    }
+}
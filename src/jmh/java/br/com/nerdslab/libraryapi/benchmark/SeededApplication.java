@@ -0,0 +1,95 @@
+package br.com.nerdslab.libraryapi.benchmark;
+
+import br.com.nerdslab.libraryapi.LibraryApiApplication;
+import br.com.nerdslab.libraryapi.model.entity.Book;
+import br.com.nerdslab.libraryapi.model.entity.Loan;
+import br.com.nerdslab.libraryapi.model.repository.BookRepository;
+import br.com.nerdslab.libraryapi.model.repository.LoanRepository;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Boots the application against an in-memory H2 database seeded with {@code rows} books, one loan per book
+ * and a "popular" book carrying {@code rows} returned loans.
+ */
+@State(Scope.Benchmark)
+public class SeededApplication {
+
+    public static final String CUSTOMER = "Fulano";
+    public static final String POPULAR_ISBN = "popular";
+
+    @Param({"100"})
+    public int rows;
+
+    public ConfigurableApplicationContext context;
+    public Book popularBook;
+
+    @Setup(Level.Trial)
+    public void start() {
+        context = boot("benchmark");
+        seed();
+    }
+
+    /**
+     * The given properties go in as command line arguments, so they win over application.properties.
+     */
+    static ConfigurableApplicationContext boot(String database, String... properties) {
+        return new SpringApplicationBuilder(LibraryApiApplication.class)
+                .properties(
+                        "spring.main.banner-mode=off",
+                        "server.port=0",
+                        "spring.datasource.url=jdbc:h2:mem:" + database + ";DB_CLOSE_DELAY=-1",
+                        "logging.level.root=WARN")
+                .run(Arrays.stream(properties).map(property -> "--" + property).toArray(String[]::new));
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() {
+        context.close();
+    }
+
+    public <T> T bean(Class<T> type) {
+        return context.getBean(type);
+    }
+
+    private void seed() {
+        BookRepository bookRepository = bean(BookRepository.class);
+        LoanRepository loanRepository = bean(LoanRepository.class);
+
+        List<Book> books = new ArrayList<>(rows);
+        for (int i = 0; i < rows; i++) {
+            books.add(Book.builder().title("Aventuras " + i).author("Autor " + i).isbn("isbn-" + i).build());
+        }
+        books = bookRepository.saveAll(books);
+        popularBook = bookRepository.save(Book.builder().title("Popular").author("Autor").isbn(POPULAR_ISBN).build());
+
+        List<Loan> loans = new ArrayList<>(rows * 2);
+        for (Book book : books) {
+            loans.add(loan(book, null));
+            loans.add(loan(popularBook, true));
+        }
+        loanRepository.saveAll(loans);
+    }
+
+    private Loan loan(Book book, Boolean returned) {
+        return Loan.builder()
+                .book(book)
+                .customer(CUSTOMER)
+                .customerEmail("fulano@email.com")
+                .loanDate(LocalDate.now())
+                .dueDate(LocalDate.now().plusDays(4))
+                .returned(returned)
+                .build();
+    }
+}
@@ -1,7 +1,8 @@
 package br.com.nerdslab.libraryapi;
 
+import br.com.nerdslab.libraryapi.api.mapper.BookMapper;
+import br.com.nerdslab.libraryapi.api.mapper.LoanMapper;
 import br.com.nerdslab.libraryapi.service.EmailService;
-import org.modelmapper.ModelMapper;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.CommandLineRunner;
@@ -21,8 +22,13 @@ public class LibraryApiApplication {
 	private EmailService emailService;
 
 	@Bean
-	public ModelMapper modelMapper() {
-		return new ModelMapper();
+	public BookMapper bookMapper() {
+		return new BookMapper();
+	}
+
+	@Bean
+	public LoanMapper loanMapper(BookMapper bookMapper) {
+		return new LoanMapper(bookMapper);
 	}
 
 	/*
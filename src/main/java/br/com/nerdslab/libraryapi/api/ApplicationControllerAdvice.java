@@ -2,6 +2,8 @@ package br.com.nerdslab.libraryapi.api;
 
 import br.com.nerdslab.libraryapi.api.exceptions.ApiErrors;
 import br.com.nerdslab.libraryapi.exception.BusinessException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.dao.QueryTimeoutException;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.validation.BindingResult;
@@ -28,6 +30,24 @@ public class ApplicationControllerAdvice {
         return new ApiErrors(ex);
     }
 
+    /**
+     * An update that lost the race on the version column.
+     */
+    @ExceptionHandler(OptimisticLockingFailureException.class)
+    @ResponseStatus(HttpStatus.CONFLICT)
+    public ApiErrors handleOptimisticLockingFailure(OptimisticLockingFailureException ex) {
+        return new ApiErrors(new BusinessException("Resource modified concurrently"));
+    }
+
+    /**
+     * A lookup that waited too long on the same lookup of a concurrent request.
+     */
+    @ExceptionHandler(QueryTimeoutException.class)
+    @ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+    public ApiErrors handleQueryTimeout(QueryTimeoutException ex) {
+        return new ApiErrors(new BusinessException("Service busy, try again"));
+    }
+
     @ExceptionHandler(ResponseStatusException.class)
     public ResponseEntity handleResponseStatusException(ResponseStatusException ex) {
         return new ResponseEntity(new ApiErrors(ex), ex.getStatus());
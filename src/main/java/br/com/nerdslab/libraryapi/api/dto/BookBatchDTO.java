@@ -0,0 +1,20 @@
+package br.com.nerdslab.libraryapi.api.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class BookBatchDTO<K> {
+
+    private List<BookDTO> content;
+
+    private List<K> missing;
+
+}
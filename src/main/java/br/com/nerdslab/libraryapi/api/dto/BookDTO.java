@@ -3,6 +3,7 @@ package br.com.nerdslab.libraryapi.api.dto;
 import lombok.*;
 
 import javax.validation.constraints.NotEmpty;
+import javax.validation.constraints.Positive;
 
 @Data
 @Builder
@@ -21,4 +22,7 @@ public class BookDTO {
     @NotEmpty
     private String isbn;
 
+    @Positive
+    private Integer loanDays;
+
 }
@@ -0,0 +1,22 @@
+package br.com.nerdslab.libraryapi.api.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class BookImportErrorDTO {
+
+    private long line;
+
+    private String isbn;
+
+    private List<String> errors;
+
+}
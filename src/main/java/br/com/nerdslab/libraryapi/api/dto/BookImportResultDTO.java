@@ -0,0 +1,25 @@
+package br.com.nerdslab.libraryapi.api.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class BookImportResultDTO {
+
+    private long imported;
+
+    private long rejected;
+
+    /**
+     * The first rejected rows only, {@code rejected} holds the full count.
+     */
+    private List<BookImportErrorDTO> errors;
+
+}
@@ -0,0 +1,30 @@
+package br.com.nerdslab.libraryapi.api.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class LoanBatchItemDTO {
+
+    /**
+     * Position of the item in the request.
+     */
+    private int index;
+
+    private Long id;
+
+    private String isbn;
+
+    private LocalDate dueDate;
+
+    private List<String> errors;
+
+}
@@ -6,6 +6,7 @@ import lombok.Data;
 import lombok.NoArgsConstructor;
 
 import javax.validation.constraints.NotEmpty;
+import java.time.LocalDate;
 
 @Data
 @Builder
@@ -26,4 +27,11 @@ public class LoanDTO {
 
     private BookDTO book;
 
+    /**
+     * Picks the loan period configured for the class of customer, when the book has none of its own.
+     */
+    private String customerClass;
+
+    private LocalDate dueDate;
+
 }
@@ -11,6 +11,11 @@ import lombok.NoArgsConstructor;
 @Data
 public class ReturnedLoanDTO {
 
+    /**
+     * Only read by the batch return, the single one takes the loan from the path.
+     */
+    private Long id;
+
     private Boolean returned;
 
 }
@@ -0,0 +1,27 @@
+package br.com.nerdslab.libraryapi.api.mapper;
+
+import br.com.nerdslab.libraryapi.api.dto.BookDTO;
+import br.com.nerdslab.libraryapi.model.entity.Book;
+
+public class BookMapper {
+
+    public BookDTO toDto(Book book) {
+        if (book == null) {
+            return null;
+        }
+        return new BookDTO(book.getId(), book.getTitle(), book.getAuthor(), book.getIsbn(), book.getLoanDays());
+    }
+
+    public Book toEntity(BookDTO dto) {
+        if (dto == null) {
+            return null;
+        }
+        Book book = new Book();
+        book.setId(dto.getId());
+        book.setTitle(dto.getTitle());
+        book.setAuthor(dto.getAuthor());
+        book.setIsbn(dto.getIsbn());
+        book.setLoanDays(dto.getLoanDays());
+        return book;
+    }
+}
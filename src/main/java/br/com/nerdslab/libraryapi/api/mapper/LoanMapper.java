@@ -0,0 +1,42 @@
+package br.com.nerdslab.libraryapi.api.mapper;
+
+import br.com.nerdslab.libraryapi.api.dto.LoanDTO;
+import br.com.nerdslab.libraryapi.api.dto.ReturnedLoanDTO;
+import br.com.nerdslab.libraryapi.model.entity.Book;
+import br.com.nerdslab.libraryapi.model.entity.Loan;
+
+public class LoanMapper {
+
+    private final BookMapper bookMapper;
+
+    public LoanMapper(BookMapper bookMapper) {
+        this.bookMapper = bookMapper;
+    }
+
+    public LoanDTO toDto(Loan loan) {
+        if (loan == null) {
+            return null;
+        }
+        Book book = loan.getBook();
+        return new LoanDTO(
+                loan.getId(),
+                book != null ? book.getIsbn() : null,
+                loan.getCustomer(),
+                loan.getCustomerEmail(),
+                bookMapper.toDto(book),
+                null,
+                loan.getDueDate());
+    }
+
+    public Loan toEntity(LoanDTO dto, Book book) {
+        Loan loan = new Loan();
+        loan.setBook(book);
+        loan.setCustomer(dto.getCustomer());
+        loan.setCustomerEmail(dto.getEmail());
+        return loan;
+    }
+
+    public void applyReturn(ReturnedLoanDTO dto, Loan loan) {
+        loan.setReturned(dto.getReturned());
+    }
+}
@@ -1,9 +1,17 @@
 package br.com.nerdslab.libraryapi.api.resource;
 
+import br.com.nerdslab.libraryapi.api.dto.BookAvailabilityDTO;
+import br.com.nerdslab.libraryapi.api.dto.BookBatchDTO;
 import br.com.nerdslab.libraryapi.api.dto.BookDTO;
+import br.com.nerdslab.libraryapi.api.dto.BookImportResultDTO;
+import br.com.nerdslab.libraryapi.api.dto.CursorPageDTO;
 import br.com.nerdslab.libraryapi.api.dto.LoanDTO;
+import br.com.nerdslab.libraryapi.api.mapper.BookMapper;
+import br.com.nerdslab.libraryapi.api.mapper.LoanMapper;
 import br.com.nerdslab.libraryapi.model.entity.Book;
 import br.com.nerdslab.libraryapi.model.entity.Loan;
+import br.com.nerdslab.libraryapi.service.AvailabilityIndex;
+import br.com.nerdslab.libraryapi.service.BookImportService;
 import br.com.nerdslab.libraryapi.service.BookService;
 import br.com.nerdslab.libraryapi.service.LoanService;
 import io.swagger.annotations.Api;
@@ -12,16 +20,27 @@ import io.swagger.annotations.ApiResponse;
 import io.swagger.annotations.ApiResponses;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.modelmapper.ModelMapper;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 import org.springframework.web.server.ResponseStatusException;
 
 import javax.validation.Valid;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 @RestController
@@ -31,29 +50,104 @@ import java.util.stream.Collectors;
 @Slf4j
 public class BookController {
 
+    private static final MediaType TEXT_CSV = MediaType.valueOf("text/csv");
+
+    static final int MAX_AVAILABILITY_IDS = 10_000;
+
+    static final int MAX_BATCH_SIZE = 1_000;
+
     private final BookService service;
-    private final ModelMapper modelMapper;
+    private final BookImportService importService;
     private final LoanService loanService;
+    private final AvailabilityIndex availabilityIndex;
+    private final BookMapper bookMapper;
+    private final LoanMapper loanMapper;
 
     @PostMapping
     @ResponseStatus(HttpStatus.CREATED)
     @ApiOperation("Create a Book")
     public BookDTO create(@RequestBody @Valid BookDTO dto) {
         log.info("creating a book for isbn: {}", dto.getIsbn());
-        Book entity =  this.modelMapper.map(dto, Book.class);
+        Book entity = bookMapper.toEntity(dto);
         entity = service.save(entity);
 
-        return this.modelMapper.map(entity, BookDTO.class);
+        return bookMapper.toDto(entity);
+    }
+
+    @PostMapping(value = "import", consumes = {"application/x-ndjson", "text/csv"})
+    @ApiOperation("Import Books from a NDJSON or CSV stream")
+    public BookImportResultDTO importBooks(@RequestHeader(HttpHeaders.CONTENT_TYPE) String contentType,
+                                           InputStream body) throws IOException {
+        BookImportService.Format format = TEXT_CSV.isCompatibleWith(MediaType.parseMediaType(contentType))
+                ? BookImportService.Format.CSV
+                : BookImportService.Format.NDJSON;
+        log.info("importing books from {}", format);
+        return importService.importBooks(body, format);
+    }
+
+    @GetMapping("availability")
+    @ApiOperation("Tells which of the given Books are available, from memory")
+    public BookAvailabilityDTO availability(@RequestParam long[] ids) {
+        if (ids.length > MAX_AVAILABILITY_IDS) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "ids must be at most " + MAX_AVAILABILITY_IDS);
+        }
+        if (!availabilityIndex.isReady()) {
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE);
+        }
+        long[] loaned = availabilityIndex.loaned(ids);
+        long[] sorted = loaned.clone();
+        Arrays.sort(sorted);
+        long[] available = Arrays.stream(ids)
+                .filter(id -> Arrays.binarySearch(sorted, id) < 0)
+                .toArray();
+        return BookAvailabilityDTO.builder().available(available).loaned(loaned).build();
+    }
+
+    @GetMapping(value = "batch", params = "ids")
+    @ApiOperation("Obtains the details of many Books by id")
+    public BookBatchDTO<Long> getByIds(@RequestParam List<Long> ids) {
+        return batch(ids, service::getByIds);
+    }
+
+    @GetMapping(value = "batch", params = "isbns")
+    @ApiOperation("Obtains the details of many Books by isbn")
+    public BookBatchDTO<String> getByIsbns(@RequestParam List<String> isbns) {
+        return batch(isbns, service::getByIsbns);
+    }
+
+    /**
+     * Books in the order they were asked for, each key once, and the keys not found.
+     */
+    private <K> BookBatchDTO<K> batch(List<K> keys, Function<Collection<K>, Map<K, Book>> lookup) {
+        if (keys.size() > MAX_BATCH_SIZE) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "at most " + MAX_BATCH_SIZE + " books per batch");
+        }
+        Collection<K> distinct = new LinkedHashSet<>(keys);
+        Map<K, Book> found = lookup.apply(distinct);
+        List<BookDTO> content = new ArrayList<>();
+        List<K> missing = new ArrayList<>();
+        for (K key : distinct) {
+            Book book = found.get(key);
+            if (book == null) {
+                missing.add(key);
+            } else {
+                content.add(bookMapper.toDto(book));
+            }
+        }
+        return new BookBatchDTO<K>(content, missing);
     }
 
     @GetMapping("{id}")
     @ApiOperation("Obtains a Book details by id")
-    public BookDTO get(@PathVariable Long id) {
+    public BookDTO get(@PathVariable Long id, WebRequest request) {
         log.info("obtaining details for book id: {}", id);
-        return service
+        Book book = service
                 .getById(id)
-                .map( book -> modelMapper.map(book, BookDTO.class) )
                 .orElseThrow( () -> new ResponseStatusException(HttpStatus.NOT_FOUND));
+        if (EntityTags.notModified(request, book.getVersion(), book.getLastModified())) {
+            return null;
+        }
+        return bookMapper.toDto(book);
     }
 
     @DeleteMapping("{id}")
@@ -71,14 +165,19 @@ public class BookController {
 
     @PutMapping("{id}")
     @ApiOperation("Update a Book")
-    public BookDTO update(@PathVariable Long id, @RequestBody BookDTO dto) {
+    public BookDTO update(@PathVariable Long id,
+                          @RequestBody BookDTO dto,
+                          @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
         log.info("updating book of id: {}", id);
         return service.getById(id)
                 .map(book -> {
-                        book.setAuthor(dto.getAuthor());
-                        book.setTitle(dto.getTitle());
-                        book = service.update(book);
-                        return modelMapper.map(book, BookDTO.class);
+                        EntityTags.checkIfMatch(ifMatch, book.getVersion());
+                        Book changed = book.toBuilder()
+                                .author(dto.getAuthor())
+                                .title(dto.getTitle())
+                                .loanDays(dto.getLoanDays())
+                                .build();
+                        return bookMapper.toDto(service.update(changed));
                     }
                 ).orElseThrow( () -> new ResponseStatusException(HttpStatus.NOT_FOUND));
 
@@ -87,31 +186,49 @@ public class BookController {
     @GetMapping
     @ApiOperation("Find Books")
     public Page<BookDTO> find(BookDTO dto, Pageable pageRequest) {
-        Book filter = modelMapper.map(dto, Book.class);
+        Book filter = bookMapper.toEntity(dto);
         Page<Book> result = service.find(filter, pageRequest);
         List<BookDTO> list = result.getContent()
                 .stream()
-                .map(entity -> modelMapper.map(entity, BookDTO.class))
+                .map(bookMapper::toDto)
                 .collect(Collectors.toList());
 
         return new PageImpl<BookDTO>(list, pageRequest, result.getTotalElements());
 
     }
 
+    @GetMapping(params = "after")
+    @ApiOperation("Find Books by cursor, without counting the total")
+    public CursorPageDTO<BookDTO> findAfter(BookDTO dto,
+                                            @RequestParam String after,
+                                            @RequestParam(defaultValue = "20") int size) {
+        SeekCursor.checkSize(size);
+        SeekCursor cursor = SeekCursor.decode(after);
+        Slice<Book> result = service.findAfter(bookMapper.toEntity(dto), cursor.getId(), size);
+        List<BookDTO> list = result.getContent()
+                .stream()
+                .map(bookMapper::toDto)
+                .collect(Collectors.toList());
+
+        String next = null;
+        if (result.hasNext()) {
+            next = SeekCursor.encode(result.getContent().get(result.getNumberOfElements() - 1).getId());
+        }
+        return new CursorPageDTO<BookDTO>(list, size, next);
+    }
+
     @GetMapping("{id}/loans")
     @ApiOperation("Find loans by book")
-    public Page<LoanDTO> loansByBook(@PathVariable Long id, Pageable pageable) {
+    public Page<LoanDTO> loansByBook(@PathVariable Long id, Pageable pageable, WebRequest request) {
         Book book = service.getById(id).orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND));
         Page<Loan> result = loanService.getLoansByBook(book, pageable);
+        if (EntityTags.notModified(request, result)) {
+            return null;
+        }
         List<LoanDTO> list = result.getContent()
                 .stream()
-                .map(loan -> {
-                    Book loanBook = loan.getBook();
-                    BookDTO bookDTO = modelMapper.map(loanBook, BookDTO.class);
-                    LoanDTO loanDTO = modelMapper.map(loan, LoanDTO.class);
-                    loanDTO.setBook(bookDTO);
-                    return loanDTO;
-                }).collect(Collectors.toList());
+                .map(loanMapper::toDto)
+                .collect(Collectors.toList());
 
         return new PageImpl<LoanDTO>(list, pageable, result.getTotalElements());
 
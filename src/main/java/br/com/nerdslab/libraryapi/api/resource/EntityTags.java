@@ -0,0 +1,78 @@
+package br.com.nerdslab.libraryapi.api.resource;
+
+import br.com.nerdslab.libraryapi.model.entity.Loan;
+import org.springframework.data.domain.Page;
+import org.springframework.http.HttpStatus;
+import org.springframework.util.DigestUtils;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Objects;
+
+/**
+ * Strong ETags taken from the {@code @Version} columns, so a conditional request is answered from the
+ * entities alone, before anything is mapped or serialized.
+ */
+final class EntityTags {
+
+    private EntityTags() {
+    }
+
+    static String of(Long version) {
+        return "\"" + version + "\"";
+    }
+
+    /**
+     * A page of loans changes with the version of any of its loans or their books, or with its total.
+     */
+    static String of(Page<Loan> page) {
+        StringBuilder state = new StringBuilder().append(page.getTotalElements());
+        for (Loan loan : page.getContent()) {
+            state.append(';').append(loan.getId()).append(':').append(loan.getVersion());
+            if (loan.getBook() != null) {
+                state.append(':').append(loan.getBook().getVersion());
+            }
+        }
+        return "\"" + DigestUtils.md5DigestAsHex(state.toString().getBytes(StandardCharsets.UTF_8)) + "\"";
+    }
+
+    /**
+     * Sets the ETag and {@code Last-Modified} headers and tells whether the client's copy is current, in
+     * which case the response is a 304. Entities without a version are always sent.
+     */
+    static boolean notModified(WebRequest request, Long version, Instant lastModified) {
+        if (version == null) {
+            return false;
+        }
+        return request.checkNotModified(of(version), lastModified == null ? -1 : lastModified.toEpochMilli());
+    }
+
+    static boolean notModified(WebRequest request, Page<Loan> page) {
+        Instant lastModified = page.getContent().stream()
+                .map(Loan::getLastModified)
+                .filter(Objects::nonNull)
+                .max(Instant::compareTo)
+                .orElse(null);
+        return request.checkNotModified(of(page), lastModified == null ? -1 : lastModified.toEpochMilli());
+    }
+
+    /**
+     * Fails with 412 when the client sent {@code If-Match} and none of its tags is the current version.
+     * A write racing past this check is still caught by the version column when it is flushed.
+     */
+    static void checkIfMatch(String ifMatch, Long version) {
+        if (ifMatch == null || version == null) {
+            return;
+        }
+        String current = of(version);
+        for (String tag : ifMatch.split(",")) {
+            String trimmed = tag.trim();
+            if (trimmed.equals("*") || trimmed.equals(current)) {
+                return;
+            }
+        }
+        throw new ResponseStatusException(HttpStatus.PRECONDITION_FAILED);
+    }
+}
@@ -1,19 +1,25 @@
 package br.com.nerdslab.libraryapi.api.resource;
 
-import br.com.nerdslab.libraryapi.api.dto.BookDTO;
+import br.com.nerdslab.libraryapi.api.dto.CursorPageDTO;
+import br.com.nerdslab.libraryapi.api.dto.LoanBatchItemDTO;
 import br.com.nerdslab.libraryapi.api.dto.LoanDTO;
 import br.com.nerdslab.libraryapi.api.dto.LoanFilterDTO;
 import br.com.nerdslab.libraryapi.api.dto.ReturnedLoanDTO;
+import br.com.nerdslab.libraryapi.api.mapper.LoanMapper;
 import br.com.nerdslab.libraryapi.model.entity.Book;
 import br.com.nerdslab.libraryapi.model.entity.Loan;
+import br.com.nerdslab.libraryapi.model.entity.LoanStatus;
 import br.com.nerdslab.libraryapi.service.BookService;
+import br.com.nerdslab.libraryapi.service.LoanBatchService;
+import br.com.nerdslab.libraryapi.service.LoanPolicy;
 import br.com.nerdslab.libraryapi.service.LoanService;
 import lombok.RequiredArgsConstructor;
-import org.modelmapper.ModelMapper;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.server.ResponseStatusException;
@@ -27,34 +33,59 @@ import java.util.stream.Collectors;
 @RequiredArgsConstructor
 public class LoanController {
 
+    static final int MAX_BATCH_SIZE = 500;
+
     private final LoanService service;
+    private final LoanBatchService batchService;
     private final BookService bookService;
-    private final ModelMapper modelMapper;
+    private final LoanMapper loanMapper;
+    private final LoanPolicy loanPolicy;
 
     @PostMapping
     @ResponseStatus(HttpStatus.CREATED)
     public Long create(@RequestBody LoanDTO dto) {
         Book book = bookService.getBookByIsbn(dto.getIsbn())
                 .orElseThrow(() -> new ResponseStatusException(HttpStatus.BAD_REQUEST, "Book not found for passed isbn"));
-        Loan entity = Loan.builder()
-                .book(book)
-                .customer(dto.getCustomer())
-                .loanDate(LocalDate.now())
-                .build();
+        Loan entity = loanMapper.toEntity(dto, book);
+        LocalDate today = LocalDate.now();
+        entity.setLoanDate(today);
+        entity.setStatus(LoanStatus.ACTIVE);
+        entity.setDueDate(loanPolicy.dueDate(book, dto.getCustomerClass(), today));
 
         entity = service.save(entity);
         return entity.getId();
     }
 
     @PatchMapping("{id}")
-    public void returnBook(@PathVariable Long id, ReturnedLoanDTO dto) {
+    public void returnBook(@PathVariable Long id,
+                           ReturnedLoanDTO dto,
+                           @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
         Loan loan = service.getById(id)
                 .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND));
-        loan.setReturned(dto.getReturned());
+        EntityTags.checkIfMatch(ifMatch, loan.getVersion());
+        loanMapper.applyReturn(dto, loan);
 
         service.update(loan);
     }
 
+    @PostMapping("batch")
+    public List<LoanBatchItemDTO> createBatch(@RequestBody List<LoanDTO> dtos) {
+        checkBatchSize(dtos);
+        return batchService.create(dtos);
+    }
+
+    @PatchMapping("batch")
+    public List<LoanBatchItemDTO> returnBatch(@RequestBody List<ReturnedLoanDTO> dtos) {
+        checkBatchSize(dtos);
+        return batchService.returnLoans(dtos);
+    }
+
+    private static void checkBatchSize(List<?> items) {
+        if (items.size() > MAX_BATCH_SIZE) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "at most " + MAX_BATCH_SIZE + " loans per batch");
+        }
+    }
+
     @GetMapping
     public Page<LoanDTO> find(LoanFilterDTO dto, Pageable pageRequest) {
         Page<Loan> result = service.find(dto, pageRequest);
@@ -62,16 +93,32 @@ public class LoanController {
         List<LoanDTO> loans = result
                 .getContent()
                 .stream()
-                .map(entity -> {
-                    Book book = entity.getBook();
-                    BookDTO bookDTO = modelMapper.map(book, BookDTO.class);
-                    LoanDTO loanDTO = modelMapper.map(entity, LoanDTO.class);
-                    loanDTO.setBook(bookDTO);
-                    return loanDTO;
-                })
+                .map(loanMapper::toDto)
                 .collect(Collectors.toList());
 
         return new PageImpl<LoanDTO>(loans, pageRequest, result.getTotalElements());
     }
 
+    @GetMapping(params = "after")
+    public CursorPageDTO<LoanDTO> findAfter(LoanFilterDTO dto,
+                                            @RequestParam String after,
+                                            @RequestParam(defaultValue = "20") int size) {
+        SeekCursor.checkSize(size);
+        SeekCursor cursor = SeekCursor.decodeDated(after);
+        Slice<Loan> result = service.findAfter(dto, cursor.getDate(), cursor.getId(), size);
+
+        List<LoanDTO> loans = result
+                .getContent()
+                .stream()
+                .map(loanMapper::toDto)
+                .collect(Collectors.toList());
+
+        String next = null;
+        if (result.hasNext()) {
+            Loan last = result.getContent().get(result.getNumberOfElements() - 1);
+            next = SeekCursor.encode(last.getLoanDate(), last.getId());
+        }
+        return new CursorPageDTO<LoanDTO>(loans, size, next);
+    }
+
 }
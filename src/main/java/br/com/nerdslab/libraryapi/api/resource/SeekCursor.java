@@ -0,0 +1,83 @@
+package br.com.nerdslab.libraryapi.api.resource;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.Base64;
+
+/**
+ * Opaque keyset position used by the {@code ?after=} listings: the last seen {@code id},
+ * optionally preceded by the {@code loanDate} it was sorted on.
+ */
+final class SeekCursor {
+
+    static final int MAX_SIZE = 2000;
+
+    private static final String SEPARATOR = ":";
+
+    private final LocalDate date;
+    private final Long id;
+
+    private SeekCursor(LocalDate date, Long id) {
+        this.date = date;
+        this.id = id;
+    }
+
+    static String encode(Long id) {
+        return encode(id.toString());
+    }
+
+    static String encode(LocalDate date, Long id) {
+        return encode(date + SEPARATOR + id);
+    }
+
+    /**
+     * An empty {@code after} starts from the first page.
+     */
+    static SeekCursor decode(String after) {
+        if (after == null || after.isEmpty()) {
+            return new SeekCursor(null, null);
+        }
+        try {
+            String value = new String(Base64.getUrlDecoder().decode(after), StandardCharsets.UTF_8);
+            int separator = value.indexOf(SEPARATOR);
+            if (separator < 0) {
+                return new SeekCursor(null, Long.valueOf(value));
+            }
+            return new SeekCursor(LocalDate.parse(value.substring(0, separator)), Long.valueOf(value.substring(separator + 1)));
+        } catch (RuntimeException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid cursor");
+        }
+    }
+
+    /**
+     * Same as {@link #decode(String)} for listings sorted on {@code (loanDate, id)}.
+     */
+    static SeekCursor decodeDated(String after) {
+        SeekCursor cursor = decode(after);
+        if (cursor.id != null && cursor.date == null) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid cursor");
+        }
+        return cursor;
+    }
+
+    static void checkSize(int size) {
+        if (size < 1 || size > MAX_SIZE) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Size must be between 1 and " + MAX_SIZE);
+        }
+    }
+
+    private static String encode(String value) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    LocalDate getDate() {
+        return date;
+    }
+
+    Long getId() {
+        return id;
+    }
+}
@@ -0,0 +1,18 @@
+package br.com.nerdslab.libraryapi.config;
+
+import org.springframework.cache.annotation.EnableCaching;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+
+/**
+ * The cache advice wraps the transaction advice, so evictions run after the commit and a concurrent
+ * read can not put the pre-commit state back in the cache.
+ */
+@EnableCaching(order = Ordered.HIGHEST_PRECEDENCE)
+@Configuration
+public class CacheConfig {
+
+    public static final String BOOKS = "books";
+    public static final String BOOKS_BY_ISBN = "booksByIsbn";
+
+}
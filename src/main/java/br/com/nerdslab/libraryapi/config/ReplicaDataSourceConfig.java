@@ -0,0 +1,53 @@
+package br.com.nerdslab.libraryapi.config;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.core.env.Environment;
+
+import java.time.Duration;
+
+/**
+ * Only when a replica is configured: the primary keeps the {@code spring.datasource} settings and the
+ * replica pool is bound from {@code application.datasource.replica}, e.g. {@code jdbc-url},
+ * {@code username} and {@code maximum-pool-size}. The pools are not beans of their own, Spring Boot
+ * expects a single data source to initialize.
+ * <p>
+ * The replica waits at most half a second for a connection by default, since its reads have the primary
+ * to fall back to.
+ */
+@Configuration
+@ConditionalOnProperty("application.datasource.replica.jdbc-url")
+public class ReplicaDataSourceConfig {
+
+    @Bean
+    @ConfigurationProperties("application.datasource.replica")
+    public HikariConfig replicaPoolConfig() {
+        HikariConfig config = new HikariConfig();
+        config.setPoolName("replica");
+        config.setReadOnly(true);
+        config.setConnectionTimeout(500);
+        return config;
+    }
+
+    @Bean
+    @Primary
+    public ReplicaRoutingDataSource dataSource(DataSourceProperties properties,
+                                               HikariConfig replicaPoolConfig,
+                                               Environment environment,
+                                               @Value("${application.datasource.replica-retry-after-ms:30000}") long retryAfterMs) {
+        HikariDataSource primary = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        Binder.get(environment).bind("spring.datasource.hikari", Bindable.ofInstance(primary));
+        HikariDataSource replica = new HikariDataSource();
+        replicaPoolConfig.copyStateTo(replica);
+        return new ReplicaRoutingDataSource(primary, replica, Duration.ofMillis(retryAfterMs));
+    }
+}
@@ -0,0 +1,150 @@
+package br.com.nerdslab.libraryapi.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.CacheMode;
+import org.hibernate.Session;
+import org.springframework.jdbc.datasource.AbstractDataSource;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.orm.jpa.EntityManagerHolder;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.io.Closeable;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Hands out replica connections to read-only transactions and primary connections to everything else.
+ * A read-only transaction joining a read-write one keeps its primary connection, and
+ * {@link #onPrimary(Supplier)} sends the reads that must see the latest writes to the primary as well.
+ * When the replica can not be reached, reads fall back to the primary, and keep going there for the
+ * {@code retryAfter} period before the replica is tried again, so an outage costs one connection timeout
+ * per period instead of one per query.
+ * <p>
+ * A session reading from the replica only gets from the second-level cache until its transaction completes:
+ * the replica may lag behind, and a stale book put there would outlive the eviction of its update.
+ * <p>
+ * The transaction managers take the connection before the transaction is flagged read-only, so the
+ * actual connection is only picked on its first statement.
+ */
+@Slf4j
+public class ReplicaRoutingDataSource extends LazyConnectionDataSourceProxy implements Closeable {
+
+    private static final ThreadLocal<Boolean> PRIMARY = ThreadLocal.withInitial(() -> false);
+
+    private final DataSource primary;
+    private final DataSource replica;
+    private final long retryAfterNanos;
+
+    private volatile long replicaDownUntil;
+    private volatile boolean replicaDown;
+
+    public ReplicaRoutingDataSource(DataSource primary, DataSource replica, Duration retryAfter) {
+        this.primary = primary;
+        this.replica = replica;
+        this.retryAfterNanos = retryAfter.toNanos();
+        setTargetDataSource(new Router());
+        afterPropertiesSet();
+    }
+
+    /**
+     * Runs reads that feed a write, or follow one, on the primary, whatever their transaction.
+     */
+    public static <T> T onPrimary(Supplier<T> reads) {
+        if (PRIMARY.get()) {
+            return reads.get();
+        }
+        PRIMARY.set(true);
+        try {
+            return reads.get();
+        } finally {
+            PRIMARY.remove();
+        }
+    }
+
+    @Override
+    public void close() {
+        for (DataSource pool : new DataSource[]{replica, primary}) {
+            if (pool instanceof AutoCloseable) {
+                try {
+                    ((AutoCloseable) pool).close();
+                } catch (Exception e) {
+                    log.warn("failed to close data source {}", pool, e);
+                }
+            }
+        }
+    }
+
+    private boolean readsFromReplica() {
+        return TransactionSynchronizationManager.isCurrentTransactionReadOnly()
+                && !PRIMARY.get()
+                && (!replicaDown || System.nanoTime() - replicaDownUntil >= 0);
+    }
+
+    private void replicaFailed(SQLException e) {
+        replicaDownUntil = System.nanoTime() + retryAfterNanos;
+        replicaDown = true;
+        log.warn("replica unavailable, reading from the primary for the next {} ms: {}",
+                TimeUnit.NANOSECONDS.toMillis(retryAfterNanos), e.getMessage());
+    }
+
+    private static void keepReplicaReadsOutOfSecondLevelCache() {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return;
+        }
+        for (Object resource : TransactionSynchronizationManager.getResourceMap().values()) {
+            if (!(resource instanceof EntityManagerHolder)) {
+                continue;
+            }
+            Session session = ((EntityManagerHolder) resource).getEntityManager().unwrap(Session.class);
+            CacheMode previous = session.getCacheMode();
+            session.setCacheMode(CacheMode.GET);
+            // the session outlives the transaction when it is bound to the request
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    if (session.isOpen()) {
+                        session.setCacheMode(previous);
+                    }
+                }
+            });
+        }
+    }
+
+    private class Router extends AbstractDataSource {
+
+        @Override
+        public Connection getConnection() throws SQLException {
+            if (readsFromReplica()) {
+                try {
+                    Connection connection = replica.getConnection();
+                    replicaDown = false;
+                    keepReplicaReadsOutOfSecondLevelCache();
+                    return connection;
+                } catch (SQLException e) {
+                    replicaFailed(e);
+                }
+            }
+            return primary.getConnection();
+        }
+
+        @Override
+        public Connection getConnection(String username, String password) throws SQLException {
+            if (readsFromReplica()) {
+                try {
+                    Connection connection = replica.getConnection(username, password);
+                    replicaDown = false;
+                    keepReplicaReadsOutOfSecondLevelCache();
+                    return connection;
+                } catch (SQLException e) {
+                    replicaFailed(e);
+                }
+            }
+            return primary.getConnection(username, password);
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package br.com.nerdslab.libraryapi.model.cache;
+
+import org.hibernate.boot.spi.SessionFactoryOptions;
+import org.hibernate.cache.jcache.internal.JCacheRegionFactory;
+
+import java.net.URI;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * JCache region factory with a cache manager of its own. The provider hands out one manager per URI and
+ * class loader, so with the default URI every session factory in the JVM, each Spring context of the
+ * tests on its own database, would share the same regions and read each other's entities. The regions
+ * are still configured by name in {@code application.conf}, which the Caffeine provider reads whatever
+ * the URI.
+ */
+public class PerFactoryJCacheRegionFactory extends JCacheRegionFactory {
+
+    private final URI uri = URI.create("library-api:second-level-cache:" + UUID.randomUUID());
+
+    @Override
+    protected URI getUri(SessionFactoryOptions settings, Map properties) {
+        return uri;
+    }
+}
@@ -1,29 +1,83 @@
 package br.com.nerdslab.libraryapi.model.entity;
 
+import br.com.nerdslab.libraryapi.model.id.PooledLoSequenceGenerator;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
 import lombok.NoArgsConstructor;
+import lombok.ToString;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
+import org.hibernate.id.enhanced.SequenceStyleGenerator;
 
 import javax.persistence.*;
+import java.time.Instant;
 import java.util.List;
 
 @Data
-@Builder
+@Builder(toBuilder = true)
 @NoArgsConstructor
 @AllArgsConstructor
 @Entity
 @Table
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = Book.CACHE_REGION)
 public class Book {
 
+    /**
+     * Second-level cache region of the books, sized in {@code application.conf}.
+     */
+    public static final String CACHE_REGION = "book";
+
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "book_seq")
+    @GenericGenerator(name = "book_seq", strategy = PooledLoSequenceGenerator.STRATEGY,
+            parameters = @Parameter(name = SequenceStyleGenerator.SEQUENCE_PARAM, value = "book_seq"))
     private Long id;
     private String title;
     private String author;
+
+    @Column(unique = true)
     private String isbn;
 
+    /**
+     * Loan period for this book, overriding the customer class and default ones when set.
+     */
+    @Column(name = "loan_days")
+    private Integer loanDays;
+
+    /**
+     * The open loan of the book, if any. Written only by the loan service's update statements, in the
+     * transaction that opens or closes the loan, so a cached copy of the book saved later can not undo it.
+     * Cached copies may lag behind it: the availability checks query the column instead.
+     */
+    @Column(name = "active_loan_id", insertable = false, updatable = false)
+    private Long activeLoanId;
+
+    /**
+     * Lazy, so it is kept out of equals, hashCode and toString, which would load it or fail once detached.
+     */
     @OneToMany(mappedBy = "book")
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
     private List<Loan> loans;
 
+    /**
+     * Bumped on every update of the book, the active loan column aside; it is the book's ETag.
+     */
+    @Version
+    private Long version;
+
+    @Column(name = "last_modified")
+    private Instant lastModified;
+
+    @PrePersist
+    @PreUpdate
+    void touch() {
+        this.lastModified = Instant.now();
+    }
+
 }
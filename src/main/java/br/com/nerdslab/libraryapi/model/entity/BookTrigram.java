@@ -0,0 +1,44 @@
+package br.com.nerdslab.libraryapi.model.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.persistence.*;
+import java.io.Serializable;
+
+/**
+ * One row per distinct lower-cased three-character substring of a book's title or author.
+ * The {@code (field, gram, book_id)} index answers a search without touching the row data.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Entity
+@Table(name = "book_trigram", indexes = @Index(name = "idx_book_trigram_gram", columnList = "field, gram, book_id"))
+public class BookTrigram {
+
+    public enum Field {
+        TITLE, AUTHOR
+    }
+
+    @EmbeddedId
+    private Key id;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    @Embeddable
+    public static class Key implements Serializable {
+
+        @Enumerated(EnumType.STRING)
+        @Column(length = 10)
+        private Field field;
+
+        @Column(length = 3)
+        private String gram;
+
+        @Column(name = "book_id")
+        private Long bookId;
+    }
+}
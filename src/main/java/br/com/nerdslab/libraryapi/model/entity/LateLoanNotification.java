@@ -0,0 +1,56 @@
+package br.com.nerdslab.libraryapi.model.entity;
+
+import br.com.nerdslab.libraryapi.model.id.PooledLoSequenceGenerator;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
+import org.hibernate.id.enhanced.SequenceStyleGenerator;
+
+import javax.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * Outbox row for the late loan mail: written in the transaction that finds the loan late and
+ * relayed to the mail dispatcher afterwards. At most one per loan, so a loan is never notified twice.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Entity
+@Table(name = "late_loan_notification",
+        uniqueConstraints = @UniqueConstraint(name = LateLoanNotification.ONE_PER_LOAN, columnNames = "loan_id"),
+        indexes = @Index(name = "idx_late_loan_notification_pending", columnList = "delivered_at, failed_at, id"))
+public class LateLoanNotification {
+
+    public static final String ONE_PER_LOAN = "uk_late_loan_notification_loan";
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "late_loan_notification_seq")
+    @GenericGenerator(name = "late_loan_notification_seq", strategy = PooledLoSequenceGenerator.STRATEGY,
+            parameters = @Parameter(name = SequenceStyleGenerator.SEQUENCE_PARAM, value = "late_loan_notification_seq"))
+    private Long id;
+
+    @Column(name = "loan_id", nullable = false)
+    private Long loanId;
+
+    private String recipient;
+
+    private LocalDateTime createdAt;
+
+    /**
+     * When the relay last handed the row to the dispatcher; rows dispatched longer ago than the lease
+     * and still not delivered are handed over again.
+     */
+    @Column(name = "dispatched_at")
+    private LocalDateTime dispatchedAt;
+
+    @Column(name = "delivered_at")
+    private LocalDateTime deliveredAt;
+
+    @Column(name = "failed_at")
+    private LocalDateTime failedAt;
+}
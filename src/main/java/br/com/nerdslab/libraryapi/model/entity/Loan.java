@@ -1,11 +1,16 @@
 package br.com.nerdslab.libraryapi.model.entity;
 
+import br.com.nerdslab.libraryapi.model.id.PooledLoSequenceGenerator;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
+import org.hibernate.id.enhanced.SequenceStyleGenerator;
 
 import javax.persistence.*;
+import java.time.Instant;
 import java.time.LocalDate;
 
 @Data
@@ -13,10 +18,22 @@ import java.time.LocalDate;
 @NoArgsConstructor
 @Builder
 @Entity
+@Table(uniqueConstraints = @UniqueConstraint(name = Loan.ONE_ACTIVE_LOAN_PER_BOOK, columnNames = "active_book_id"),
+        indexes = @Index(name = Loan.STATUS_ID_INDEX, columnList = "status, id, due_date"))
 public class Loan {
 
+    public static final String ONE_ACTIVE_LOAN_PER_BOOK = "uk_loan_active_book";
+
+    /**
+     * Open loans in id order, with the due date alongside: the overdue scans seek on the id and filter on
+     * the due date without reading the rows.
+     */
+    public static final String STATUS_ID_INDEX = "idx_loan_status_id_due_date";
+
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "loan_seq")
+    @GenericGenerator(name = "loan_seq", strategy = PooledLoSequenceGenerator.STRATEGY,
+            parameters = @Parameter(name = SequenceStyleGenerator.SEQUENCE_PARAM, value = "loan_seq"))
     private Long id;
     private String customer;
 
@@ -28,4 +45,39 @@ public class Loan {
     private Book book;
     private LocalDate loanDate;
     private Boolean returned;
+
+    /**
+     * Follows {@link #returned} on every write; queries filter on it instead of the nullable flag so they
+     * can use the index.
+     */
+    @Enumerated(EnumType.STRING)
+    @Column(name = "status", length = 16)
+    private LoanStatus status;
+
+    @Column(name = "due_date")
+    private LocalDate dueDate;
+
+    /**
+     * The book id while the loan is open and null once returned, so the unique constraint allows a single
+     * open loan per book.
+     */
+    @Column(name = "active_book_id")
+    private Long activeBookId;
+
+    /**
+     * Bumped on every update of the loan; it is the loan's ETag.
+     */
+    @Version
+    private Long version;
+
+    @Column(name = "last_modified")
+    private Instant lastModified;
+
+    @PrePersist
+    @PreUpdate
+    void trackStatus() {
+        this.lastModified = Instant.now();
+        this.status = LoanStatus.of(returned);
+        this.activeBookId = Boolean.TRUE.equals(returned) || book == null ? null : book.getId();
+    }
 }
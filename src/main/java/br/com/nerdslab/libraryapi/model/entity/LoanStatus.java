@@ -0,0 +1,11 @@
+package br.com.nerdslab.libraryapi.model.entity;
+
+public enum LoanStatus {
+
+    ACTIVE,
+    RETURNED;
+
+    public static LoanStatus of(Boolean returned) {
+        return Boolean.TRUE.equals(returned) ? RETURNED : ACTIVE;
+    }
+}
@@ -0,0 +1,45 @@
+package br.com.nerdslab.libraryapi.model.entity;
+
+import br.com.nerdslab.libraryapi.model.id.PooledLoSequenceGenerator;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
+import org.hibernate.id.enhanced.SequenceStyleGenerator;
+
+import javax.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * A mail that could not be delivered after every retry, kept for inspection and manual resend.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Entity
+@Table(name = "mail_dead_letter")
+public class MailDeadLetter {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "mail_dead_letter_seq")
+    @GenericGenerator(name = "mail_dead_letter_seq", strategy = PooledLoSequenceGenerator.STRATEGY,
+            parameters = @Parameter(name = SequenceStyleGenerator.SEQUENCE_PARAM, value = "mail_dead_letter_seq"))
+    private Long id;
+
+    private String recipient;
+
+    private String subject;
+
+    @Column(length = 4000)
+    private String text;
+
+    private Integer attempts;
+
+    @Column(length = 1000)
+    private String error;
+
+    private LocalDateTime failedAt;
+}
@@ -0,0 +1,13 @@
+package br.com.nerdslab.libraryapi.model.repository;
+
+/**
+ * Writes the active loan column of a book. The updates are native and declare a query space of their own,
+ * so Hibernate evicts only the book they touch from the second-level cache instead of the whole region,
+ * which a bulk {@code update Book} would do on every loan and return.
+ */
+public interface BookActiveLoanRepository {
+
+    int markLoaned(Long id, Long loanId);
+
+    int markReturned(Long id, Long loanId);
+}
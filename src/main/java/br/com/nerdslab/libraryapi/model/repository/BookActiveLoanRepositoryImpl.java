@@ -0,0 +1,39 @@
+package br.com.nerdslab.libraryapi.model.repository;
+
+import br.com.nerdslab.libraryapi.model.entity.Book;
+import org.hibernate.query.NativeQuery;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+
+public class BookActiveLoanRepositoryImpl implements BookActiveLoanRepository {
+
+    static final String ACTIVE_LOAN_SPACE = "book_active_loan";
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    @Transactional
+    public int markLoaned(Long id, Long loanId) {
+        return execute(id, " update book set active_loan_id = :loanId where id = :id ", loanId);
+    }
+
+    @Override
+    @Transactional
+    public int markReturned(Long id, Long loanId) {
+        return execute(id, " update book set active_loan_id = null where id = :id and active_loan_id = :loanId ", loanId);
+    }
+
+    private int execute(Long id, String sql, Long loanId) {
+        int updated = entityManager.createNativeQuery(sql)
+                .unwrap(NativeQuery.class)
+                .addSynchronizedQuerySpace(ACTIVE_LOAN_SPACE)
+                .setParameter("id", id)
+                .setParameter("loanId", loanId)
+                .executeUpdate();
+        entityManager.getEntityManagerFactory().getCache().evict(Book.class, id);
+        return updated;
+    }
+}
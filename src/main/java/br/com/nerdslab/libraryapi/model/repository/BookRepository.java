@@ -1,14 +1,59 @@
 package br.com.nerdslab.libraryapi.model.repository;
 
 import br.com.nerdslab.libraryapi.model.entity.Book;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import javax.persistence.QueryHint;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 @Repository
-public interface BookRepository extends JpaRepository<Book, Long> {
+public interface BookRepository extends JpaRepository<Book, Long>, JpaSpecificationExecutor<Book>,
+        BookActiveLoanRepository {
     boolean existsByIsbn(String isbn);
 
+    @QueryHints(@QueryHint(name = org.hibernate.annotations.QueryHints.CACHEABLE, value = "true"))
     Optional<Book> findByIsbn(String isbn);
+
+    List<Book> findByIsbnIn(Collection<String> isbns);
+
+    @Query(" select b from Book b where b.id > :after " +
+            " and ( :title is null or lower(b.title) like lower(concat('%', :title, '%')) ) " +
+            " and ( :author is null or lower(b.author) like lower(concat('%', :author, '%')) ) " +
+            " and ( :isbn is null or lower(b.isbn) like lower(concat('%', :isbn, '%')) ) " +
+            " order by b.id ")
+    Slice<Book> findAfter(@Param("after") Long after,
+                          @Param("title") String title,
+                          @Param("author") String author,
+                          @Param("isbn") String isbn,
+                          Pageable pageable);
+
+    @Query(" select b.activeLoanId from Book b where b.id = :id ")
+    Long findActiveLoanId(@Param("id") Long id);
+
+    @Query(" select b.id from Book b where b.id in :ids and b.activeLoanId is not null ")
+    List<Long> findLoanedIn(@Param("ids") Collection<Long> ids);
+
+    @Query(" select max(b.id) from Book b ")
+    Long findMaxId();
+
+    /**
+     * Rebuilds the active loan of the books in the id range from the loans table, touching only the rows
+     * that drifted.
+     */
+    @Modifying
+    @Query(value = " update book b set active_loan_id = ( select l.id from loan l where l.active_book_id = b.id ) " +
+            " where b.id > :fromId and b.id <= :toId " +
+            " and coalesce(b.active_loan_id, -1) <> coalesce(( select l.id from loan l where l.active_book_id = b.id ), -1) ",
+            nativeQuery = true)
+    int reconcileActiveLoans(@Param("fromId") Long fromId, @Param("toId") Long toId);
 }
@@ -0,0 +1,40 @@
+package br.com.nerdslab.libraryapi.model.repository;
+
+import br.com.nerdslab.libraryapi.model.entity.JobLease;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+
+@Repository
+public interface JobLeaseRepository extends JpaRepository<JobLease, String> {
+
+    /**
+     * Takes over a lease that expired. A single statement, so two nodes can not both succeed.
+     */
+    @Modifying
+    @Query(" update JobLease l set l.owner = :owner, l.lockedAt = :now, l.lockedUntil = :until " +
+            " where l.name = :name and l.lockedUntil <= :now ")
+    int acquire(@Param("name") String name,
+                @Param("owner") String owner,
+                @Param("now") LocalDateTime now,
+                @Param("until") LocalDateTime until);
+
+    /**
+     * First lease of a job; fails on the primary key when another node inserted it first.
+     */
+    @Modifying
+    @Query(value = " insert into job_lease (name, owner, locked_at, locked_until) values (:name, :owner, :now, :until) ",
+            nativeQuery = true)
+    int insert(@Param("name") String name,
+               @Param("owner") String owner,
+               @Param("now") LocalDateTime now,
+               @Param("until") LocalDateTime until);
+
+    @Modifying
+    @Query(" update JobLease l set l.lockedUntil = :until where l.name = :name and l.owner = :owner ")
+    int release(@Param("name") String name, @Param("owner") String owner, @Param("until") LocalDateTime until);
+}
@@ -0,0 +1,32 @@
+package br.com.nerdslab.libraryapi.model.repository;
+
+import br.com.nerdslab.libraryapi.model.entity.LateLoanNotification;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import javax.persistence.LockModeType;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface LateLoanNotificationRepository extends JpaRepository<LateLoanNotification, Long> {
+
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query(" select n from LateLoanNotification n where n.deliveredAt is null and n.failedAt is null " +
+            " and ( n.dispatchedAt is null or n.dispatchedAt < :leaseExpired ) order by n.id ")
+    List<LateLoanNotification> findPending(@Param("leaseExpired") LocalDateTime leaseExpired, Pageable pageable);
+
+    @Modifying
+    @Query(" update LateLoanNotification n set n.deliveredAt = :at where n.id in :ids ")
+    int markDelivered(@Param("ids") Collection<Long> ids, @Param("at") LocalDateTime at);
+
+    @Modifying
+    @Query(" update LateLoanNotification n set n.failedAt = :at where n.id in :ids ")
+    int markFailed(@Param("ids") Collection<Long> ids, @Param("at") LocalDateTime at);
+}
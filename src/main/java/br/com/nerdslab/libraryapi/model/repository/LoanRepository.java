@@ -5,26 +5,93 @@ import br.com.nerdslab.libraryapi.model.entity.Loan;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.time.LocalDate;
+import java.util.Collection;
 import java.util.List;
 
 @Repository
 public interface LoanRepository extends JpaRepository<Loan, Long> {
 
-    @Query(value = " select case when ( count(l.id) > 0 ) then true else false end " +
-            " from Loan l where l.book = :book and ( l.returned is null or l.returned is not true ) ")
-    boolean existsByBookAndNotReturned(@Param("book") Book book);
+    /**
+     * What the late loan notification needs from a loan, without loading the entity and its book.
+     */
+    interface LateLoan {
+        Long getId();
 
-    @Query(value = " select l from Loan as l join l.book as b where b.isbn = :isbn or l.customer = :customer ")
+        String getCustomerEmail();
+    }
+
+    interface LoanDue {
+        Long getId();
+
+        LocalDate getDueDate();
+    }
+
+    @Query(value = " select l from Loan as l join fetch l.book as b where b.isbn = :isbn or l.customer = :customer ",
+            countQuery = " select count(l) from Loan as l join l.book as b where b.isbn = :isbn or l.customer = :customer ")
     Page<Loan> findByBookIsbnOrCustomer(@Param("isbn") String isbn, @Param("customer") String customer, Pageable pageRequest);
 
+    @Query(" select l from Loan as l join fetch l.book as b where ( b.isbn = :isbn or l.customer = :customer ) " +
+            " order by l.loanDate, l.id ")
+    Slice<Loan> findSliceByBookIsbnOrCustomer(@Param("isbn") String isbn, @Param("customer") String customer, Pageable pageable);
+
+    @Query(" select l from Loan as l join fetch l.book as b where ( b.isbn = :isbn or l.customer = :customer ) " +
+            " and ( l.loanDate > :loanDate or ( l.loanDate = :loanDate and l.id > :id ) ) " +
+            " order by l.loanDate, l.id ")
+    Slice<Loan> findSliceByBookIsbnOrCustomerAfter(@Param("isbn") String isbn,
+                                                   @Param("customer") String customer,
+                                                   @Param("loanDate") LocalDate loanDate,
+                                                   @Param("id") Long id,
+                                                   Pageable pageable);
+
+    @EntityGraph(attributePaths = "book")
     Page<Loan> findByBook(Book book, Pageable pageable);
 
-    @Query(" select l from Loan l where l.loanDate <= :threeDaysAgo and ( l.returned is null or l.returned is not true ) ")
-    List<Loan> findByLoanDateLessThanAndNotReturned(@Param("threeDaysAgo") LocalDate threeDaysAgo);
+    /**
+     * Seeks through {@link Loan#STATUS_ID_INDEX} from {@code afterId} in id order, checking the due date on
+     * the index entry, so each chunk reads on from where the last one stopped instead of every overdue loan.
+     */
+    @Query(" select l.id as id, l.customerEmail as customerEmail from Loan l " +
+            " where l.status = br.com.nerdslab.libraryapi.model.entity.LoanStatus.ACTIVE and l.dueDate < :today " +
+            " and l.id > :afterId and l.id <= :toId " +
+            " and not exists ( select n.id from LateLoanNotification n where n.loanId = l.id ) " +
+            " order by l.id ")
+    List<LateLoan> findUnnotifiedOverdueBetween(@Param("today") LocalDate today,
+                                                @Param("afterId") Long afterId,
+                                                @Param("toId") Long toId,
+                                                Pageable pageable);
+
+    @Query(" select max(l.id) from Loan l " +
+            " where l.status = br.com.nerdslab.libraryapi.model.entity.LoanStatus.ACTIVE and l.dueDate < :today ")
+    Long findMaxOverdueId(@Param("today") LocalDate today);
+
+    @Query(" select l.id as id, l.customerEmail as customerEmail from Loan l " +
+            " where l.id in :ids and l.status = br.com.nerdslab.libraryapi.model.entity.LoanStatus.ACTIVE " +
+            " and l.dueDate < :today and not exists ( select n.id from LateLoanNotification n where n.loanId = l.id ) " +
+            " order by l.id ")
+    List<LateLoan> findUnnotifiedOverdueIn(@Param("ids") Collection<Long> ids, @Param("today") LocalDate today);
+
+    @Query(" select l.id as id, l.dueDate as dueDate from Loan l " +
+            " where l.status = br.com.nerdslab.libraryapi.model.entity.LoanStatus.ACTIVE and l.id > :afterId order by l.id ")
+    List<LoanDue> findActiveDueAfter(@Param("afterId") Long afterId, Pageable pageable);
+
+    @EntityGraph(attributePaths = "book")
+    List<Loan> findByIdIn(Collection<Long> ids);
+
+    @Query(" select l.activeBookId from Loan l where l.activeBookId > :afterId order by l.activeBookId ")
+    List<Long> findActiveBookIdsAfter(@Param("afterId") Long afterId, Pageable pageable);
+
+    /**
+     * Loans written before the status and due date columns existed.
+     */
+    @EntityGraph(attributePaths = "book")
+    @Query(" select l from Loan l where ( l.status is null or l.dueDate is null ) and l.id > :afterId order by l.id ")
+    List<Loan> findUnmigratedAfter(@Param("afterId") Long afterId, Pageable pageable);
 }
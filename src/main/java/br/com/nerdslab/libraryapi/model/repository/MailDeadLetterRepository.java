@@ -0,0 +1,9 @@
+package br.com.nerdslab.libraryapi.model.repository;
+
+import br.com.nerdslab.libraryapi.model.entity.MailDeadLetter;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface MailDeadLetterRepository extends JpaRepository<MailDeadLetter, Long> {
+}
@@ -0,0 +1,25 @@
+package br.com.nerdslab.libraryapi.service;
+
+/**
+ * In-memory set of the books with an open loan, answering availability without going to the database.
+ * Each node keeps its own copy and only sees the loans it wrote, so it is eventually consistent: loans
+ * written by another node show up at the next scheduled rebuild.
+ */
+public interface AvailabilityIndex {
+
+    /**
+     * False until the index was first loaded from the database.
+     */
+    boolean isReady();
+
+    /**
+     * The given ids that are loaned, in the order they were given.
+     */
+    long[] loaned(long[] bookIds);
+
+    void markLoaned(long bookId);
+
+    void markReturned(long bookId);
+
+    void rebuild();
+}
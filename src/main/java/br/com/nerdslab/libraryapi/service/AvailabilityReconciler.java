@@ -0,0 +1,40 @@
+package br.com.nerdslab.libraryapi.service;
+
+import br.com.nerdslab.libraryapi.model.repository.BookRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Rebuilds each book's active loan from the loans table, one range of book ids per transaction. Repairs
+ * whatever was written around the loan service, and fills the column on books that predate it.
+ */
+@Service
+@Slf4j
+public class AvailabilityReconciler {
+
+    private final BookRepository bookRepository;
+    private final TransactionTemplate transactionTemplate;
+
+    @Value("${application.loans.availability.reconcile-chunk-size:1000}")
+    private int chunkSize;
+
+    public AvailabilityReconciler(BookRepository bookRepository, TransactionTemplate transactionTemplate) {
+        this.bookRepository = bookRepository;
+        this.transactionTemplate = transactionTemplate;
+    }
+
+    public int reconcile() {
+        Long maxId = bookRepository.findMaxId();
+        int fixed = 0;
+        for (long fromId = 0; maxId != null && fromId < maxId; fromId += chunkSize) {
+            long from = fromId;
+            fixed += transactionTemplate.execute(status -> bookRepository.reconcileActiveLoans(from, from + chunkSize));
+        }
+        if (fixed > 0) {
+            log.warn("book availability: {} books had a stale active loan", fixed);
+        }
+        return fixed;
+    }
+}
@@ -0,0 +1,15 @@
+package br.com.nerdslab.libraryapi.service;
+
+import br.com.nerdslab.libraryapi.api.dto.BookImportResultDTO;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+public interface BookImportService {
+
+    enum Format {
+        NDJSON, CSV
+    }
+
+    BookImportResultDTO importBooks(InputStream input, Format format) throws IOException;
+}
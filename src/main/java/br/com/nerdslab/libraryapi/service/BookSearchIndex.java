@@ -0,0 +1,24 @@
+package br.com.nerdslab.libraryapi.service;
+
+import br.com.nerdslab.libraryapi.model.entity.Book;
+import org.springframework.data.domain.Example;
+import org.springframework.data.jpa.domain.Specification;
+
+import java.util.Collection;
+
+public interface BookSearchIndex {
+
+    void index(Book book);
+
+    void indexNew(Collection<Book> books);
+
+    void remove(Book book);
+
+    void rebuild();
+
+    void refreshCatalogSize();
+
+    boolean supports(Book filter);
+
+    Specification<Book> matching(Example<Book> example);
+}
@@ -4,12 +4,19 @@ package br.com.nerdslab.libraryapi.service;
 import br.com.nerdslab.libraryapi.model.entity.Book;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 
+import java.util.Collection;
+import java.util.Map;
 import java.util.Optional;
 
 public interface BookService {
     Book save(Book any);
 
+    /**
+     * The book is shared through the cache with every other caller: copy it, with {@code toBuilder()},
+     * before changing it.
+     */
     Optional<Book> getById(Long id);
 
     void delete(Book book);
@@ -18,5 +25,20 @@ public interface BookService {
 
     Page<Book> find(Book filter, Pageable pageRequest);
 
+    Slice<Book> findAfter(Book filter, Long afterId, int size);
+
+    /**
+     * Cached like {@link #getById(Long)}, so the book must not be changed either.
+     */
     Optional<Book> getBookByIsbn(String isbn);
+
+    /**
+     * The books found for the given ids, keyed by id; missing ids are left out.
+     */
+    Map<Long, Book> getByIds(Collection<Long> ids);
+
+    /**
+     * The books found for the given ISBNs, keyed by ISBN; missing ISBNs are left out.
+     */
+    Map<String, Book> getByIsbns(Collection<String> isbns);
 }
@@ -4,4 +4,6 @@ import java.util.List;
 
 public interface EmailService {
     void sendMails(String message, List<String> mailsList);
+
+    void sendMails(String message, List<String> mailsList, MailDispatcher.DeliveryListener listener);
 }
@@ -0,0 +1,16 @@
+package br.com.nerdslab.libraryapi.service;
+
+/**
+ * Probabilistic set of the ISBNs in the catalog: {@link #mightExist(String)} never answers {@code false}
+ * for a stored ISBN, so a negative answer lets callers skip the database lookup.
+ */
+public interface IsbnFilter {
+
+    boolean mightExist(String isbn);
+
+    void add(String isbn);
+
+    void remove(String isbn);
+
+    void rebuild();
+}
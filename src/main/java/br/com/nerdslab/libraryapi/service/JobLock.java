@@ -0,0 +1,15 @@
+package br.com.nerdslab.libraryapi.service;
+
+import java.time.Duration;
+
+public interface JobLock {
+
+    /**
+     * Runs the task unless another node holds the named lease. The lease lasts at most
+     * {@code lockAtMostFor}, in case the node dies while running, and at least {@code lockAtLeastFor}, so a
+     * node whose clock is a little behind does not run the same job again once the task is over.
+     *
+     * @return whether the task ran here
+     */
+    boolean runLocked(String name, Duration lockAtMostFor, Duration lockAtLeastFor, Runnable task);
+}
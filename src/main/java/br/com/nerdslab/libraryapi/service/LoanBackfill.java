@@ -0,0 +1,77 @@
+package br.com.nerdslab.libraryapi.service;
+
+import br.com.nerdslab.libraryapi.model.entity.Loan;
+import br.com.nerdslab.libraryapi.model.entity.LoanStatus;
+import br.com.nerdslab.libraryapi.model.repository.LoanRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.core.annotation.Order;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+
+/**
+ * Fills status and due date on the loans stored before those columns existed, one chunk per transaction,
+ * at startup. Once no row is left the columns can be made not null.
+ */
+@Service
+@Order(0)
+@Slf4j
+public class LoanBackfill implements ApplicationRunner {
+
+    private final LoanRepository repository;
+    private final LoanPolicy loanPolicy;
+    private final TransactionTemplate transactionTemplate;
+
+    @Value("${application.loans.backfill.enabled:true}")
+    private boolean enabled;
+
+    @Value("${application.loans.backfill.chunk-size:500}")
+    private int chunkSize;
+
+    public LoanBackfill(LoanRepository repository, LoanPolicy loanPolicy, TransactionTemplate transactionTemplate) {
+        this.repository = repository;
+        this.loanPolicy = loanPolicy;
+        this.transactionTemplate = transactionTemplate;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (enabled) {
+            backfill();
+        }
+    }
+
+    public void backfill() {
+        long afterId = 0;
+        long total = 0;
+        List<Loan> chunk;
+        do {
+            long from = afterId;
+            chunk = transactionTemplate.execute(status -> backfill(from));
+            if (chunk.isEmpty()) {
+                break;
+            }
+            afterId = chunk.get(chunk.size() - 1).getId();
+            total += chunk.size();
+        } while (chunk.size() == chunkSize);
+        if (total > 0) {
+            log.info("loans: status and due date filled on {} rows", total);
+        }
+    }
+
+    private List<Loan> backfill(long afterId) {
+        List<Loan> loans = repository.findUnmigratedAfter(afterId, PageRequest.of(0, chunkSize));
+        for (Loan loan : loans) {
+            loan.setStatus(LoanStatus.of(loan.getReturned()));
+            if (loan.getDueDate() == null) {
+                loan.setDueDate(loanPolicy.dueDate(loan.getBook(), null, loan.getLoanDate()));
+            }
+        }
+        return loans;
+    }
+}
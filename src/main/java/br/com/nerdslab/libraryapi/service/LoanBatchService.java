@@ -0,0 +1,18 @@
+package br.com.nerdslab.libraryapi.service;
+
+import br.com.nerdslab.libraryapi.api.dto.LoanBatchItemDTO;
+import br.com.nerdslab.libraryapi.api.dto.LoanDTO;
+import br.com.nerdslab.libraryapi.api.dto.ReturnedLoanDTO;
+
+import java.util.List;
+
+/**
+ * Loans and returns of many books at once, answered item by item in the order they were given: an item
+ * that fails carries its errors and does not stop the others.
+ */
+public interface LoanBatchService {
+
+    List<LoanBatchItemDTO> create(List<LoanDTO> loans);
+
+    List<LoanBatchItemDTO> returnLoans(List<ReturnedLoanDTO> returns);
+}
@@ -0,0 +1,13 @@
+package br.com.nerdslab.libraryapi.service;
+
+import br.com.nerdslab.libraryapi.model.entity.Book;
+
+import java.time.LocalDate;
+
+public interface LoanPolicy {
+
+    /**
+     * The book's own loan period wins over the customer class one, which wins over the default.
+     */
+    LocalDate dueDate(Book book, String customerClass, LocalDate loanDate);
+}
@@ -6,8 +6,9 @@ import br.com.nerdslab.libraryapi.model.entity.Book;
 import br.com.nerdslab.libraryapi.model.entity.Loan;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 
-import java.util.List;
+import java.time.LocalDate;
 import java.util.Optional;
 
 public interface LoanService {
@@ -19,7 +20,7 @@ public interface LoanService {
 
     Page<Loan> find(LoanFilterDTO filterDTO, Pageable pageable);
 
-    Page<Loan> getLoansByBook(Book book, Pageable pageable);
+    Slice<Loan> findAfter(LoanFilterDTO filterDTO, LocalDate afterLoanDate, Long afterId, int size);
 
-    List<Loan> getAllLateLoans();
+    Page<Loan> getLoansByBook(Book book, Pageable pageable);
 }
@@ -0,0 +1,39 @@
+package br.com.nerdslab.libraryapi.service;
+
+import org.springframework.mail.SimpleMailMessage;
+
+import java.util.List;
+
+public interface MailDispatcher {
+
+    /**
+     * Queues the messages for delivery and returns; blocks only while the worker queue is full.
+     */
+    void dispatch(List<SimpleMailMessage> messages);
+
+    /**
+     * Same as {@link #dispatch(List)}, reporting the outcome of every message to the listener from the
+     * worker threads.
+     */
+    void dispatch(List<SimpleMailMessage> messages, DeliveryListener listener);
+
+    interface DeliveryListener {
+
+        DeliveryListener NONE = new DeliveryListener() {
+            @Override
+            public void delivered(List<SimpleMailMessage> messages) {
+            }
+
+            @Override
+            public void failed(List<SimpleMailMessage> messages) {
+            }
+        };
+
+        void delivered(List<SimpleMailMessage> messages);
+
+        /**
+         * The messages gave up after every attempt and were dead-lettered.
+         */
+        void failed(List<SimpleMailMessage> messages);
+    }
+}
@@ -0,0 +1,22 @@
+package br.com.nerdslab.libraryapi.service;
+
+import java.util.Collection;
+
+public interface NotificationOutbox {
+
+    /**
+     * Records a notification for every late loan not notified yet.
+     */
+    void enqueueLateLoans();
+
+    /**
+     * Records a notification for the given loans that are overdue and not notified yet.
+     */
+    void enqueue(Collection<Long> loanIds);
+
+    /**
+     * Hands the pending notifications to the mail dispatcher, marking them delivered or failed as the
+     * dispatcher reports back.
+     */
+    void relay();
+}
@@ -0,0 +1,19 @@
+package br.com.nerdslab.libraryapi.service;
+
+import br.com.nerdslab.libraryapi.model.entity.Loan;
+
+import java.time.LocalDate;
+import java.util.List;
+
+public interface OverdueTracker {
+
+    /**
+     * Schedules the loan for its due date, reschedules it when the date changed and drops it once returned.
+     */
+    void track(Loan loan);
+
+    /**
+     * Ids of the loans that became overdue since the last call, up to the given day.
+     */
+    List<Long> expire(LocalDate today);
+}
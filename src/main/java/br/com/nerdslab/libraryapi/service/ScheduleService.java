@@ -1,13 +1,13 @@
 package br.com.nerdslab.libraryapi.service;
 
-import br.com.nerdslab.libraryapi.model.entity.Loan;
 import lombok.RequiredArgsConstructor;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
+import java.time.Duration;
+import java.time.LocalDate;
 import java.util.List;
-import java.util.stream.Collectors;
 
 @Service
 @RequiredArgsConstructor
@@ -15,21 +15,69 @@ public class ScheduleService {
 
     private final static String CRON_LATE_LOANS = "0 0 0 1/1 * ?";
 
-    private final LoanService loanService;
-    private final EmailService emailService;
-
-    @Value("${application.mail.lateloans.message}")
-    private String message;
+    private final NotificationOutbox notificationOutbox;
+    private final OverdueTracker overdueTracker;
+    private final AvailabilityReconciler availabilityReconciler;
+    private final AvailabilityIndex availabilityIndex;
+    private final BookSearchIndex bookSearchIndex;
+    private final JobLock jobLock;
 
+    @Value("${application.loans.overdue.tick-ms:60000}")
+    private long tickMs;
 
+    /**
+     * Safety net for what the tracker can not see, such as loans written by another instance or a tick
+     * whose enqueue failed. The overdue tracker notifies everything else first, so this usually finds nothing.
+     */
     @Scheduled(cron = CRON_LATE_LOANS)
     public void sendMailToLateLoans() {
-        List<Loan> allLateLoans = loanService.getAllLateLoans();
-        List<String> mailsList = allLateLoans.stream()
-                .map(loan -> loan.getCustomerEmail())
-                .collect(Collectors.toList());
+        notificationOutbox.enqueueLateLoans();
+        notificationOutbox.relay();
+    }
+
+    /**
+     * One node per tick: the others keep their expired loans in the wheel until they get the lease, and
+     * what the lease holder already notified is skipped by the outbox then.
+     */
+    @Scheduled(fixedDelayString = "${application.loans.overdue.tick-ms:60000}",
+            initialDelayString = "${application.loans.overdue.tick-ms:60000}")
+    public void notifyOverdueLoans() {
+        jobLock.runLocked("overdue-loans", Duration.ofMillis(tickMs), Duration.ofMillis(tickMs / 2), () -> {
+            List<Long> overdue = overdueTracker.expire(LocalDate.now());
+            if (!overdue.isEmpty()) {
+                notificationOutbox.enqueue(overdue);
+                notificationOutbox.relay();
+            }
+        });
+    }
 
-        emailService.sendMails(message, mailsList);
+    /**
+     * Picks up what a crashed or failed run left behind: notifications never dispatched, or dispatched
+     * and not confirmed within the lease.
+     */
+    @Scheduled(fixedDelayString = "${application.mail.lateloans.relay-delay-ms:60000}",
+            initialDelayString = "${application.mail.lateloans.relay-delay-ms:60000}")
+    public void relayLateLoanMails() {
+        notificationOutbox.relay();
     }
 
+    /**
+     * The reconciliation runs on a single node, but every node rebuilds its own availability index afterwards,
+     * picking up the loans written by the other nodes.
+     */
+    @Scheduled(cron = "${application.loans.availability.reconcile-cron:0 30 3 * * ?}")
+    public void reconcileAvailability() {
+        jobLock.runLocked("book-availability", Duration.ofHours(1), Duration.ofMinutes(5), availabilityReconciler::reconcile);
+        availabilityIndex.rebuild();
+    }
+
+    /**
+     * Every node counts the catalog again, so its search index judges selectivity on the books saved and
+     * deleted through the other nodes too.
+     */
+    @Scheduled(fixedDelayString = "${application.books.search.catalog-size-refresh-ms:300000}",
+            initialDelayString = "${application.books.search.catalog-size-refresh-ms:300000}")
+    public void refreshSearchCatalogSize() {
+        bookSearchIndex.refreshCatalogSize();
+    }
 }
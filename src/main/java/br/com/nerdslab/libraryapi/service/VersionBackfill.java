@@ -0,0 +1,67 @@
+package br.com.nerdslab.libraryapi.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.core.annotation.Order;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+
+/**
+ * Sets version 0 and the last modification on the books and loans stored before those columns existed, one
+ * range of ids per transaction, at startup. Hibernate takes an entity with a null version for a new one and
+ * can not update it, so this runs before the loan backfill, which updates loans through the entity.
+ */
+@Service
+@Order(-1)
+@Slf4j
+public class VersionBackfill implements ApplicationRunner {
+
+    private static final String[] TABLES = {"book", "loan"};
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+
+    @Value("${application.versions.backfill.enabled:true}")
+    private boolean enabled;
+
+    @Value("${application.versions.backfill.chunk-size:1000}")
+    private int chunkSize;
+
+    public VersionBackfill(JdbcTemplate jdbcTemplate, TransactionTemplate transactionTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (enabled) {
+            backfill();
+        }
+    }
+
+    public void backfill() {
+        Timestamp now = Timestamp.from(Instant.now());
+        for (String table : TABLES) {
+            Long minId = jdbcTemplate.queryForObject(" select min(id) from " + table + " where version is null ", Long.class);
+            if (minId == null) {
+                continue;
+            }
+            Long maxId = jdbcTemplate.queryForObject(" select max(id) from " + table + " where version is null ", Long.class);
+            long total = 0;
+            for (long fromId = minId - 1; fromId < maxId; fromId += chunkSize) {
+                long from = fromId;
+                total += transactionTemplate.execute(status -> jdbcTemplate.update(
+                        " update " + table + " set version = 0, last_modified = coalesce(last_modified, ?) " +
+                                " where id > ? and id <= ? and version is null ",
+                        now, from, from + chunkSize));
+            }
+            log.info("{}: version filled on {} rows", table, total);
+        }
+    }
+}
@@ -0,0 +1,328 @@
+package br.com.nerdslab.libraryapi.service.impl;
+
+import br.com.nerdslab.libraryapi.model.repository.LoanRepository;
+import br.com.nerdslab.libraryapi.service.AvailabilityIndex;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.core.annotation.Order;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Compressed bitmap of the loaned book ids, loaded from the open loans at startup, after the loan backfill,
+ * and rebuilt after each availability reconciliation. Loans and returns are applied once their transaction
+ * commits, so a rolled back loan never shows up.
+ * A batch of ids is answered under a single read lock.
+ */
+@Service
+@Order(2)
+@Slf4j
+public class AvailabilityIndexImpl implements AvailabilityIndex, ApplicationRunner {
+
+    private final LoanRepository repository;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private volatile Bitmap loaned;
+
+    private Bitmap rebuilding;
+
+    @Value("${application.books.availability.rebuild-chunk-size:10000}")
+    private int chunkSize;
+
+    public AvailabilityIndexImpl(LoanRepository repository) {
+        this.repository = repository;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        rebuild();
+    }
+
+    @Override
+    public boolean isReady() {
+        return loaned != null;
+    }
+
+    @Override
+    public long[] loaned(long[] bookIds) {
+        long[] found = new long[bookIds.length];
+        int count = 0;
+        lock.readLock().lock();
+        try {
+            if (loaned != null) {
+                for (long bookId : bookIds) {
+                    if (loaned.contains(bookId)) {
+                        found[count++] = bookId;
+                    }
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return Arrays.copyOf(found, count);
+    }
+
+    @Override
+    public void markLoaned(long bookId) {
+        afterCommit(() -> apply(bookId, true));
+    }
+
+    @Override
+    public void markReturned(long bookId) {
+        afterCommit(() -> apply(bookId, false));
+    }
+
+    @Override
+    public void rebuild() {
+        Bitmap next = new Bitmap();
+        lock.writeLock().lock();
+        try {
+            rebuilding = next;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        try {
+            long afterId = 0;
+            List<Long> chunk;
+            do {
+                chunk = repository.findActiveBookIdsAfter(afterId, PageRequest.of(0, chunkSize));
+                lock.writeLock().lock();
+                try {
+                    chunk.forEach(next::add);
+                } finally {
+                    lock.writeLock().unlock();
+                }
+                if (!chunk.isEmpty()) {
+                    afterId = chunk.get(chunk.size() - 1);
+                }
+            } while (chunk.size() == chunkSize);
+            lock.writeLock().lock();
+            try {
+                loaned = next;
+            } finally {
+                lock.writeLock().unlock();
+            }
+            log.info("availability index rebuilt for {} loaned books", next.cardinality());
+        } finally {
+            lock.writeLock().lock();
+            try {
+                rebuilding = null;
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    private void apply(long bookId, boolean loan) {
+        lock.writeLock().lock();
+        try {
+            for (Bitmap bitmap : new Bitmap[]{loaned, rebuilding}) {
+                if (bitmap == null) {
+                    continue;
+                }
+                if (loan) {
+                    bitmap.add(bookId);
+                } else {
+                    bitmap.remove(bookId);
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private static void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+
+    /**
+     * Roaring-style set of longs: the ids are grouped by their upper 48 bits, and each group keeps its lower
+     * 16 bits either as a sorted array, while it holds up to {@value #ARRAY_MAX} of them, or as a 65536-bit
+     * bitmap. Ids are never boxed. Not thread safe, guarded by the enclosing index.
+     */
+    static class Bitmap {
+
+        static final int ARRAY_MAX = 4096;
+
+        private long[] keys = new long[4];
+        private Container[] containers = new Container[4];
+        private int size;
+
+        boolean contains(long value) {
+            int index = Arrays.binarySearch(keys, 0, size, value >>> 16);
+            return index >= 0 && containers[index].contains((char) value);
+        }
+
+        void add(long value) {
+            long key = value >>> 16;
+            int index = Arrays.binarySearch(keys, 0, size, key);
+            if (index < 0) {
+                index = -index - 1;
+                if (size == keys.length) {
+                    keys = Arrays.copyOf(keys, size * 2);
+                    containers = Arrays.copyOf(containers, size * 2);
+                }
+                System.arraycopy(keys, index, keys, index + 1, size - index);
+                System.arraycopy(containers, index, containers, index + 1, size - index);
+                keys[index] = key;
+                containers[index] = new ArrayContainer();
+                size++;
+            }
+            containers[index] = containers[index].add((char) value);
+        }
+
+        void remove(long value) {
+            int index = Arrays.binarySearch(keys, 0, size, value >>> 16);
+            if (index < 0) {
+                return;
+            }
+            Container container = containers[index].remove((char) value);
+            if (container.cardinality() > 0) {
+                containers[index] = container;
+                return;
+            }
+            System.arraycopy(keys, index + 1, keys, index, size - index - 1);
+            System.arraycopy(containers, index + 1, containers, index, size - index - 1);
+            containers[--size] = null;
+        }
+
+        long cardinality() {
+            long cardinality = 0;
+            for (int i = 0; i < size; i++) {
+                cardinality += containers[i].cardinality();
+            }
+            return cardinality;
+        }
+    }
+
+    private interface Container {
+
+        boolean contains(char low);
+
+        Container add(char low);
+
+        Container remove(char low);
+
+        int cardinality();
+    }
+
+    private static class ArrayContainer implements Container {
+
+        private char[] values = new char[4];
+        private int cardinality;
+
+        @Override
+        public boolean contains(char low) {
+            return Arrays.binarySearch(values, 0, cardinality, low) >= 0;
+        }
+
+        @Override
+        public Container add(char low) {
+            int index = Arrays.binarySearch(values, 0, cardinality, low);
+            if (index >= 0) {
+                return this;
+            }
+            if (cardinality == Bitmap.ARRAY_MAX) {
+                return new BitmapContainer(values, cardinality).add(low);
+            }
+            index = -index - 1;
+            if (cardinality == values.length) {
+                values = Arrays.copyOf(values, Math.min(cardinality * 2, Bitmap.ARRAY_MAX));
+            }
+            System.arraycopy(values, index, values, index + 1, cardinality - index);
+            values[index] = low;
+            cardinality++;
+            return this;
+        }
+
+        @Override
+        public Container remove(char low) {
+            int index = Arrays.binarySearch(values, 0, cardinality, low);
+            if (index >= 0) {
+                System.arraycopy(values, index + 1, values, index, cardinality - index - 1);
+                cardinality--;
+            }
+            return this;
+        }
+
+        @Override
+        public int cardinality() {
+            return cardinality;
+        }
+    }
+
+    private static class BitmapContainer implements Container {
+
+        private final long[] words = new long[1024];
+        private int cardinality;
+
+        BitmapContainer(char[] values, int count) {
+            for (int i = 0; i < count; i++) {
+                add(values[i]);
+            }
+        }
+
+        @Override
+        public boolean contains(char low) {
+            return (words[low >>> 6] & (1L << low)) != 0;
+        }
+
+        @Override
+        public Container add(char low) {
+            long word = words[low >>> 6];
+            long bit = 1L << low;
+            if ((word & bit) == 0) {
+                words[low >>> 6] = word | bit;
+                cardinality++;
+            }
+            return this;
+        }
+
+        @Override
+        public Container remove(char low) {
+            long word = words[low >>> 6];
+            long bit = 1L << low;
+            if ((word & bit) == 0) {
+                return this;
+            }
+            words[low >>> 6] = word & ~bit;
+            cardinality--;
+            return cardinality <= Bitmap.ARRAY_MAX ? toArray() : this;
+        }
+
+        @Override
+        public int cardinality() {
+            return cardinality;
+        }
+
+        private Container toArray() {
+            ArrayContainer array = new ArrayContainer();
+            for (int i = 0; i < words.length; i++) {
+                long word = words[i];
+                while (word != 0) {
+                    array.add((char) (i * 64 + Long.numberOfTrailingZeros(word)));
+                    word &= word - 1;
+                }
+            }
+            return array;
+        }
+    }
+}
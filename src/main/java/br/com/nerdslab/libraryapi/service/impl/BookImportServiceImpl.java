@@ -0,0 +1,283 @@
+package br.com.nerdslab.libraryapi.service.impl;
+
+import br.com.nerdslab.libraryapi.api.dto.BookDTO;
+import br.com.nerdslab.libraryapi.api.dto.BookImportErrorDTO;
+import br.com.nerdslab.libraryapi.api.dto.BookImportResultDTO;
+import br.com.nerdslab.libraryapi.model.entity.Book;
+import br.com.nerdslab.libraryapi.service.BookImportService;
+import br.com.nerdslab.libraryapi.service.BookSearchIndex;
+import br.com.nerdslab.libraryapi.service.IsbnFilter;
+import com.fasterxml.jackson.core.JsonLocation;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.RuntimeJsonMappingException;
+import com.fasterxml.jackson.dataformat.csv.CsvMapper;
+import com.fasterxml.jackson.dataformat.csv.CsvSchema;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.id.IdentifierGenerator;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManager;
+import javax.validation.ConstraintViolation;
+import javax.validation.Validator;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Reads the input one row at a time and writes it in batches, so memory stays bounded by the batch size
+ * and the reported errors whatever the size of the file. Each batch commits on its own: a failure stops
+ * the load but keeps what was already imported.
+ */
+@Service
+@Slf4j
+public class BookImportServiceImpl implements BookImportService {
+
+    private static final String INSERT = " insert into book (id, title, author, isbn, loan_days, version, last_modified) values (?, ?, ?, ?, ?, 0, ?) ";
+
+    private static final String DUPLICATED_ISBN = "Isbn já cadastrado.";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final EntityManager entityManager;
+    private final NamedParameterJdbcTemplate namedJdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final Validator validator;
+    private final ObjectReader jsonReader;
+    private final ObjectReader csvReader;
+    private final BookSearchIndex searchIndex;
+    private final IsbnFilter isbnFilter;
+
+    @Value("${application.books.import.batch-size:1000}")
+    private int batchSize;
+
+    @Value("${application.books.import.max-errors:1000}")
+    private int maxErrors;
+
+    public BookImportServiceImpl(JdbcTemplate jdbcTemplate,
+                                 EntityManager entityManager,
+                                 TransactionTemplate transactionTemplate,
+                                 Validator validator,
+                                 ObjectMapper objectMapper,
+                                 BookSearchIndex searchIndex,
+                                 IsbnFilter isbnFilter) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.entityManager = entityManager;
+        this.namedJdbcTemplate = new NamedParameterJdbcTemplate(jdbcTemplate);
+        this.transactionTemplate = transactionTemplate;
+        this.validator = validator;
+        this.jsonReader = objectMapper.readerFor(BookDTO.class);
+        this.csvReader = new CsvMapper()
+                .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES)
+                .readerFor(BookDTO.class)
+                .with(CsvSchema.emptySchema().withHeader());
+        this.searchIndex = searchIndex;
+        this.isbnFilter = isbnFilter;
+    }
+
+    @Override
+    public BookImportResultDTO importBooks(InputStream input, Format format) throws IOException {
+        ImportRun run = new ImportRun();
+        try (Reader reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8))) {
+            if (format == Format.CSV) {
+                readCsv(reader, run);
+            } else {
+                readNdjson((BufferedReader) reader, run);
+            }
+        }
+        run.flush();
+        log.info("book import finished: {} imported, {} rejected", run.imported, run.rejected);
+        return BookImportResultDTO.builder()
+                .imported(run.imported)
+                .rejected(run.rejected)
+                .errors(run.errors)
+                .build();
+    }
+
+    private void readNdjson(BufferedReader reader, ImportRun run) throws IOException {
+        String line;
+        long lineNumber = 0;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            if (line.trim().isEmpty()) {
+                continue;
+            }
+            try {
+                run.accept(lineNumber, jsonReader.readValue(line));
+            } catch (JsonProcessingException e) {
+                run.reject(lineNumber, null, Collections.singletonList(parseError(e)));
+            }
+        }
+    }
+
+    private void readCsv(Reader reader, ImportRun run) throws IOException {
+        try (MappingIterator<BookDTO> rows = csvReader.readValues(reader)) {
+            long failedAt = -1;
+            while (true) {
+                JsonLocation location = rows.getCurrentLocation();
+                long lineNumber = location == null ? 0 : location.getLineNr();
+                try {
+                    if (!rows.hasNextValue()) {
+                        break;
+                    }
+                    run.accept(lineNumber, rows.nextValue());
+                } catch (RuntimeJsonMappingException | JsonProcessingException e) {
+                    if (location != null && location.getCharOffset() == failedAt) {
+                        throw e;
+                    }
+                    failedAt = location == null ? -1 : location.getCharOffset();
+                    run.reject(lineNumber, null, Collections.singletonList(parseError(e)));
+                }
+            }
+        }
+    }
+
+    private static String parseError(Exception e) {
+        Throwable cause = e instanceof RuntimeJsonMappingException && e.getCause() != null ? e.getCause() : e;
+        return cause instanceof JsonProcessingException
+                ? ((JsonProcessingException) cause).getOriginalMessage()
+                : cause.getMessage();
+    }
+
+    private class ImportRun {
+
+        private final List<Row> pending = new ArrayList<>();
+        private final List<BookImportErrorDTO> errors = new ArrayList<>();
+        private long imported;
+        private long rejected;
+
+        void accept(long line, BookDTO dto) {
+            Set<ConstraintViolation<BookDTO>> violations = validator.validate(dto);
+            if (!violations.isEmpty()) {
+                reject(line, dto.getIsbn(), violations.stream()
+                        .map(violation -> violation.getPropertyPath() + " " + violation.getMessage())
+                        .sorted()
+                        .collect(Collectors.toList()));
+                return;
+            }
+            pending.add(new Row(line, dto));
+            if (pending.size() >= batchSize) {
+                flush();
+            }
+        }
+
+        void reject(long line, String isbn, List<String> messages) {
+            rejected++;
+            if (errors.size() < maxErrors) {
+                errors.add(BookImportErrorDTO.builder().line(line).isbn(isbn).errors(messages).build());
+            }
+        }
+
+        /**
+         * Drops the ISBNs repeated in the batch or already stored, then inserts the rest. The stored ISBNs
+         * are only looked up for the ones the filter can not rule out.
+         */
+        void flush() {
+            if (pending.isEmpty()) {
+                return;
+            }
+            Map<String, Row> rows = new LinkedHashMap<>();
+            for (Row row : pending) {
+                if (rows.putIfAbsent(row.book.getIsbn(), row) != null) {
+                    reject(row.line, row.book.getIsbn(), Collections.singletonList(DUPLICATED_ISBN));
+                }
+            }
+            pending.clear();
+
+            List<String> known = rows.keySet().stream().filter(isbnFilter::mightExist).collect(Collectors.toList());
+            if (!known.isEmpty()) {
+                namedJdbcTemplate.queryForList(
+                        " select isbn from book where isbn in (:isbns) ",
+                        new MapSqlParameterSource("isbns", known),
+                        String.class)
+                        .forEach(isbn -> {
+                            Row row = rows.remove(isbn);
+                            reject(row.line, isbn, Collections.singletonList(DUPLICATED_ISBN));
+                        });
+            }
+            if (rows.isEmpty()) {
+                return;
+            }
+
+            List<Book> books;
+            try {
+                books = transactionTemplate.execute(status -> insert(rows.values()));
+            } catch (DataIntegrityViolationException e) {
+                // an ISBN created concurrently since the lookup, row by row to tell which one
+                books = new ArrayList<>();
+                for (Row row : rows.values()) {
+                    try {
+                        books.addAll(transactionTemplate.execute(status -> insert(Collections.singletonList(row))));
+                    } catch (DataIntegrityViolationException duplicated) {
+                        reject(row.line, row.book.getIsbn(), Collections.singletonList(DUPLICATED_ISBN));
+                    }
+                }
+            }
+            books.forEach(book -> isbnFilter.add(book.getIsbn()));
+            imported += books.size();
+        }
+
+        /**
+         * Ids come from the generator Hibernate uses for books, so they share its pooled blocks and the
+         * rows need no reading back.
+         */
+        private List<Book> insert(Iterable<Row> rows) {
+            SharedSessionContractImplementor session = entityManager.unwrap(SharedSessionContractImplementor.class);
+            IdentifierGenerator ids = session.getFactory().getMetamodel()
+                    .entityPersister(Book.class)
+                    .getIdentifierGenerator();
+
+            Instant now = Instant.now();
+            List<Book> books = new ArrayList<>();
+            List<Object[]> args = new ArrayList<>();
+            for (Row row : rows) {
+                Book book = Book.builder()
+                        .title(row.book.getTitle())
+                        .author(row.book.getAuthor())
+                        .isbn(row.book.getIsbn())
+                        .loanDays(row.book.getLoanDays())
+                        .version(0L)
+                        .lastModified(now)
+                        .build();
+                book.setId((Long) ids.generate(session, book));
+                books.add(book);
+                args.add(new Object[]{book.getId(), book.getTitle(), book.getAuthor(), book.getIsbn(), book.getLoanDays(), Timestamp.from(now)});
+            }
+            jdbcTemplate.batchUpdate(INSERT, args);
+            searchIndex.indexNew(books);
+            return books;
+        }
+    }
+
+    private static class Row {
+
+        private final long line;
+        private final BookDTO book;
+
+        Row(long line, BookDTO book) {
+            this.line = line;
+            this.book = book;
+        }
+    }
+}
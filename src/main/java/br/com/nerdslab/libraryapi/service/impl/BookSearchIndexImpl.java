@@ -0,0 +1,257 @@
+package br.com.nerdslab.libraryapi.service.impl;
+
+import br.com.nerdslab.libraryapi.model.entity.Book;
+import br.com.nerdslab.libraryapi.model.entity.BookTrigram;
+import br.com.nerdslab.libraryapi.service.BookSearchIndex;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Example;
+import org.springframework.data.jpa.convert.QueryByExamplePredicateBuilder;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.criteria.Predicate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Trigram index over book title and author, so substring searches are driven by an index
+ * lookup instead of a {@code lower(col) like '%x%'} scan over the whole book table.
+ * Searches fall back to the plain example until the index was checked or rebuilt at startup. The catalog
+ * size used to judge selectivity is counted from the book table at that point and again on a schedule, so
+ * each node follows the books written by the others.
+ */
+@Service
+@Slf4j
+public class BookSearchIndexImpl implements BookSearchIndex {
+
+    static final int GRAM = 3;
+
+    private static final int REBUILD_CHUNK = 1000;
+
+    private static final int SELECTIVITY_DIVISOR = 100;
+
+    private static final int MIN_POSTINGS = 100;
+
+    private static final int MAX_POSTINGS = 10_000;
+
+    private static final String INSERT =
+            " insert into book_trigram (field, gram, book_id) values (?, ?, ?) ";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final TransactionTemplate transactionTemplate;
+
+    private volatile long catalogSize;
+
+    private volatile boolean ready;
+
+    public BookSearchIndexImpl(JdbcTemplate jdbcTemplate, TransactionTemplate transactionTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+    }
+
+    @Override
+    @Transactional
+    public void index(Book book) {
+        delete(book);
+        jdbcTemplate.batchUpdate(INSERT, rows(book.getId(), book.getTitle(), book.getAuthor()));
+    }
+
+    /**
+     * For books that were never indexed, so there is nothing to delete first.
+     */
+    @Override
+    @Transactional
+    public void indexNew(Collection<Book> books) {
+        List<Object[]> rows = new ArrayList<>();
+        books.forEach(book -> rows.addAll(rows(book.getId(), book.getTitle(), book.getAuthor())));
+        jdbcTemplate.batchUpdate(INSERT, rows);
+    }
+
+    @Override
+    @Transactional
+    public void remove(Book book) {
+        delete(book);
+    }
+
+    private int delete(Book book) {
+        return jdbcTemplate.update(" delete from book_trigram where book_id = ? ", book.getId());
+    }
+
+    /**
+     * Walks the book table in id order, one range of ids per transaction, so it can run over a large catalog
+     * while books are saved and removed. A range first deletes its trigrams, which waits for the index and
+     * remove calls still holding some of them, and only then reads its books, so it indexes what those
+     * committed; the calls coming later replace the rows of their book as usual. The ranges not reached yet
+     * keep their rows, and searches keep using them.
+     */
+    @Override
+    public void rebuild() {
+        long lastId = 0;
+        int indexed = 0;
+        while (true) {
+            long afterId = lastId;
+            List<Book> books = transactionTemplate.execute(status -> rebuildRange(afterId));
+            if (books.isEmpty()) {
+                break;
+            }
+            lastId = books.get(books.size() - 1).getId();
+            indexed += books.size();
+        }
+        refreshCatalogSize();
+        ready = true;
+        log.info("book search index rebuilt for {} books", indexed);
+    }
+
+    /**
+     * The last range is open-ended, so it also drops the rows left by books deleted past the last one.
+     */
+    private List<Book> rebuildRange(long afterId) {
+        Long toId = jdbcTemplate.queryForObject(
+                " select max(id) from ( select id from book where id > ? order by id limit ? ) chunk ",
+                Long.class, afterId, REBUILD_CHUNK);
+        long upTo = toId == null ? Long.MAX_VALUE : toId;
+        jdbcTemplate.update(" delete from book_trigram where book_id > ? and book_id <= ? ", afterId, upTo);
+        List<Book> books = jdbcTemplate.query(
+                " select id, title, author from book where id > ? and id <= ? order by id limit ? ",
+                (rs, rowNum) -> Book.builder()
+                        .id(rs.getLong("id"))
+                        .title(rs.getString("title"))
+                        .author(rs.getString("author"))
+                        .build(),
+                afterId, upTo, REBUILD_CHUNK);
+        List<Object[]> rows = new ArrayList<>();
+        books.forEach(book -> rows.addAll(rows(book.getId(), book.getTitle(), book.getAuthor())));
+        jdbcTemplate.batchUpdate(INSERT, rows);
+        return books;
+    }
+
+    @Override
+    public void refreshCatalogSize() {
+        catalogSize = jdbcTemplate.queryForObject(" select count(*) from book ", Long.class);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuildIfEmpty() {
+        Boolean empty = jdbcTemplate.queryForObject(
+                " select case when exists ( select 1 from book_trigram ) then false else true end ", Boolean.class);
+        Boolean hasBooks = jdbcTemplate.queryForObject(
+                " select case when exists ( select 1 from book ) then true else false end ", Boolean.class);
+        if (Boolean.TRUE.equals(empty) && Boolean.TRUE.equals(hasBooks)) {
+            rebuild();
+            return;
+        }
+        refreshCatalogSize();
+        ready = true;
+    }
+
+    @Override
+    public boolean supports(Book filter) {
+        return ready && (isIndexable(filter.getTitle()) || isIndexable(filter.getAuthor()));
+    }
+
+    /**
+     * Keeps the example predicates, which discard trigram false positives, and restricts the query to the
+     * books holding the searched trigrams. When no trigram of the filter is selective the example alone is
+     * used, since walking a long posting list costs more than scanning the book table.
+     */
+    @Override
+    public Specification<Book> matching(Example<Book> example) {
+        Book filter = example.getProbe();
+        Set<Long> ids = intersection(
+                candidates(BookTrigram.Field.TITLE, filter.getTitle()),
+                candidates(BookTrigram.Field.AUTHOR, filter.getAuthor()));
+        return (root, query, cb) -> {
+            Predicate predicate = QueryByExamplePredicateBuilder.getPredicate(root, cb, example);
+            if (ids == null) {
+                return predicate;
+            }
+            if (ids.isEmpty()) {
+                return cb.disjunction();
+            }
+            return cb.and(predicate, root.get("id").in(ids));
+        };
+    }
+
+    /**
+     * Ids of the books holding every non-overlapping trigram covering the value, or {@code null} when
+     * each posting list is longer than the hundredth part of the catalog. Posting lists are read only
+     * up to that limit, so a common trigram never costs more than a bounded index walk.
+     */
+    private Set<Long> candidates(BookTrigram.Field field, String value) {
+        if (!isIndexable(value)) {
+            return null;
+        }
+        String normalized = value.toLowerCase(Locale.ROOT);
+        Set<String> grams = new LinkedHashSet<>();
+        for (int i = 0; i + GRAM <= normalized.length(); i += GRAM) {
+            grams.add(normalized.substring(i, i + GRAM));
+        }
+        grams.add(normalized.substring(normalized.length() - GRAM));
+
+        int limit = (int) Math.max(MIN_POSTINGS, Math.min(catalogSize / SELECTIVITY_DIVISOR, MAX_POSTINGS));
+
+        Set<Long> candidates = null;
+        for (String gram : grams) {
+            List<Long> postings = jdbcTemplate.queryForList(
+                    " select book_id from book_trigram where field = ? and gram = ? limit ? ",
+                    Long.class, field.name(), gram, limit + 1);
+            if (postings.size() > limit) {
+                continue;
+            }
+            candidates = intersection(candidates, new HashSet<>(postings));
+            if (candidates.isEmpty()) {
+                break;
+            }
+        }
+        return candidates;
+    }
+
+    /**
+     * {@code null} stands for "not restricted by the index".
+     */
+    private static Set<Long> intersection(Set<Long> candidates, Set<Long> ids) {
+        if (candidates == null || ids == null) {
+            return candidates == null ? ids : candidates;
+        }
+        candidates.retainAll(ids);
+        return candidates;
+    }
+
+    private static boolean isIndexable(String value) {
+        return value != null && value.length() >= GRAM;
+    }
+
+    private static List<Object[]> rows(Long bookId, String title, String author) {
+        List<Object[]> rows = new ArrayList<>();
+        for (String gram : trigrams(title)) {
+            rows.add(new Object[]{BookTrigram.Field.TITLE.name(), gram, bookId});
+        }
+        for (String gram : trigrams(author)) {
+            rows.add(new Object[]{BookTrigram.Field.AUTHOR.name(), gram, bookId});
+        }
+        return rows;
+    }
+
+    static Set<String> trigrams(String value) {
+        Set<String> grams = new LinkedHashSet<>();
+        if (value == null) {
+            return grams;
+        }
+        String normalized = value.toLowerCase(Locale.ROOT);
+        for (int i = 0; i + GRAM <= normalized.length(); i++) {
+            grams.add(normalized.substring(i, i + GRAM));
+        }
+        return grams;
+    }
+}
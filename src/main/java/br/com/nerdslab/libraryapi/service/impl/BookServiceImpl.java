@@ -1,56 +1,145 @@
 package br.com.nerdslab.libraryapi.service.impl;
 
+import br.com.nerdslab.libraryapi.config.CacheConfig;
+import br.com.nerdslab.libraryapi.config.ReplicaRoutingDataSource;
 import br.com.nerdslab.libraryapi.exception.BusinessException;
 import br.com.nerdslab.libraryapi.model.entity.Book;
 import br.com.nerdslab.libraryapi.model.repository.BookRepository;
+import br.com.nerdslab.libraryapi.service.BookSearchIndex;
+import br.com.nerdslab.libraryapi.service.IsbnFilter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.cache.annotation.Caching;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.data.domain.Example;
 import org.springframework.data.domain.ExampleMatcher;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.function.Function;
 
 @Service
 public class BookServiceImpl implements br.com.nerdslab.libraryapi.service.BookService {
 
     private BookRepository repository;
+    private BookSearchIndex searchIndex;
+    private IsbnFilter isbnFilter;
+    private CacheManager cacheManager;
+    private TransactionTemplate readOnly;
+    private SingleFlight<Long, Optional<Book>> byId;
+    private SingleFlight<String, Optional<Book>> byIsbn;
+    private int batchChunkSize;
 
-    public BookServiceImpl(BookRepository repository) {
+    public BookServiceImpl(BookRepository repository,
+                           BookSearchIndex searchIndex,
+                           IsbnFilter isbnFilter,
+                           CacheManager cacheManager,
+                           PlatformTransactionManager transactionManager,
+                           MeterRegistry meterRegistry,
+                           @Value("${application.books.batch.chunk-size:500}") int batchChunkSize,
+                           @Value("${application.books.coalescing.max-wait-ms:2000}") long maxWaitMs) {
         this.repository = repository;
+        this.searchIndex = searchIndex;
+        this.isbnFilter = isbnFilter;
+        this.cacheManager = cacheManager;
+        this.readOnly = new TransactionTemplate(transactionManager);
+        this.readOnly.setReadOnly(true);
+        this.byId = singleFlight(meterRegistry, "id", Duration.ofMillis(maxWaitMs));
+        this.byIsbn = singleFlight(meterRegistry, "isbn", Duration.ofMillis(maxWaitMs));
+        this.batchChunkSize = batchChunkSize;
+    }
+
+    private static <K> SingleFlight<K, Optional<Book>> singleFlight(MeterRegistry meterRegistry, String key, Duration maxWait) {
+        return new SingleFlight<>(maxWait,
+                meterRegistry.counter("library.books.lookups.loaded", "key", key),
+                meterRegistry.counter("library.books.lookups.coalesced", "key", key),
+                meterRegistry.counter("library.books.lookups.timed-out", "key", key));
     }
 
     @Override
+    @Transactional
     public Book save(Book book) {
-        if (repository.existsByIsbn(book.getIsbn())) {
+        if (isbnFilter.mightExist(book.getIsbn()) && repository.existsByIsbn(book.getIsbn())) {
             throw new BusinessException("Isbn já cadastrado.");
         }
-        return repository.save(book);
+        Book saved;
+        try {
+            saved = repository.saveAndFlush(book);
+        } catch (DataIntegrityViolationException e) {
+            // the unique isbn constraint, for the filter misses and concurrent inserts
+            throw new BusinessException("Isbn já cadastrado.");
+        }
+        isbnFilter.add(saved.getIsbn());
+        searchIndex.index(saved);
+        return saved;
     }
 
+    /**
+     * The lookups by key read from the primary: they feed updates, deletes and loans, and fill the cache,
+     * where a lagging replica would keep a stale book after its eviction.
+     * <p>
+     * Only cache misses get here, and concurrent misses on one key share a single load. The transaction is
+     * opened by the load itself, so the callers waiting for it hold no connection. What is cached and shared
+     * is a {@link #detached(Book) detached copy}, never the entity of the loading session.
+     */
     @Override
+    @Cacheable(cacheNames = CacheConfig.BOOKS, unless = "#result == null")
     public Optional<Book> getById(Long id) {
-        return this.repository.findById(id);
+        return byId.load(id, () -> readOnly.execute(status ->
+                ReplicaRoutingDataSource.onPrimary(() -> this.repository.findById(id)).map(BookServiceImpl::detached)));
     }
 
     @Override
+    @Transactional
+    @Caching(evict = {
+            @CacheEvict(cacheNames = CacheConfig.BOOKS, key = "#book.id", condition = "#book?.id != null"),
+            @CacheEvict(cacheNames = CacheConfig.BOOKS_BY_ISBN, key = "#book.isbn", condition = "#book?.isbn != null")
+    })
     public void delete(Book book) {
         if (book == null || book.getId() == null) {
             throw new IllegalArgumentException("Book id cant be null");
         }
+        this.searchIndex.remove(book);
         this.repository.delete(book);
+        this.isbnFilter.remove(book.getIsbn());
     }
 
     @Override
+    @Transactional
+    @Caching(evict = {
+            @CacheEvict(cacheNames = CacheConfig.BOOKS, key = "#book.id", condition = "#book?.id != null"),
+            @CacheEvict(cacheNames = CacheConfig.BOOKS_BY_ISBN, key = "#book.isbn", condition = "#book?.isbn != null")
+    })
     public Book update(Book book) {
         if (book == null || book.getId() == null) {
             throw new IllegalArgumentException("Book id cant be null");
         }
 
-        return this.repository.save(book);
+        Book updated = this.repository.save(book);
+        this.searchIndex.index(updated);
+        return updated;
     }
 
     @Override
+    @Transactional(readOnly = true)
     public Page<Book> find(Book filter, Pageable pageRequest) {
         Example<Book> example = Example.of(filter,
                 ExampleMatcher
@@ -60,12 +149,85 @@ public class BookServiceImpl implements br.com.nerdslab.libraryapi.service.BookS
                         .withStringMatcher(ExampleMatcher.StringMatcher.CONTAINING)
         );
 
+        if (searchIndex.supports(filter)) {
+            return repository.findAll(searchIndex.matching(example), pageRequest);
+        }
         return repository.findAll(example, pageRequest);
     }
 
     @Override
+    @Transactional(readOnly = true)
+    public Slice<Book> findAfter(Book filter, Long afterId, int size) {
+        return repository.findAfter(
+                afterId == null ? 0L : afterId,
+                filter.getTitle(),
+                filter.getAuthor(),
+                filter.getIsbn(),
+                PageRequest.of(0, size));
+    }
+
+    @Override
+    @Cacheable(cacheNames = CacheConfig.BOOKS_BY_ISBN, unless = "#result == null")
     public Optional<Book> getBookByIsbn(String isbn) {
-        return repository.findByIsbn(isbn);
+        return byIsbn.load(isbn, () -> readOnly.execute(status ->
+                ReplicaRoutingDataSource.onPrimary(() -> repository.findByIsbn(isbn)).map(BookServiceImpl::detached)));
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public Map<Long, Book> getByIds(Collection<Long> ids) {
+        return ReplicaRoutingDataSource.onPrimary(() ->
+                getAll(ids, CacheConfig.BOOKS, repository::findAllById, Book::getId));
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public Map<String, Book> getByIsbns(Collection<String> isbns) {
+        return ReplicaRoutingDataSource.onPrimary(() ->
+                getAll(isbns, CacheConfig.BOOKS_BY_ISBN, repository::findByIsbnIn, Book::getIsbn));
+    }
+
+    /**
+     * Served from the same cache as the single lookups: only the keys it misses are queried, with one
+     * {@code in} query per chunk, and what they find is cached for the single lookups too.
+     */
+    private <K> Map<K, Book> getAll(Collection<K> keys,
+                                    String cacheName,
+                                    Function<List<K>, List<Book>> query,
+                                    Function<Book, K> key) {
+        Cache cache = cacheManager.getCache(cacheName);
+        Map<K, Book> found = new HashMap<>();
+        List<K> remainder = new ArrayList<>();
+        for (K k : new LinkedHashSet<>(keys)) {
+            if (k == null) {
+                continue;
+            }
+            Book cached = cache == null ? null : cache.get(k, Book.class);
+            if (cached != null) {
+                found.put(k, cached);
+            } else {
+                remainder.add(k);
+            }
+        }
+        for (int from = 0; from < remainder.size(); from += batchChunkSize) {
+            List<K> chunk = remainder.subList(from, Math.min(from + batchChunkSize, remainder.size()));
+            for (Book book : query.apply(chunk)) {
+                Book copy = detached(book);
+                found.put(key.apply(copy), copy);
+                if (cache != null) {
+                    cache.put(key.apply(copy), copy);
+                }
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Copy of the book for the caches, which outlive the session and are read by other threads: a managed
+     * entity there could be changed by the session that loaded it, and its lazy loans could not be loaded.
+     */
+    private static Book detached(Book book) {
+        return book.toBuilder().loans(null).build();
     }
 
 }
@@ -1,13 +1,15 @@
 package br.com.nerdslab.libraryapi.service.impl;
 
 import br.com.nerdslab.libraryapi.service.EmailService;
+import br.com.nerdslab.libraryapi.service.MailDispatcher;
 import lombok.RequiredArgsConstructor;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.mail.SimpleMailMessage;
-import org.springframework.mail.javamail.JavaMailSender;
 import org.springframework.stereotype.Service;
 
 import java.util.List;
+import java.util.Objects;
+import java.util.stream.Collectors;
 
 @Service
 @RequiredArgsConstructor
@@ -19,18 +21,31 @@ public class EmailServiceImpl implements EmailService {
     @Value("${application.mail.lateloans.subject}")
     private String subject;
 
-    private final JavaMailSender javaMailSender;
+    private final MailDispatcher mailDispatcher;
 
     @Override
     public void sendMails(String message, List<String> mailsList) {
-        String[] mails = mailsList.toArray(new String[mailsList.size()]);
-
-        SimpleMailMessage mailMessage = new SimpleMailMessage();
-        mailMessage.setFrom(remetent);
-        mailMessage.setSubject(subject);
-        mailMessage.setText(message);
-        mailMessage.setTo(mails);
+        sendMails(message, mailsList, MailDispatcher.DeliveryListener.NONE);
+    }
 
-        javaMailSender.send(mailMessage);
+    /**
+     * One message per recipient, so a bad address fails alone and no customer sees the others.
+     */
+    @Override
+    public void sendMails(String message, List<String> mailsList, MailDispatcher.DeliveryListener listener) {
+        List<SimpleMailMessage> messages = mailsList.stream()
+                .filter(Objects::nonNull)
+                .distinct()
+                .map(mail -> {
+                    SimpleMailMessage mailMessage = new SimpleMailMessage();
+                    mailMessage.setFrom(remetent);
+                    mailMessage.setSubject(subject);
+                    mailMessage.setText(message);
+                    mailMessage.setTo(mail);
+                    return mailMessage;
+                })
+                .collect(Collectors.toList());
+
+        mailDispatcher.dispatch(messages, listener);
     }
 }
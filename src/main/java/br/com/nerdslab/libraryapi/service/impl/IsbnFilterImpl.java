@@ -0,0 +1,195 @@
+package br.com.nerdslab.libraryapi.service.impl;
+
+import br.com.nerdslab.libraryapi.service.IsbnFilter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Counting Bloom filter, so deleted ISBNs can be taken out again. Until the first rebuild every ISBN
+ * "might exist", which keeps the service on the exists query while the catalog is being loaded.
+ */
+@Service
+@Slf4j
+public class IsbnFilterImpl implements IsbnFilter {
+
+    private static final double FALSE_POSITIVE_RATE = 0.01;
+
+    private static final int MIN_EXPECTED_ISBNS = 1 << 16;
+
+    private static final int REBUILD_CHUNK = 10_000;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private volatile Counters counters;
+
+    private Counters rebuilding;
+
+    public IsbnFilterImpl(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @Override
+    public boolean mightExist(String isbn) {
+        Counters current = counters;
+        return current == null || current.mightContain(isbn);
+    }
+
+    /**
+     * Counted right away: until the insert commits the filter only answers "might exist" too often.
+     */
+    @Override
+    public synchronized void add(String isbn) {
+        if (counters != null) {
+            counters.add(isbn);
+        }
+        if (rebuilding != null) {
+            rebuilding.add(isbn);
+        }
+    }
+
+    /**
+     * Deferred to the commit, a rolled back delete must leave the ISBN in the filter.
+     */
+    @Override
+    public void remove(String isbn) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            discount(isbn);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                discount(isbn);
+            }
+        });
+    }
+
+    private synchronized void discount(String isbn) {
+        if (counters != null) {
+            counters.remove(isbn);
+        }
+        if (rebuilding != null) {
+            rebuilding.remove(isbn);
+        }
+    }
+
+    /**
+     * Sized for twice the current catalog, so the false positive rate holds while it keeps growing.
+     */
+    @Override
+    public void rebuild() {
+        Long books = jdbcTemplate.queryForObject(" select count(*) from book ", Long.class);
+        Counters next = new Counters((int) Math.max(MIN_EXPECTED_ISBNS, Math.min(books * 2, Integer.MAX_VALUE / 16)));
+        synchronized (this) {
+            rebuilding = next;
+        }
+        try {
+            long lastId = 0;
+            while (true) {
+                List<Object[]> rows = jdbcTemplate.query(
+                        " select id, isbn from book where id > ? order by id limit ? ",
+                        (rs, rowNum) -> new Object[]{rs.getLong("id"), rs.getString("isbn")},
+                        lastId, REBUILD_CHUNK);
+                if (rows.isEmpty()) {
+                    break;
+                }
+                synchronized (this) {
+                    rows.forEach(row -> next.add((String) row[1]));
+                }
+                lastId = (Long) rows.get(rows.size() - 1)[0];
+            }
+            synchronized (this) {
+                counters = next;
+            }
+            log.info("isbn filter rebuilt for {} books", books);
+        } finally {
+            synchronized (this) {
+                rebuilding = null;
+            }
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuildOnStartup() {
+        rebuild();
+    }
+
+    /**
+     * k counters per ISBN picked by double hashing a 64-bit FNV-1a hash. Writes are synchronized by the
+     * enclosing filter; a read racing a write can only be answered as if it came just before it.
+     */
+    static class Counters {
+
+        private final byte[] counts;
+        private final int hashes;
+
+        Counters(int expected) {
+            double ln2 = Math.log(2);
+            int size = (int) Math.ceil(-expected * Math.log(FALSE_POSITIVE_RATE) / (ln2 * ln2));
+            this.counts = new byte[size];
+            this.hashes = Math.max(1, (int) Math.round((double) size / expected * ln2));
+        }
+
+        boolean mightContain(String isbn) {
+            if (isbn == null) {
+                return false;
+            }
+            long hash = hash(isbn);
+            for (int i = 1; i <= hashes; i++) {
+                if (counts[index(hash, i)] == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        void add(String isbn) {
+            if (isbn == null) {
+                return;
+            }
+            long hash = hash(isbn);
+            for (int i = 1; i <= hashes; i++) {
+                int index = index(hash, i);
+                // a saturated counter is never decremented again, it just stays set
+                if (counts[index] != -1) {
+                    counts[index]++;
+                }
+            }
+        }
+
+        void remove(String isbn) {
+            if (isbn == null || !mightContain(isbn)) {
+                return;
+            }
+            long hash = hash(isbn);
+            for (int i = 1; i <= hashes; i++) {
+                int index = index(hash, i);
+                if (counts[index] != -1) {
+                    counts[index]--;
+                }
+            }
+        }
+
+        private int index(long hash, int i) {
+            int combined = (int) hash + i * (int) (hash >>> 32);
+            return (combined & Integer.MAX_VALUE) % counts.length;
+        }
+
+        private static long hash(String isbn) {
+            long hash = 0xcbf29ce484222325L;
+            for (byte b : isbn.getBytes(StandardCharsets.UTF_8)) {
+                hash ^= b;
+                hash *= 0x100000001b3L;
+            }
+            return hash;
+        }
+    }
+}
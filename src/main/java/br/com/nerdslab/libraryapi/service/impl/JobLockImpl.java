@@ -0,0 +1,66 @@
+package br.com.nerdslab.libraryapi.service.impl;
+
+import br.com.nerdslab.libraryapi.model.repository.JobLeaseRepository;
+import br.com.nerdslab.libraryapi.service.JobLock;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * Leases live in the {@code job_lease} table and are taken and given back in transactions of their own,
+ * so they are visible to the other nodes whatever the caller's transaction does.
+ */
+@Service
+@Slf4j
+public class JobLockImpl implements JobLock {
+
+    private final JobLeaseRepository repository;
+    private final TransactionTemplate transactionTemplate;
+    private final String owner;
+
+    public JobLockImpl(JobLeaseRepository repository, PlatformTransactionManager transactionManager) {
+        this.repository = repository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.owner = ManagementFactory.getRuntimeMXBean().getName() + "/" + UUID.randomUUID().toString().substring(0, 8);
+    }
+
+    @Override
+    public boolean runLocked(String name, Duration lockAtMostFor, Duration lockAtLeastFor, Runnable task) {
+        LocalDateTime lockedAt = LocalDateTime.now();
+        if (!acquire(name, lockedAt, lockedAt.plus(lockAtMostFor))) {
+            log.debug("job {} skipped: leased by another node", name);
+            return false;
+        }
+        try {
+            task.run();
+            return true;
+        } finally {
+            LocalDateTime now = LocalDateTime.now();
+            LocalDateTime until = lockedAt.plus(lockAtLeastFor);
+            transactionTemplate.execute(status -> repository.release(name, owner, until.isAfter(now) ? until : now));
+        }
+    }
+
+    private boolean acquire(String name, LocalDateTime now, LocalDateTime until) {
+        if (transactionTemplate.execute(status -> repository.acquire(name, owner, now, until)) > 0) {
+            return true;
+        }
+        if (repository.existsById(name)) {
+            return false;
+        }
+        try {
+            return transactionTemplate.execute(status -> repository.insert(name, owner, now, until)) > 0;
+        } catch (DataIntegrityViolationException e) {
+            return false;
+        }
+    }
+}
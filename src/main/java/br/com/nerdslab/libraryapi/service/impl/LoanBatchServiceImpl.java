@@ -0,0 +1,308 @@
+package br.com.nerdslab.libraryapi.service.impl;
+
+import br.com.nerdslab.libraryapi.api.dto.LoanBatchItemDTO;
+import br.com.nerdslab.libraryapi.api.dto.LoanDTO;
+import br.com.nerdslab.libraryapi.api.dto.ReturnedLoanDTO;
+import br.com.nerdslab.libraryapi.model.entity.Book;
+import br.com.nerdslab.libraryapi.model.entity.Loan;
+import br.com.nerdslab.libraryapi.model.entity.LoanStatus;
+import br.com.nerdslab.libraryapi.model.repository.BookRepository;
+import br.com.nerdslab.libraryapi.model.repository.LoanRepository;
+import br.com.nerdslab.libraryapi.service.AvailabilityIndex;
+import br.com.nerdslab.libraryapi.service.BookService;
+import br.com.nerdslab.libraryapi.service.LoanBatchService;
+import br.com.nerdslab.libraryapi.service.LoanPolicy;
+import br.com.nerdslab.libraryapi.service.OverdueTracker;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManagerFactory;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * The ISBNs of a batch are resolved with one query and the books checked with another; the items that
+ * pass are then written in a single transaction, loans and book updates each as one JDBC batch. When a
+ * concurrent request loans one of the books first, the whole transaction rolls back and the items are
+ * written again one by one, so only the ones that collided fail.
+ */
+@Service
+@Slf4j
+public class LoanBatchServiceImpl implements LoanBatchService {
+
+    private static final String BOOK_NOT_FOUND = "Book not found for passed isbn";
+    private static final String BOOK_LOANED = "Book already loaned";
+    private static final String LOAN_NOT_FOUND = "Loan not found";
+    private static final String REPEATED = "Repeated in this batch";
+
+    private static final String MARK_LOANED = " update book set active_loan_id = ? where id = ? ";
+    private static final String MARK_RETURNED = " update book set active_loan_id = null where id = ? and active_loan_id = ? ";
+
+    private final LoanRepository loanRepository;
+    private final BookRepository bookRepository;
+    private final BookService bookService;
+    private final LoanPolicy loanPolicy;
+    private final OverdueTracker overdueTracker;
+    private final AvailabilityIndex availabilityIndex;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final EntityManagerFactory entityManagerFactory;
+
+    public LoanBatchServiceImpl(LoanRepository loanRepository,
+                                BookRepository bookRepository,
+                                BookService bookService,
+                                LoanPolicy loanPolicy,
+                                OverdueTracker overdueTracker,
+                                AvailabilityIndex availabilityIndex,
+                                JdbcTemplate jdbcTemplate,
+                                TransactionTemplate transactionTemplate,
+                                EntityManagerFactory entityManagerFactory) {
+        this.loanRepository = loanRepository;
+        this.bookRepository = bookRepository;
+        this.bookService = bookService;
+        this.loanPolicy = loanPolicy;
+        this.overdueTracker = overdueTracker;
+        this.availabilityIndex = availabilityIndex;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.entityManagerFactory = entityManagerFactory;
+    }
+
+    @Override
+    public List<LoanBatchItemDTO> create(List<LoanDTO> loans) {
+        List<Item<LoanDTO>> items = items(loans);
+        Map<String, Book> books = bookService.getByIsbns(loans.stream()
+                .map(LoanDTO::getIsbn)
+                .filter(isbn -> isbn != null)
+                .collect(Collectors.toList()));
+
+        List<Item<LoanDTO>> pending = new ArrayList<>();
+        Set<Long> bookIds = new HashSet<>();
+        for (Item<LoanDTO> item : items) {
+            item.result.setIsbn(item.request.getIsbn());
+            Book book = item.request.getIsbn() == null ? null : books.get(item.request.getIsbn());
+            if (book == null) {
+                item.fail(BOOK_NOT_FOUND);
+            } else if (!bookIds.add(book.getId())) {
+                item.fail(REPEATED);
+            } else {
+                item.book = book;
+                pending.add(item);
+            }
+        }
+        if (!pending.isEmpty()) {
+            Set<Long> loaned = new HashSet<>(bookRepository.findLoanedIn(bookIds));
+            pending.removeIf(item -> loaned.contains(item.book.getId()) && item.fail(BOOK_LOANED));
+        }
+
+        LocalDate today = LocalDate.now();
+        write(pending, batch -> insert(batch, today));
+        return results(items);
+    }
+
+    @Override
+    public List<LoanBatchItemDTO> returnLoans(List<ReturnedLoanDTO> returns) {
+        List<Item<ReturnedLoanDTO>> items = items(returns);
+        List<Item<ReturnedLoanDTO>> pending = new ArrayList<>();
+        Set<Long> loanIds = new HashSet<>();
+        for (Item<ReturnedLoanDTO> item : items) {
+            item.result.setId(item.request.getId());
+            if (item.request.getId() == null) {
+                item.fail(LOAN_NOT_FOUND);
+            } else if (!loanIds.add(item.request.getId())) {
+                item.fail(REPEATED);
+            } else {
+                pending.add(item);
+            }
+        }
+
+        write(pending, this::update);
+        return results(items);
+    }
+
+    /**
+     * Loans are inserted through the repository, which batches them; the books are marked with a JDBC batch.
+     */
+    private List<Loan> insert(List<Item<LoanDTO>> items, LocalDate today) {
+        List<Loan> loans = new ArrayList<>();
+        for (Item<LoanDTO> item : items) {
+            LoanDTO dto = item.request;
+            loans.add(Loan.builder()
+                    .book(item.book)
+                    .customer(dto.getCustomer())
+                    .customerEmail(dto.getEmail())
+                    .loanDate(today)
+                    .status(LoanStatus.ACTIVE)
+                    .dueDate(loanPolicy.dueDate(item.book, dto.getCustomerClass(), today))
+                    .build());
+        }
+        loanRepository.saveAll(loans);
+        loanRepository.flush();
+
+        List<Object[]> args = new ArrayList<>();
+        for (int i = 0; i < items.size(); i++) {
+            Loan loan = loans.get(i);
+            items.get(i).loan = loan;
+            args.add(new Object[]{loan.getId(), loan.getBook().getId()});
+            availabilityIndex.markLoaned(loan.getBook().getId());
+        }
+        jdbcTemplate.batchUpdate(MARK_LOANED, args);
+        evictBooks(args, 1);
+        return loans;
+    }
+
+    /**
+     * The loans are read with their books in one query and updated by dirty checking, so the flush batches
+     * the updates.
+     */
+    private List<Loan> update(List<Item<ReturnedLoanDTO>> items) {
+        Map<Long, Loan> loans = loanRepository.findByIdIn(items.stream()
+                .map(item -> item.request.getId())
+                .collect(Collectors.toList()))
+                .stream()
+                .collect(Collectors.toMap(Loan::getId, Function.identity()));
+
+        List<Loan> updated = new ArrayList<>();
+        for (Item<ReturnedLoanDTO> item : items) {
+            Loan loan = loans.get(item.request.getId());
+            if (loan == null) {
+                item.fail(LOAN_NOT_FOUND);
+                continue;
+            }
+            loan.setReturned(item.request.getReturned());
+            item.loan = loan;
+            updated.add(loan);
+        }
+        loanRepository.flush();
+
+        List<Object[]> returned = new ArrayList<>();
+        List<Object[]> reopened = new ArrayList<>();
+        for (Loan loan : updated) {
+            if (loan.getBook() == null) {
+                continue;
+            }
+            if (Boolean.TRUE.equals(loan.getReturned())) {
+                returned.add(new Object[]{loan.getBook().getId(), loan.getId()});
+            } else {
+                reopened.add(new Object[]{loan.getId(), loan.getBook().getId()});
+                availabilityIndex.markLoaned(loan.getBook().getId());
+            }
+        }
+        if (!returned.isEmpty()) {
+            int[] counts = jdbcTemplate.batchUpdate(MARK_RETURNED, returned);
+            evictBooks(returned, 0);
+            for (int i = 0; i < counts.length; i++) {
+                if (cleared(counts[i])) {
+                    availabilityIndex.markReturned((Long) returned.get(i)[0]);
+                }
+            }
+        }
+        if (!reopened.isEmpty()) {
+            jdbcTemplate.batchUpdate(MARK_LOANED, reopened);
+            evictBooks(reopened, 1);
+        }
+        return updated;
+    }
+
+    /**
+     * Hibernate does not see the JDBC batches, so the books they marked are evicted from the second-level
+     * cache here, one by one as the active loan repository does, instead of leaving their old active loan
+     * there.
+     */
+    private void evictBooks(List<Object[]> args, int bookIdIndex) {
+        for (Object[] arg : args) {
+            entityManagerFactory.getCache().evict(Book.class, arg[bookIdIndex]);
+        }
+    }
+
+    /**
+     * A driver that does not report batch counts answers {@link Statement#SUCCESS_NO_INFO}; the book is then
+     * taken as returned, and the next index rebuild corrects it if it was not.
+     */
+    private static boolean cleared(int count) {
+        return count > 0 || count == Statement.SUCCESS_NO_INFO;
+    }
+
+    private <T> void write(List<Item<T>> pending, Function<List<Item<T>>, List<Loan>> writer) {
+        if (pending.isEmpty()) {
+            return;
+        }
+        List<Loan> written = new ArrayList<>();
+        try {
+            written.addAll(transactionTemplate.execute(status -> writer.apply(pending)));
+        } catch (DataIntegrityViolationException e) {
+            if (!LoanServiceImpl.violates(e, Loan.ONE_ACTIVE_LOAN_PER_BOOK)) {
+                throw e;
+            }
+            log.info("loan batch of {} collided with a concurrent loan, writing it item by item", pending.size());
+            for (Item<T> item : pending) {
+                if (item.failed()) {
+                    continue;
+                }
+                try {
+                    written.addAll(transactionTemplate.execute(status -> writer.apply(Collections.singletonList(item))));
+                } catch (DataIntegrityViolationException collided) {
+                    if (!LoanServiceImpl.violates(collided, Loan.ONE_ACTIVE_LOAN_PER_BOOK)) {
+                        throw collided;
+                    }
+                    item.fail(BOOK_LOANED);
+                }
+            }
+        }
+        written.forEach(overdueTracker::track);
+    }
+
+    private static <T> List<Item<T>> items(List<T> requests) {
+        List<Item<T>> items = new ArrayList<>(requests.size());
+        for (int i = 0; i < requests.size(); i++) {
+            items.add(new Item<>(i, requests.get(i)));
+        }
+        return items;
+    }
+
+    private static <T> List<LoanBatchItemDTO> results(List<Item<T>> items) {
+        List<LoanBatchItemDTO> results = new ArrayList<>(items.size());
+        for (Item<T> item : items) {
+            if (!item.failed() && item.loan != null) {
+                item.result.setId(item.loan.getId());
+                item.result.setIsbn(item.loan.getBook() == null ? null : item.loan.getBook().getIsbn());
+                item.result.setDueDate(item.loan.getDueDate());
+            }
+            results.add(item.result);
+        }
+        return results;
+    }
+
+    private static class Item<T> {
+
+        private final T request;
+        private final LoanBatchItemDTO result;
+        private Book book;
+        private Loan loan;
+
+        Item(int index, T request) {
+            this.request = request;
+            this.result = LoanBatchItemDTO.builder().index(index).errors(new ArrayList<>()).build();
+        }
+
+        boolean fail(String error) {
+            result.getErrors().add(error);
+            return true;
+        }
+
+        boolean failed() {
+            return !result.getErrors().isEmpty();
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package br.com.nerdslab.libraryapi.service.impl;
+
+import br.com.nerdslab.libraryapi.model.entity.Book;
+import br.com.nerdslab.libraryapi.service.LoanPolicy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDate;
+
+@Service
+public class LoanPolicyImpl implements LoanPolicy {
+
+    private static final String CUSTOMER_CLASS_DAYS = "application.loans.days.customer-class.";
+
+    private final Environment environment;
+    private final int defaultDays;
+
+    public LoanPolicyImpl(Environment environment, @Value("${application.loans.days.default:4}") int defaultDays) {
+        this.environment = environment;
+        this.defaultDays = defaultDays;
+    }
+
+    @Override
+    public LocalDate dueDate(Book book, String customerClass, LocalDate loanDate) {
+        if (loanDate == null) {
+            return null;
+        }
+        return loanDate.plusDays(loanDays(book, customerClass));
+    }
+
+    private int loanDays(Book book, String customerClass) {
+        if (book != null && book.getLoanDays() != null) {
+            return book.getLoanDays();
+        }
+        if (customerClass == null || customerClass.trim().isEmpty()) {
+            return defaultDays;
+        }
+        return environment.getProperty(CUSTOMER_CLASS_DAYS + customerClass.trim().toLowerCase(), Integer.class, defaultDays);
+    }
+}
@@ -1,61 +1,133 @@
 package br.com.nerdslab.libraryapi.service.impl;
 
 import br.com.nerdslab.libraryapi.api.dto.LoanFilterDTO;
+import br.com.nerdslab.libraryapi.config.ReplicaRoutingDataSource;
 import br.com.nerdslab.libraryapi.exception.BusinessException;
 import br.com.nerdslab.libraryapi.model.entity.Book;
 import br.com.nerdslab.libraryapi.model.entity.Loan;
+import br.com.nerdslab.libraryapi.model.repository.BookRepository;
 import br.com.nerdslab.libraryapi.model.repository.LoanRepository;
+import br.com.nerdslab.libraryapi.service.AvailabilityIndex;
 import br.com.nerdslab.libraryapi.service.LoanService;
+import br.com.nerdslab.libraryapi.service.OverdueTracker;
+import org.hibernate.exception.ConstraintViolationException;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDate;
-import java.util.List;
 import java.util.Optional;
 
 @Service
 public class LoanServiceImpl implements LoanService {
 
     private LoanRepository repository;
+    private BookRepository bookRepository;
+    private OverdueTracker overdueTracker;
+    private AvailabilityIndex availabilityIndex;
 
-    public LoanServiceImpl(LoanRepository repository) {
+    public LoanServiceImpl(LoanRepository repository,
+                           BookRepository bookRepository,
+                           OverdueTracker overdueTracker,
+                           AvailabilityIndex availabilityIndex) {
         this.repository = repository;
+        this.bookRepository = bookRepository;
+        this.overdueTracker = overdueTracker;
+        this.availabilityIndex = availabilityIndex;
     }
 
+    /**
+     * A loaned book is turned down on its active loan, a primary key read. The insert stays the actual
+     * check, through the one open loan per book constraint, for requests racing on the same book. A loan
+     * recorded as already returned is history, and is saved whether the book is out or not.
+     */
     @Override
+    @Transactional
     public Loan save(Loan loan) {
-        if (repository.existsByBookAndNotReturned(loan.getBook())) {
+        boolean returned = Boolean.TRUE.equals(loan.getReturned());
+        if (!returned && loan.getBook() != null && bookRepository.findActiveLoanId(loan.getBook().getId()) != null) {
             throw new BusinessException("Book already loaned");
         }
-
-        return repository.save(loan);
+        Loan saved;
+        try {
+            saved = repository.saveAndFlush(loan);
+        } catch (DataIntegrityViolationException e) {
+            if (violates(e, Loan.ONE_ACTIVE_LOAN_PER_BOOK)) {
+                throw new BusinessException("Book already loaned");
+            }
+            throw e;
+        }
+        // a loan recorded as already returned never becomes the book's active loan
+        if (!returned) {
+            bookRepository.markLoaned(saved.getBook().getId(), saved.getId());
+            availabilityIndex.markLoaned(saved.getBook().getId());
+        }
+        overdueTracker.track(saved);
+        return saved;
     }
 
+    /**
+     * Read to be returned, so from the primary.
+     */
     @Override
+    @Transactional(readOnly = true)
     public Optional<Loan> getById(Long id) {
-        return repository.findById(id);
+        return ReplicaRoutingDataSource.onPrimary(() -> repository.findById(id));
     }
 
+    /**
+     * The book is only marked again when the loan is reopened. Its active book id is still the stored one
+     * here, as it only follows the returned flag on the write, so it tells whether the loan was returned.
+     */
     @Override
+    @Transactional
     public Loan update(Loan loan) {
-        return repository.save(loan);
+        boolean reopened = !Boolean.TRUE.equals(loan.getReturned()) && loan.getActiveBookId() == null;
+        Loan updated = repository.save(loan);
+        if (updated.getBook() != null) {
+            if (Boolean.TRUE.equals(updated.getReturned())) {
+                if (bookRepository.markReturned(updated.getBook().getId(), updated.getId()) > 0) {
+                    availabilityIndex.markReturned(updated.getBook().getId());
+                }
+            } else if (reopened) {
+                bookRepository.markLoaned(updated.getBook().getId(), updated.getId());
+                availabilityIndex.markLoaned(updated.getBook().getId());
+            }
+        }
+        overdueTracker.track(updated);
+        return updated;
     }
 
     @Override
+    @Transactional(readOnly = true)
     public Page<Loan> find(LoanFilterDTO filterDTO, Pageable pageable) {
         return repository.findByBookIsbnOrCustomer(filterDTO.getIsbn(), filterDTO.getCustomer(), pageable);
     }
 
     @Override
+    @Transactional(readOnly = true)
+    public Slice<Loan> findAfter(LoanFilterDTO filterDTO, LocalDate afterLoanDate, Long afterId, int size) {
+        PageRequest pageRequest = PageRequest.of(0, size);
+        if (afterId == null) {
+            return repository.findSliceByBookIsbnOrCustomer(filterDTO.getIsbn(), filterDTO.getCustomer(), pageRequest);
+        }
+        return repository.findSliceByBookIsbnOrCustomerAfter(
+                filterDTO.getIsbn(), filterDTO.getCustomer(), afterLoanDate, afterId, pageRequest);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
     public Page<Loan> getLoansByBook(Book book, Pageable pageable) {
         return repository.findByBook(book, pageable);
     }
 
-    @Override
-    public List<Loan> getAllLateLoans() {
-        final Integer loanDays = 4;
-        LocalDate threeDaysAgo = LocalDate.now().minusDays(loanDays);
-        return repository.findByLoanDateLessThanAndNotReturned(threeDaysAgo);
+    static boolean violates(DataIntegrityViolationException e, String constraint) {
+        return e.getCause() instanceof ConstraintViolationException
+                && ((ConstraintViolationException) e.getCause()).getConstraintName() != null
+                && ((ConstraintViolationException) e.getCause()).getConstraintName().toLowerCase().contains(constraint);
     }
 }
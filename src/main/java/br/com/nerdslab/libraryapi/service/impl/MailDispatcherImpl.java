@@ -0,0 +1,180 @@
+package br.com.nerdslab.libraryapi.service.impl;
+
+import br.com.nerdslab.libraryapi.model.entity.MailDeadLetter;
+import br.com.nerdslab.libraryapi.model.repository.MailDeadLetterRepository;
+import br.com.nerdslab.libraryapi.service.MailDispatcher;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.mail.MailException;
+import org.springframework.mail.MailSendException;
+import org.springframework.mail.MailSender;
+import org.springframework.mail.SimpleMailMessage;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sends messages in batches on a bounded worker pool. A batch goes through a single
+ * {@link MailSender#send(SimpleMailMessage...)} call, i.e. one SMTP connection, and only the messages
+ * the server refused are retried, with exponential backoff, until they end up as a {@link MailDeadLetter}.
+ * When the queue is full the caller sends the batch itself, which slows the producer down to the
+ * pace of the pool.
+ */
+@Service
+@Slf4j
+public class MailDispatcherImpl implements MailDispatcher, DisposableBean {
+
+    private final MailSender mailSender;
+    private final MailDeadLetterRepository deadLetters;
+    private final ThreadPoolExecutor workers;
+    private final ScheduledExecutorService retries;
+    private final MailRateLimiter rateLimiter;
+    private final int batchSize;
+    private final int maxAttempts;
+    private final long initialBackoff;
+    private final long maxBackoff;
+    private final Counter sent;
+    private final Counter retried;
+    private final Counter dead;
+
+    public MailDispatcherImpl(MailSender mailSender,
+                              MailDeadLetterRepository deadLetters,
+                              MeterRegistry meterRegistry,
+                              @Value("${application.mail.dispatcher.threads:4}") int threads,
+                              @Value("${application.mail.dispatcher.queue-capacity:100}") int queueCapacity,
+                              @Value("${application.mail.dispatcher.batch-size:50}") int batchSize,
+                              @Value("${application.mail.dispatcher.rate-per-second:0}") double ratePerSecond,
+                              @Value("${application.mail.dispatcher.max-attempts:5}") int maxAttempts,
+                              @Value("${application.mail.dispatcher.initial-backoff-ms:1000}") long initialBackoff,
+                              @Value("${application.mail.dispatcher.max-backoff-ms:60000}") long maxBackoff) {
+        this.mailSender = mailSender;
+        this.deadLetters = deadLetters;
+        this.workers = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                new CustomizableThreadFactory("mail-"),
+                new ThreadPoolExecutor.CallerRunsPolicy());
+        this.retries = Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("mail-retry-"));
+        this.rateLimiter = new MailRateLimiter(ratePerSecond);
+        this.batchSize = batchSize;
+        this.maxAttempts = maxAttempts;
+        this.initialBackoff = initialBackoff;
+        this.maxBackoff = maxBackoff;
+        this.sent = meterRegistry.counter("library.mail.sent");
+        this.retried = meterRegistry.counter("library.mail.retried");
+        this.dead = meterRegistry.counter("library.mail.dead");
+        meterRegistry.gauge("library.mail.queue", workers, pool -> pool.getQueue().size());
+    }
+
+    @Override
+    public void dispatch(List<SimpleMailMessage> messages) {
+        dispatch(messages, DeliveryListener.NONE);
+    }
+
+    @Override
+    public void dispatch(List<SimpleMailMessage> messages, DeliveryListener listener) {
+        for (int from = 0; from < messages.size(); from += batchSize) {
+            List<SimpleMailMessage> batch = new ArrayList<>(
+                    messages.subList(from, Math.min(from + batchSize, messages.size())));
+            workers.execute(() -> send(batch, 1, listener));
+        }
+    }
+
+    private void send(List<SimpleMailMessage> batch, int attempt, DeliveryListener listener) {
+        try {
+            rateLimiter.acquire(batch.size());
+            mailSender.send(batch.toArray(new SimpleMailMessage[0]));
+            delivered(batch, listener);
+        } catch (MailSendException e) {
+            Map<Object, Exception> failures = e.getFailedMessages();
+            List<SimpleMailMessage> failed = new ArrayList<>();
+            List<SimpleMailMessage> delivered = new ArrayList<>();
+            for (SimpleMailMessage message : batch) {
+                if (failures.isEmpty() || failures.containsKey(message)) {
+                    failed.add(message);
+                } else {
+                    delivered.add(message);
+                }
+            }
+            delivered(delivered, listener);
+            retry(failed, attempt, e, listener);
+        } catch (MailException e) {
+            retry(batch, attempt, e, listener);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            deadLetter(batch, attempt, e, listener);
+        }
+    }
+
+    private void delivered(List<SimpleMailMessage> messages, DeliveryListener listener) {
+        if (messages.isEmpty()) {
+            return;
+        }
+        sent.increment(messages.size());
+        try {
+            listener.delivered(messages);
+        } catch (RuntimeException e) {
+            log.error("delivery listener failed for {} mails", messages.size(), e);
+        }
+    }
+
+    private void retry(List<SimpleMailMessage> failed, int attempt, Exception cause, DeliveryListener listener) {
+        if (attempt >= maxAttempts) {
+            deadLetter(failed, attempt, cause, listener);
+            return;
+        }
+        long backoff = Math.min(maxBackoff, initialBackoff << Math.min(attempt - 1, 30));
+        log.warn("{} mails failed on attempt {}, retrying in {} ms: {}", failed.size(), attempt, backoff, cause.getMessage());
+        retried.increment(failed.size());
+        retries.schedule(() -> workers.execute(() -> send(failed, attempt + 1, listener)), backoff, TimeUnit.MILLISECONDS);
+    }
+
+    private void deadLetter(List<SimpleMailMessage> failed, int attempts, Exception cause, DeliveryListener listener) {
+        log.error("{} mails given up after {} attempts: {}", failed.size(), attempts, cause.getMessage());
+        List<MailDeadLetter> letters = new ArrayList<>();
+        for (SimpleMailMessage message : failed) {
+            String[] to = message.getTo() == null ? new String[0] : message.getTo();
+            letters.add(MailDeadLetter.builder()
+                    .recipient(String.join(",", Arrays.asList(to)))
+                    .subject(message.getSubject())
+                    .text(message.getText())
+                    .attempts(attempts)
+                    .error(abbreviate(String.valueOf(cause.getMessage()), 1000))
+                    .failedAt(LocalDateTime.now())
+                    .build());
+        }
+        deadLetters.saveAll(letters);
+        dead.increment(letters.size());
+        try {
+            listener.failed(failed);
+        } catch (RuntimeException e) {
+            log.error("delivery listener failed for {} mails", failed.size(), e);
+        }
+    }
+
+    private static String abbreviate(String value, int length) {
+        return value.length() <= length ? value : value.substring(0, length);
+    }
+
+    @Override
+    public void destroy() throws InterruptedException {
+        List<Runnable> pending = retries.shutdownNow();
+        if (!pending.isEmpty()) {
+            log.warn("{} mail retries dropped on shutdown", pending.size());
+        }
+        workers.shutdown();
+        workers.awaitTermination(30, TimeUnit.SECONDS);
+    }
+}
@@ -0,0 +1,33 @@
+package br.com.nerdslab.libraryapi.service.impl;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Spaces out permits evenly at a fixed rate shared by every caller. A rate of zero or less never waits.
+ */
+class MailRateLimiter {
+
+    private final long nanosPerPermit;
+    private long nextFree = System.nanoTime();
+
+    MailRateLimiter(double permitsPerSecond) {
+        this.nanosPerPermit = permitsPerSecond > 0 ? (long) (TimeUnit.SECONDS.toNanos(1) / permitsPerSecond) : 0;
+    }
+
+    void acquire(int permits) throws InterruptedException {
+        long wait = reserve(permits);
+        if (wait > 0) {
+            TimeUnit.NANOSECONDS.sleep(wait);
+        }
+    }
+
+    private synchronized long reserve(int permits) {
+        if (nanosPerPermit == 0) {
+            return 0;
+        }
+        long now = System.nanoTime();
+        long start = Math.max(now, nextFree);
+        nextFree = start + permits * nanosPerPermit;
+        return start - now;
+    }
+}
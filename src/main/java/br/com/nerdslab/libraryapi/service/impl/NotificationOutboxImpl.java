@@ -0,0 +1,248 @@
+package br.com.nerdslab.libraryapi.service.impl;
+
+import br.com.nerdslab.libraryapi.model.entity.LateLoanNotification;
+import br.com.nerdslab.libraryapi.model.repository.LateLoanNotificationRepository;
+import br.com.nerdslab.libraryapi.model.repository.LoanRepository;
+import br.com.nerdslab.libraryapi.service.EmailService;
+import br.com.nerdslab.libraryapi.service.JobLock;
+import br.com.nerdslab.libraryapi.service.MailDispatcher;
+import br.com.nerdslab.libraryapi.service.NotificationOutbox;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.mail.SimpleMailMessage;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Late loan mails go through the {@code late_loan_notification} table: the job that finds a loan late
+ * records the notification in the same transaction, and the relay sends what is recorded. A loan has at
+ * most one notification, so running the job again only picks up the loans that became late since, and a
+ * notification whose delivery is not confirmed within the lease is sent again.
+ */
+@Service
+@Slf4j
+public class NotificationOutboxImpl implements NotificationOutbox {
+
+    private static final String LATE_LOANS_JOB = "late-loans:";
+
+    private final LoanRepository loanRepository;
+    private final LateLoanNotificationRepository notifications;
+    private final EmailService emailService;
+    private final TransactionTemplate transactionTemplate;
+    private final JobLock jobLock;
+    private final Counter enqueued;
+    private final Counter partitions;
+    private final Counter notified;
+    private final Counter undelivered;
+    private final Timer chunks;
+
+    @Value("${application.mail.lateloans.message}")
+    private String message;
+
+    @Value("${application.mail.lateloans.chunk-size:500}")
+    private int chunkSize;
+
+    @Value("${application.mail.lateloans.lease-ms:900000}")
+    private long leaseMs;
+
+    @Value("${application.mail.lateloans.partition-size:0}")
+    private long partitionSize;
+
+    @Value("${application.mail.lateloans.lock-at-most-ms:3600000}")
+    private long lockAtMostForMs;
+
+    @Value("${application.mail.lateloans.lock-at-least-ms:300000}")
+    private long lockAtLeastForMs;
+
+    public NotificationOutboxImpl(LoanRepository loanRepository,
+                                  LateLoanNotificationRepository notifications,
+                                  EmailService emailService,
+                                  TransactionTemplate transactionTemplate,
+                                  JobLock jobLock,
+                                  MeterRegistry meterRegistry) {
+        this.loanRepository = loanRepository;
+        this.notifications = notifications;
+        this.emailService = emailService;
+        this.transactionTemplate = transactionTemplate;
+        this.jobLock = jobLock;
+        this.enqueued = meterRegistry.counter("library.lateloans.enqueued");
+        this.partitions = meterRegistry.counter("library.lateloans.partitions");
+        this.notified = meterRegistry.counter("library.lateloans.notified");
+        this.undelivered = meterRegistry.counter("library.lateloans.failed");
+        this.chunks = meterRegistry.timer("library.lateloans.chunk");
+    }
+
+    /**
+     * Each range of loan ids is a job of its own under a {@link JobLock} lease, so the nodes running this
+     * at the same time split the ranges between them instead of scanning the same loans.
+     */
+    @Override
+    public void enqueueLateLoans() {
+        LocalDate today = LocalDate.now();
+        if (partitionSize <= 0) {
+            enqueuePartition(today, 0, 0, Long.MAX_VALUE);
+            return;
+        }
+        Long maxId = loanRepository.findMaxOverdueId(today);
+        if (maxId == null) {
+            return;
+        }
+        for (long partition = 0; partition * partitionSize < maxId; partition++) {
+            enqueuePartition(today, partition, partition * partitionSize, (partition + 1) * partitionSize);
+        }
+    }
+
+    private void enqueuePartition(LocalDate today, long partition, long fromId, long toId) {
+        boolean ran = jobLock.runLocked(LATE_LOANS_JOB + partition,
+                Duration.ofMillis(lockAtMostForMs),
+                Duration.ofMillis(lockAtLeastForMs),
+                () -> enqueueRange(today, fromId, toId));
+        if (ran) {
+            partitions.increment();
+        }
+    }
+
+    private void enqueueRange(LocalDate today, long fromId, long toId) {
+        long afterId = fromId;
+        long total = 0;
+        List<LoanRepository.LateLoan> chunk;
+        do {
+            long from = afterId;
+            try {
+                chunk = transactionTemplate.execute(status -> save(loanRepository.findUnnotifiedOverdueBetween(
+                        today, from, toId, PageRequest.of(0, chunkSize))));
+            } catch (DataIntegrityViolationException e) {
+                // another run recorded some of these loans first; whatever is left is picked up next time
+                log.warn("late loans enqueued concurrently after loan id {}: {}", from, e.getMessage());
+                break;
+            }
+            if (chunk.isEmpty()) {
+                break;
+            }
+            afterId = chunk.get(chunk.size() - 1).getId();
+            total += chunk.size();
+            enqueued.increment(chunk.size());
+        } while (chunk.size() == chunkSize);
+        log.info("late loans: {} enqueued for loan ids in ({}, {}]", total, fromId, toId);
+    }
+
+    @Override
+    public void enqueue(Collection<Long> loanIds) {
+        LocalDate today = LocalDate.now();
+        List<Long> ids = new ArrayList<>(loanIds);
+        for (int from = 0; from < ids.size(); from += chunkSize) {
+            List<Long> chunkIds = ids.subList(from, Math.min(from + chunkSize, ids.size()));
+            try {
+                List<LoanRepository.LateLoan> chunk = transactionTemplate.execute(
+                        status -> save(loanRepository.findUnnotifiedOverdueIn(chunkIds, today)));
+                enqueued.increment(chunk.size());
+            } catch (DataIntegrityViolationException e) {
+                log.warn("late loans enqueued concurrently: {}", e.getMessage());
+            }
+        }
+    }
+
+    private List<LoanRepository.LateLoan> save(List<LoanRepository.LateLoan> chunk) {
+        LocalDateTime now = LocalDateTime.now();
+        notifications.saveAll(chunk.stream()
+                .map(loan -> LateLoanNotification.builder()
+                        .loanId(loan.getId())
+                        .recipient(loan.getCustomerEmail())
+                        .createdAt(now)
+                        .build())
+                .collect(Collectors.toList()));
+        return chunk;
+    }
+
+    @Override
+    public void relay() {
+        List<LateLoanNotification> chunk;
+        do {
+            long start = System.nanoTime();
+            chunk = transactionTemplate.execute(status -> claim());
+            Map<String, List<Long>> idsByRecipient = new LinkedHashMap<>();
+            List<Long> unreachable = new ArrayList<>();
+            for (LateLoanNotification notification : chunk) {
+                if (notification.getRecipient() == null) {
+                    unreachable.add(notification.getId());
+                } else {
+                    idsByRecipient.computeIfAbsent(notification.getRecipient(), recipient -> new ArrayList<>())
+                            .add(notification.getId());
+                }
+            }
+            if (!unreachable.isEmpty()) {
+                transactionTemplate.execute(status -> notifications.markFailed(unreachable, LocalDateTime.now()));
+                undelivered.increment(unreachable.size());
+            }
+            if (!idsByRecipient.isEmpty()) {
+                emailService.sendMails(message, new ArrayList<>(idsByRecipient.keySet()), new Outcome(idsByRecipient));
+            }
+            chunks.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        } while (chunk.size() == chunkSize);
+    }
+
+    /**
+     * Takes the lease on the next pending notifications; the row lock keeps two relays from taking the
+     * same ones.
+     */
+    private List<LateLoanNotification> claim() {
+        LocalDateTime now = LocalDateTime.now();
+        List<LateLoanNotification> pending = notifications.findPending(
+                now.minus(leaseMs, ChronoUnit.MILLIS), PageRequest.of(0, chunkSize));
+        pending.forEach(notification -> notification.setDispatchedAt(now));
+        return pending;
+    }
+
+    private class Outcome implements MailDispatcher.DeliveryListener {
+
+        private final Map<String, List<Long>> idsByRecipient;
+
+        Outcome(Map<String, List<Long>> idsByRecipient) {
+            this.idsByRecipient = idsByRecipient;
+        }
+
+        @Override
+        public void delivered(List<SimpleMailMessage> messages) {
+            List<Long> ids = ids(messages);
+            if (ids.isEmpty()) {
+                return;
+            }
+            transactionTemplate.execute(status -> notifications.markDelivered(ids, LocalDateTime.now()));
+            notified.increment(ids.size());
+        }
+
+        @Override
+        public void failed(List<SimpleMailMessage> messages) {
+            List<Long> ids = ids(messages);
+            if (ids.isEmpty()) {
+                return;
+            }
+            transactionTemplate.execute(status -> notifications.markFailed(ids, LocalDateTime.now()));
+            undelivered.increment(ids.size());
+        }
+
+        private List<Long> ids(List<SimpleMailMessage> messages) {
+            return messages.stream()
+                    .flatMap(message -> idsByRecipient.getOrDefault(message.getTo()[0], Collections.emptyList()).stream())
+                    .collect(Collectors.toList());
+        }
+    }
+}
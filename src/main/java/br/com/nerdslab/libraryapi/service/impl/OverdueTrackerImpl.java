@@ -0,0 +1,129 @@
+package br.com.nerdslab.libraryapi.service.impl;
+
+import br.com.nerdslab.libraryapi.model.entity.Loan;
+import br.com.nerdslab.libraryapi.model.entity.LoanStatus;
+import br.com.nerdslab.libraryapi.model.repository.LoanRepository;
+import br.com.nerdslab.libraryapi.service.OverdueTracker;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.core.annotation.Order;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Hashed timing wheel of the open loans, one slot per day. A loan sits in the slot of the day it becomes
+ * overdue, so tracking, rescheduling and dropping it are constant time, and each day only its own slot is
+ * visited. Days further away than the wheel wraps around share a slot and wait there for their turn.
+ * Filled from the database at startup, after the loan backfill.
+ */
+@Service
+@Order(1)
+@Slf4j
+public class OverdueTrackerImpl implements OverdueTracker, ApplicationRunner {
+
+    private final LoanRepository repository;
+    private final List<Map<Long, Long>> slots;
+    private final Map<Long, Long> fireDays = new HashMap<>();
+    private final List<Long> overdue = new ArrayList<>();
+    private long currentDay;
+
+    @Value("${application.loans.overdue.hydrate-chunk-size:5000}")
+    private int chunkSize;
+
+    public OverdueTrackerImpl(LoanRepository repository, @Value("${application.loans.overdue.wheel-days:64}") int wheelDays) {
+        this.repository = repository;
+        this.slots = new ArrayList<>(wheelDays);
+        for (int i = 0; i < wheelDays; i++) {
+            slots.add(new HashMap<>());
+        }
+        this.currentDay = LocalDate.now().toEpochDay();
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        long afterId = 0;
+        long total = 0;
+        List<LoanRepository.LoanDue> chunk;
+        do {
+            chunk = repository.findActiveDueAfter(afterId, PageRequest.of(0, chunkSize));
+            for (LoanRepository.LoanDue loan : chunk) {
+                schedule(loan.getId(), loan.getDueDate());
+            }
+            if (!chunk.isEmpty()) {
+                afterId = chunk.get(chunk.size() - 1).getId();
+                total += chunk.size();
+            }
+        } while (chunk.size() == chunkSize);
+        log.info("overdue tracker: {} open loans scheduled", total);
+    }
+
+    @Override
+    public synchronized void track(Loan loan) {
+        if (loan.getId() == null) {
+            return;
+        }
+        cancel(loan.getId());
+        if (LoanStatus.of(loan.getReturned()) == LoanStatus.ACTIVE) {
+            schedule(loan.getId(), loan.getDueDate());
+        }
+    }
+
+    @Override
+    public synchronized List<Long> expire(LocalDate today) {
+        long target = today.toEpochDay();
+        long days = Math.min(target - currentDay, slots.size());
+        for (long day = currentDay + 1; day <= currentDay + days; day++) {
+            Iterator<Map.Entry<Long, Long>> entries = slot(day).entrySet().iterator();
+            while (entries.hasNext()) {
+                Map.Entry<Long, Long> entry = entries.next();
+                if (entry.getValue() <= target) {
+                    entries.remove();
+                    fireDays.remove(entry.getKey());
+                    overdue.add(entry.getKey());
+                }
+            }
+        }
+        currentDay = Math.max(currentDay, target);
+        List<Long> expired = new ArrayList<>(overdue);
+        overdue.clear();
+        return expired;
+    }
+
+    /**
+     * A loan is overdue from the day after its due date.
+     */
+    private synchronized void schedule(Long id, LocalDate dueDate) {
+        if (dueDate == null) {
+            return;
+        }
+        long fireDay = dueDate.toEpochDay() + 1;
+        if (fireDay <= currentDay) {
+            overdue.add(id);
+            return;
+        }
+        slot(fireDay).put(id, fireDay);
+        fireDays.put(id, fireDay);
+    }
+
+    private void cancel(Long id) {
+        Long fireDay = fireDays.remove(id);
+        if (fireDay != null) {
+            slot(fireDay).remove(id);
+        } else {
+            overdue.remove(id);
+        }
+    }
+
+    private Map<Long, Long> slot(long day) {
+        return slots.get((int) Math.floorMod(day, (long) slots.size()));
+    }
+}
@@ -0,0 +1,83 @@
+package br.com.nerdslab.libraryapi.service.impl;
+
+import io.micrometer.core.instrument.Counter;
+import org.springframework.dao.QueryTimeoutException;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/**
+ * Runs one load per key at a time: the first caller of a key loads it on its own thread, the callers
+ * arriving while it does wait for that load and get its value, or its exception. A waiter gives up after
+ * {@code maxWait} instead of piling up behind a slow load. A null key is loaded on its own.
+ */
+public class SingleFlight<K, V> {
+
+    private final ConcurrentMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+
+    private final Duration maxWait;
+    private final Counter loaded;
+    private final Counter coalesced;
+    private final Counter timedOut;
+
+    public SingleFlight(Duration maxWait, Counter loaded, Counter coalesced, Counter timedOut) {
+        this.maxWait = maxWait;
+        this.loaded = loaded;
+        this.coalesced = coalesced;
+        this.timedOut = timedOut;
+    }
+
+    public V load(K key, Supplier<V> loader) {
+        if (key == null) {
+            return loader.get();
+        }
+        CompletableFuture<V> own = new CompletableFuture<>();
+        CompletableFuture<V> running = inFlight.putIfAbsent(key, own);
+        if (running != null) {
+            coalesced.increment();
+            return await(key, running);
+        }
+        loaded.increment();
+        try {
+            V value = loader.get();
+            own.complete(value);
+            return value;
+        } catch (Throwable e) {
+            own.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, own);
+        }
+    }
+
+    int inFlight() {
+        return inFlight.size();
+    }
+
+    private V await(K key, CompletableFuture<V> running) {
+        try {
+            return running.get(maxWait.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException(cause);
+        } catch (TimeoutException e) {
+            timedOut.increment();
+            throw new QueryTimeoutException("gave up waiting " + maxWait.toMillis() + "ms for the load of " + key);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new QueryTimeoutException("interrupted waiting for the load of " + key);
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package br.com.nerdslab.libraryapi.api.mapper;
+
+import br.com.nerdslab.libraryapi.api.dto.BookDTO;
+import br.com.nerdslab.libraryapi.model.entity.Book;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class BookMapperTest {
+
+    BookMapper mapper = new BookMapper();
+
+    @Test
+    @DisplayName("Deve converter um livro em DTO")
+    public void toDtoTest() {
+        // cenário
+        Book book = Book.builder().id(1l).title("As aventuras").author("Fulano").isbn("123").build();
+
+        // execução
+        BookDTO dto = mapper.toDto(book);
+
+        // verificação
+        assertThat(dto).isEqualTo(BookDTO.builder().id(1l).title("As aventuras").author("Fulano").isbn("123").build());
+    }
+
+    @Test
+    @DisplayName("Deve converter um DTO em livro")
+    public void toEntityTest() {
+        // cenário
+        BookDTO dto = BookDTO.builder().title("As aventuras").author("Fulano").isbn("123").build();
+
+        // execução
+        Book book = mapper.toEntity(dto);
+
+        // verificação
+        assertThat(book.getId()).isNull();
+        assertThat(book.getTitle()).isEqualTo(dto.getTitle());
+        assertThat(book.getAuthor()).isEqualTo(dto.getAuthor());
+        assertThat(book.getIsbn()).isEqualTo(dto.getIsbn());
+    }
+
+    @Test
+    @DisplayName("Deve retornar nulo ao converter um livro nulo")
+    public void nullTest() {
+        assertThat(mapper.toDto(null)).isNull();
+        assertThat(mapper.toEntity(null)).isNull();
+    }
+
+}
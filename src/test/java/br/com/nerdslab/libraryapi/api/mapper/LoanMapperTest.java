@@ -0,0 +1,68 @@
+package br.com.nerdslab.libraryapi.api.mapper;
+
+import br.com.nerdslab.libraryapi.api.dto.LoanDTO;
+import br.com.nerdslab.libraryapi.api.dto.ReturnedLoanDTO;
+import br.com.nerdslab.libraryapi.model.entity.Book;
+import br.com.nerdslab.libraryapi.model.entity.Loan;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class LoanMapperTest {
+
+    LoanMapper mapper = new LoanMapper(new BookMapper());
+
+    @Test
+    @DisplayName("Deve converter um empréstimo em DTO com o livro")
+    public void toDtoTest() {
+        // cenário
+        Book book = Book.builder().id(1l).title("As aventuras").author("Fulano").isbn("123").build();
+        Loan loan = Loan.builder().id(2l).book(book).customer("Fulano").customerEmail("fulano@email.com")
+                .loanDate(LocalDate.now()).build();
+
+        // execução
+        LoanDTO dto = mapper.toDto(loan);
+
+        // verificação
+        assertThat(dto.getId()).isEqualTo(2l);
+        assertThat(dto.getIsbn()).isEqualTo("123");
+        assertThat(dto.getCustomer()).isEqualTo("Fulano");
+        assertThat(dto.getEmail()).isEqualTo("fulano@email.com");
+        assertThat(dto.getBook().getId()).isEqualTo(1l);
+        assertThat(dto.getBook().getTitle()).isEqualTo("As aventuras");
+    }
+
+    @Test
+    @DisplayName("Deve converter um DTO em empréstimo para o livro informado")
+    public void toEntityTest() {
+        // cenário
+        Book book = Book.builder().id(1l).isbn("123").build();
+        LoanDTO dto = LoanDTO.builder().isbn("123").customer("Fulano").email("fulano@email.com").build();
+
+        // execução
+        Loan loan = mapper.toEntity(dto, book);
+
+        // verificação
+        assertThat(loan.getId()).isNull();
+        assertThat(loan.getBook()).isEqualTo(book);
+        assertThat(loan.getCustomer()).isEqualTo("Fulano");
+        assertThat(loan.getCustomerEmail()).isEqualTo("fulano@email.com");
+    }
+
+    @Test
+    @DisplayName("Deve aplicar a devolução ao empréstimo")
+    public void applyReturnTest() {
+        // cenário
+        Loan loan = Loan.builder().id(1l).build();
+
+        // execução
+        mapper.applyReturn(ReturnedLoanDTO.builder().returned(true).build(), loan);
+
+        // verificação
+        assertThat(loan.getReturned()).isTrue();
+    }
+
+}
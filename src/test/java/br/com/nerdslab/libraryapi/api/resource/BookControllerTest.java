@@ -2,7 +2,12 @@ package br.com.nerdslab.libraryapi.api.resource;
 
 import br.com.nerdslab.libraryapi.exception.BusinessException;
 import br.com.nerdslab.libraryapi.model.entity.Book;
+import br.com.nerdslab.libraryapi.model.entity.Loan;
 import br.com.nerdslab.libraryapi.api.dto.BookDTO;
+import br.com.nerdslab.libraryapi.api.dto.BookImportErrorDTO;
+import br.com.nerdslab.libraryapi.api.dto.BookImportResultDTO;
+import br.com.nerdslab.libraryapi.service.AvailabilityIndex;
+import br.com.nerdslab.libraryapi.service.BookImportService;
 import br.com.nerdslab.libraryapi.service.BookService;
 import br.com.nerdslab.libraryapi.service.EmailService;
 import br.com.nerdslab.libraryapi.service.LoanService;
@@ -20,6 +25,8 @@ import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
@@ -27,10 +34,22 @@ import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
 import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
 
+import java.io.InputStream;
+import java.time.Instant;
 import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
 import java.util.Optional;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.hamcrest.Matchers.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
@@ -48,12 +67,18 @@ public class BookControllerTest {
     @MockBean
     BookService service;
 
+    @MockBean
+    BookImportService importService;
+
     @MockBean
     LoanService loanService;
 
     @MockBean
     EmailService emailService;
 
+    @MockBean
+    AvailabilityIndex availabilityIndex;
+
     @Test
     @DisplayName("Deve criar um livro com sucesso")
     public void createBookTest() throws Exception {
@@ -152,6 +177,94 @@ public class BookControllerTest {
 
     }
 
+    @Test
+    @DisplayName("Deve informar a versão do livro no ETag e no Last-Modified")
+    public void getBookDetailsETagTest() throws Exception {
+        // cenário
+        Book book = Book.builder().id(1l).title("As aventuras").author("Fulano").isbn("123")
+                .version(3l).lastModified(Instant.parse("2020-01-01T10:00:00Z")).build();
+        BDDMockito.given(service.getById(1l)).willReturn(Optional.of(book));
+
+        // execução e verificação
+        mvc
+                .perform(MockMvcRequestBuilders.get(BOOK_API.concat("/1")).accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"3\""))
+                .andExpect(header().string(HttpHeaders.LAST_MODIFIED, "Wed, 01 Jan 2020 10:00:00 GMT"))
+                .andExpect(jsonPath("id").value(1l));
+    }
+
+    @Test
+    @DisplayName("Deve retornar not modified quando o cliente já tiver a versão atual do livro")
+    public void getBookNotModifiedTest() throws Exception {
+        // cenário
+        Book book = Book.builder().id(1l).title("As aventuras").author("Fulano").isbn("123").version(3l).build();
+        BDDMockito.given(service.getById(1l)).willReturn(Optional.of(book));
+
+        // execução
+        MockHttpServletRequestBuilder request = MockMvcRequestBuilders
+                .get(BOOK_API.concat("/1"))
+                .header(HttpHeaders.IF_NONE_MATCH, "\"3\"")
+                .accept(MediaType.APPLICATION_JSON);
+
+        // verificação
+        mvc
+                .perform(request)
+                .andExpect(status().isNotModified())
+                .andExpect(content().string(""));
+    }
+
+    @Test
+    @DisplayName("Deve retornar not modified quando os empréstimos do livro não tiverem mudado")
+    public void loansByBookNotModifiedTest() throws Exception {
+        // cenário
+        Book book = Book.builder().id(1l).isbn("123").version(1l).build();
+        Loan loan = Loan.builder().id(1l).book(book).customer("Fulano").version(2l).build();
+        BDDMockito.given(service.getById(1l)).willReturn(Optional.of(book));
+        BDDMockito.given(loanService.getLoansByBook(Mockito.any(Book.class), Mockito.any(Pageable.class)))
+                .willReturn(new PageImpl<Loan>(Collections.singletonList(loan), PageRequest.of(0, 10), 1));
+
+        String etag = mvc
+                .perform(MockMvcRequestBuilders.get(BOOK_API.concat("/1/loans?page=0&size=10")))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+
+        // execução e verificação
+        mvc
+                .perform(MockMvcRequestBuilders.get(BOOK_API.concat("/1/loans?page=0&size=10"))
+                        .header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isNotModified());
+
+        loan.setVersion(3l);
+        mvc
+                .perform(MockMvcRequestBuilders.get(BOOK_API.concat("/1/loans?page=0&size=10"))
+                        .header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("content", hasSize(1)));
+    }
+
+    @Test
+    @DisplayName("Deve recusar a atualização de um livro quando o If-Match não for a versão atual")
+    public void updateBookPreconditionFailedTest() throws Exception {
+        // cenário
+        Book book = Book.builder().id(1l).title("As aventuras").author("Fulano").isbn("123").version(4l).build();
+        BDDMockito.given(service.getById(1l)).willReturn(Optional.of(book));
+
+        // execução
+        MockHttpServletRequestBuilder request = MockMvcRequestBuilders
+                .put(BOOK_API.concat("/1"))
+                .content(new ObjectMapper().writeValueAsString(createNewBook()))
+                .header(HttpHeaders.IF_MATCH, "\"3\"")
+                .accept(MediaType.APPLICATION_JSON)
+                .contentType(MediaType.APPLICATION_JSON);
+
+        // verificação
+        mvc
+                .perform(request)
+                .andExpect(status().isPreconditionFailed());
+        Mockito.verify(service, Mockito.never()).update(Mockito.any(Book.class));
+    }
+
     @Test
     @DisplayName("Deve retornar resource not found quando o livro procurado não existir")
     public void bookNotFoundTest() throws Exception {
@@ -225,7 +338,7 @@ public class BookControllerTest {
         Book updatedBook = Book.builder().id(id).author("Robson").title("As aventuras").isbn("321").build();
 
         BDDMockito
-                .given(service.update(updatingBook))
+                .given(service.update(Mockito.any(Book.class)))
                 .willReturn(updatedBook);
 
         // execução ou when
@@ -243,6 +356,64 @@ public class BookControllerTest {
                 .andExpect(jsonPath("author").value(createNewBook().getAuthor()))
                 .andExpect(jsonPath("isbn").value("321"));
 
+        // the cached instance is left as it was
+        assertThat(updatingBook.getTitle()).isEqualTo("some title");
+        assertThat(updatingBook.getAuthor()).isEqualTo("some author");
+    }
+
+    @Test
+    @DisplayName("Deve importar livros de um arquivo CSV")
+    public void importBooksTest() throws Exception {
+        // cenário
+        BookImportResultDTO result = BookImportResultDTO.builder()
+                .imported(1)
+                .rejected(1)
+                .errors(Collections.singletonList(BookImportErrorDTO.builder()
+                        .line(3)
+                        .isbn("002")
+                        .errors(Collections.singletonList("title must not be empty"))
+                        .build()))
+                .build();
+        BDDMockito.given(importService.importBooks(Mockito.any(InputStream.class),
+                Mockito.eq(BookImportService.Format.CSV))).willReturn(result);
+
+        // execução
+        MockHttpServletRequestBuilder request = MockMvcRequestBuilders
+                .post(BOOK_API.concat("/import"))
+                .contentType("text/csv")
+                .accept(MediaType.APPLICATION_JSON)
+                .content("isbn,title,author\n001,Aventuras,Artur\n002,,Fulano\n");
+
+        // verificação
+        mvc.perform(request)
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("imported").value(1))
+                .andExpect(jsonPath("rejected").value(1))
+                .andExpect(jsonPath("errors[0].line").value(3))
+                .andExpect(jsonPath("errors[0].isbn").value("002"));
+    }
+
+    @Test
+    @DisplayName("Deve importar livros de um arquivo NDJSON")
+    public void importNdjsonBooksTest() throws Exception {
+        // cenário
+        BDDMockito.given(importService.importBooks(Mockito.any(InputStream.class),
+                Mockito.eq(BookImportService.Format.NDJSON)))
+                .willReturn(BookImportResultDTO.builder().imported(1).errors(Collections.emptyList()).build());
+
+        // execução
+        MockHttpServletRequestBuilder request = MockMvcRequestBuilders
+                .post(BOOK_API.concat("/import"))
+                .contentType("application/x-ndjson")
+                .accept(MediaType.APPLICATION_JSON)
+                .content("{\"isbn\":\"001\",\"title\":\"Aventuras\",\"author\":\"Artur\"}\n");
+
+        // verificação
+        mvc.perform(request)
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("imported").value(1))
+                .andExpect(jsonPath("rejected").value(0))
+                .andExpect(jsonPath("errors", hasSize(0)));
     }
 
     @Test
@@ -315,6 +486,191 @@ public class BookControllerTest {
 
     }
 
+    @Test
+    @DisplayName("Deve filtrar livros por cursor sem contar o total.")
+    public void findBooksAfterTest() throws Exception {
+        // cenário
+        Book book = Book.builder().id(7l).title("As aventuras").author("Robson").isbn("001").build();
+
+        BDDMockito.given(service.findAfter(Mockito.any(Book.class), Mockito.eq(5l), Mockito.eq(1)))
+                .willReturn(new SliceImpl<Book>(Arrays.asList(book), PageRequest.of(0, 1), true));
+
+        // execução
+        String after = Base64.getUrlEncoder().withoutPadding().encodeToString("5".getBytes());
+        MockHttpServletRequestBuilder request = MockMvcRequestBuilders
+                .get(BOOK_API.concat("?title=aventuras&size=1&after=" + after))
+                .accept(MediaType.APPLICATION_JSON);
+
+        // verificação
+        mvc
+                .perform(request)
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("content", Matchers.hasSize(1)))
+                .andExpect(jsonPath("content[0].id").value(7))
+                .andExpect(jsonPath("size").value(1))
+                .andExpect(jsonPath("next").value(Base64.getUrlEncoder().withoutPadding().encodeToString("7".getBytes())))
+                .andExpect(jsonPath("totalElements").doesNotExist());
+
+        Mockito.verify(service, Mockito.never()).find(Mockito.any(Book.class), Mockito.any(Pageable.class));
+    }
+
+    @Test
+    @DisplayName("Deve começar da primeira página quando o cursor estiver vazio.")
+    public void findBooksFromStartTest() throws Exception {
+        // cenário
+        BDDMockito.given(service.findAfter(Mockito.any(Book.class), Mockito.isNull(), Mockito.eq(20)))
+                .willReturn(new SliceImpl<Book>(Collections.emptyList(), PageRequest.of(0, 20), false));
+
+        // execução
+        MockHttpServletRequestBuilder request = MockMvcRequestBuilders
+                .get(BOOK_API.concat("?after="))
+                .accept(MediaType.APPLICATION_JSON);
+
+        // verificação
+        mvc
+                .perform(request)
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("content", Matchers.hasSize(0)))
+                .andExpect(jsonPath("next").doesNotExist());
+    }
+
+    @Test
+    @DisplayName("Deve retornar bad request para um cursor inválido.")
+    public void findBooksInvalidCursorTest() throws Exception {
+        MockHttpServletRequestBuilder request = MockMvcRequestBuilders
+                .get(BOOK_API.concat("?after=@@@"))
+                .accept(MediaType.APPLICATION_JSON);
+
+        mvc
+                .perform(request)
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("errors[0]").value("Invalid cursor"));
+    }
+
+    @Test
+    @DisplayName("Deve informar a disponibilidade de vários livros de uma vez.")
+    public void availabilityTest() throws Exception {
+        // cenário
+        BDDMockito.given(availabilityIndex.isReady()).willReturn(true);
+        BDDMockito.given(availabilityIndex.loaned(new long[]{1, 2, 3, 4})).willReturn(new long[]{4, 2});
+
+        // execução
+        MockHttpServletRequestBuilder request = MockMvcRequestBuilders
+                .get(BOOK_API.concat("/availability?ids=1,2,3,4"))
+                .accept(MediaType.APPLICATION_JSON);
+
+        // verificação
+        mvc
+                .perform(request)
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("available", contains(1, 3)))
+                .andExpect(jsonPath("loaned", contains(4, 2)));
+        Mockito.verify(service, Mockito.never()).getById(Mockito.anyLong());
+    }
+
+    @Test
+    @DisplayName("Deve recusar a consulta de disponibilidade com ids demais.")
+    public void availabilityTooManyIdsTest() throws Exception {
+        // cenário
+        BDDMockito.given(availabilityIndex.isReady()).willReturn(true);
+        String ids = IntStream.rangeClosed(1, BookController.MAX_AVAILABILITY_IDS + 1)
+                .mapToObj(String::valueOf)
+                .collect(Collectors.joining(","));
+
+        // execução
+        MockHttpServletRequestBuilder request = MockMvcRequestBuilders
+                .get(BOOK_API.concat("/availability"))
+                .param("ids", ids)
+                .accept(MediaType.APPLICATION_JSON);
+
+        // verificação
+        mvc
+                .perform(request)
+                .andExpect(status().isBadRequest());
+        Mockito.verify(availabilityIndex, Mockito.never()).loaned(Mockito.any());
+    }
+
+    @Test
+    @DisplayName("Deve responder indisponível enquanto o índice de disponibilidade não foi carregado.")
+    public void availabilityNotReadyTest() throws Exception {
+        // cenário
+        BDDMockito.given(availabilityIndex.isReady()).willReturn(false);
+
+        // execução
+        MockHttpServletRequestBuilder request = MockMvcRequestBuilders
+                .get(BOOK_API.concat("/availability?ids=1"))
+                .accept(MediaType.APPLICATION_JSON);
+
+        // verificação
+        mvc
+                .perform(request)
+                .andExpect(status().isServiceUnavailable());
+    }
+
+    @Test
+    @DisplayName("Deve obter vários livros por id na ordem pedida, informando os não encontrados.")
+    public void getByIdsTest() throws Exception {
+        // cenário
+        Map<Long, Book> found = new HashMap<>();
+        found.put(3l, Book.builder().id(3l).isbn("003").build());
+        found.put(1l, Book.builder().id(1l).isbn("001").build());
+        BDDMockito.given(service.getByIds(Mockito.anyCollection())).willReturn(found);
+
+        // execução
+        MockHttpServletRequestBuilder request = MockMvcRequestBuilders
+                .get(BOOK_API.concat("/batch?ids=3,2,1,3"))
+                .accept(MediaType.APPLICATION_JSON);
+
+        // verificação
+        mvc
+                .perform(request)
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("content[*].id", contains(3, 1)))
+                .andExpect(jsonPath("missing", contains(2)));
+        Mockito.verify(service).getByIds(new LinkedHashSet<>(Arrays.asList(3l, 2l, 1l)));
+    }
+
+    @Test
+    @DisplayName("Deve obter vários livros por isbn na ordem pedida, informando os não encontrados.")
+    public void getByIsbnsTest() throws Exception {
+        // cenário
+        BDDMockito.given(service.getByIsbns(Mockito.anyCollection()))
+                .willReturn(Collections.singletonMap("002", Book.builder().id(2l).isbn("002").build()));
+
+        // execução
+        MockHttpServletRequestBuilder request = MockMvcRequestBuilders
+                .get(BOOK_API.concat("/batch?isbns=001,002"))
+                .accept(MediaType.APPLICATION_JSON);
+
+        // verificação
+        mvc
+                .perform(request)
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("content[*].isbn", contains("002")))
+                .andExpect(jsonPath("missing", contains("001")));
+    }
+
+    @Test
+    @DisplayName("Deve recusar um lote com livros demais.")
+    public void batchTooLargeTest() throws Exception {
+        // cenário
+        String ids = IntStream.rangeClosed(1, BookController.MAX_BATCH_SIZE + 1)
+                .mapToObj(String::valueOf)
+                .collect(Collectors.joining(","));
+
+        // execução
+        MockHttpServletRequestBuilder request = MockMvcRequestBuilders
+                .get(BOOK_API.concat("/batch"))
+                .param("ids", ids)
+                .accept(MediaType.APPLICATION_JSON);
+
+        // verificação
+        mvc
+                .perform(request)
+                .andExpect(status().isBadRequest());
+        Mockito.verify(service, Mockito.never()).getByIds(Mockito.anyCollection());
+    }
+
     private BookDTO createNewBook() {
         return BookDTO.builder().author("Robson").title("As aventuras").isbn("001").build();
     }
@@ -0,0 +1,114 @@
+package br.com.nerdslab.libraryapi.api.resource;
+
+import br.com.nerdslab.libraryapi.model.entity.Book;
+import br.com.nerdslab.libraryapi.model.entity.Loan;
+import br.com.nerdslab.libraryapi.model.repository.BookRepository;
+import br.com.nerdslab.libraryapi.model.repository.LoanRepository;
+import br.com.nerdslab.libraryapi.service.EmailService;
+import br.com.nerdslab.libraryapi.support.StatementRecorder;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.Matchers.hasSize;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * The listings through the whole stack, down to the database, so a change that makes them query per row
+ * fails here whatever the page size.
+ */
+@ExtendWith(SpringExtension.class)
+@ActiveProfiles("test")
+@SpringBootTest(properties = "spring.datasource.url=jdbc:h2:mem:statement-count;DB_CLOSE_DELAY=-1")
+@AutoConfigureMockMvc
+@Import(StatementRecorder.class)
+public class ControllerStatementCountTest {
+
+    private static final int LOANS = 40;
+
+    @Autowired
+    MockMvc mvc;
+
+    @Autowired
+    StatementRecorder statementRecorder;
+
+    @Autowired
+    BookRepository bookRepository;
+
+    @Autowired
+    LoanRepository loanRepository;
+
+    @MockBean
+    EmailService emailService;
+
+    @AfterEach
+    public void tearDown() {
+        loanRepository.deleteAllInBatch();
+        bookRepository.deleteAllInBatch();
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {5, 20})
+    @DisplayName("Deve listar empréstimos por isbn ou customer com número constante de consultas")
+    public void findLoansStatementCountTest(int size) throws Exception {
+        // cenário
+        List<Loan> loans = new ArrayList<>();
+        for (int i = 0; i < LOANS; i++) {
+            Book book = bookRepository.save(Book.builder().title("Aventuras").author("Fulano").isbn("isbn-" + i).build());
+            loans.add(Loan.builder().book(book).customer("Fulano").loanDate(LocalDate.now()).build());
+        }
+        loanRepository.saveAll(loans);
+        statementRecorder.clear();
+
+        // execução
+        mvc
+                .perform(MockMvcRequestBuilders.get("/api/loans?customer=Fulano&page=0&size=" + size))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("content", hasSize(size)))
+                .andExpect(jsonPath("totalElements").value(LOANS));
+
+        // verificação
+        statementRecorder.assertAtMost(2);
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {5, 20})
+    @DisplayName("Deve listar os empréstimos do livro com número constante de consultas e sem varrer tabelas")
+    public void loansByBookStatementCountTest(int size) throws Exception {
+        // cenário
+        Book book = bookRepository.save(Book.builder().title("Aventuras").author("Fulano").isbn("123").build());
+        List<Loan> loans = new ArrayList<>();
+        for (int i = 0; i < LOANS; i++) {
+            loans.add(Loan.builder().book(book).customer("Fulano").loanDate(LocalDate.now()).returned(true).build());
+        }
+        loanRepository.saveAll(loans);
+        statementRecorder.clear();
+
+        // execução
+        mvc
+                .perform(MockMvcRequestBuilders.get("/api/books/" + book.getId() + "/loans?page=0&size=" + size))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("content", hasSize(size)))
+                .andExpect(jsonPath("totalElements").value(LOANS));
+
+        // verificação
+        statementRecorder.assertAtMost(3);
+        statementRecorder.assertNoFullScans();
+    }
+}
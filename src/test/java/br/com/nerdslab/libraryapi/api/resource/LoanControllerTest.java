@@ -1,13 +1,17 @@
 package br.com.nerdslab.libraryapi.api.resource;
 
+import br.com.nerdslab.libraryapi.api.dto.LoanBatchItemDTO;
 import br.com.nerdslab.libraryapi.api.dto.LoanDTO;
 import br.com.nerdslab.libraryapi.api.dto.LoanFilterDTO;
 import br.com.nerdslab.libraryapi.api.dto.ReturnedLoanDTO;
 import br.com.nerdslab.libraryapi.exception.BusinessException;
 import br.com.nerdslab.libraryapi.model.entity.Book;
 import br.com.nerdslab.libraryapi.model.entity.Loan;
+import br.com.nerdslab.libraryapi.model.entity.LoanStatus;
 import br.com.nerdslab.libraryapi.service.BookService;
 import br.com.nerdslab.libraryapi.service.EmailService;
+import br.com.nerdslab.libraryapi.service.LoanBatchService;
+import br.com.nerdslab.libraryapi.service.LoanPolicy;
 import br.com.nerdslab.libraryapi.service.LoanService;
 import br.com.nerdslab.libraryapi.service.LoanServiceTest;
 import com.fasterxml.jackson.core.JsonProcessingException;
@@ -16,6 +20,7 @@ import org.hamcrest.Matchers;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.BDDMockito;
 import org.mockito.Mock;
 import org.mockito.Mockito;
@@ -26,7 +31,10 @@ import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 import org.springframework.test.web.servlet.MockMvc;
@@ -35,8 +43,12 @@ import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
 
 import java.time.LocalDate;
 import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
 import java.util.Optional;
 
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 
 @ExtendWith(SpringExtension.class)
@@ -58,18 +70,27 @@ public class LoanControllerTest {
     @MockBean
     private EmailService emailService;
 
+    @MockBean
+    private LoanPolicy loanPolicy;
+
+    @MockBean
+    private LoanBatchService loanBatchService;
+
     @Test
     @DisplayName("Deve realizar um empréstimo.")
     public  void createLoanTest() throws Exception {
         // cenário
         Long id = 1l;
         String isbn = "123";
-        LoanDTO dto = LoanDTO.builder().isbn(isbn).email("customer@email.com").customer("Fulano").build();
+        LoanDTO dto = LoanDTO.builder().isbn(isbn).email("customer@email.com").customer("Fulano")
+                .customerClass("student").build();
         String json = new ObjectMapper().writeValueAsString(dto);
 
         Book book = Book.builder().id(id).isbn(isbn).build();
         BDDMockito.given(bookService.getBookByIsbn(isbn))
                 .willReturn(Optional.of(book));
+        LocalDate dueDate = LocalDate.now().plusDays(14);
+        BDDMockito.given(loanPolicy.dueDate(book, "student", LocalDate.now())).willReturn(dueDate);
 
         Loan loan = Loan.builder().id(id).customer("Fulano").book(book).loanDate(LocalDate.now()).build();
         BDDMockito.given(loanService.save(Mockito.any(Loan.class))).willReturn(loan);
@@ -86,6 +107,10 @@ public class LoanControllerTest {
                 .andExpect(status().isCreated())
                 .andExpect(content().string("1"));
 
+        ArgumentCaptor<Loan> saved = ArgumentCaptor.forClass(Loan.class);
+        Mockito.verify(loanService).save(saved.capture());
+        assertThat(saved.getValue().getStatus()).isEqualTo(LoanStatus.ACTIVE);
+        assertThat(saved.getValue().getDueDate()).isEqualTo(dueDate);
     }
 
     @Test
@@ -173,6 +198,49 @@ public class LoanControllerTest {
 
     }
 
+    @Test
+    @DisplayName("Deve recusar a devolução quando o If-Match não for a versão atual do empréstimo.")
+    public void returnBookPreconditionFailedTest() throws Exception {
+        // cenário
+        Loan loan = Loan.builder().id(1l).version(2l).build();
+        BDDMockito.given(loanService.getById(1l)).willReturn(Optional.of(loan));
+        String json = new ObjectMapper().writeValueAsString(ReturnedLoanDTO.builder().returned(true).build());
+
+        MockHttpServletRequestBuilder request = MockMvcRequestBuilders.patch(LOAN_API.concat("/1"))
+                .header(HttpHeaders.IF_MATCH, "\"1\"")
+                .accept(MediaType.APPLICATION_JSON)
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(json);
+
+        // execução e verificação
+        mvc
+                .perform(request)
+                .andExpect(status().isPreconditionFailed());
+
+        Mockito.verify(loanService, Mockito.never()).update(Mockito.any(Loan.class));
+    }
+
+    @Test
+    @DisplayName("Deve retornar conflito quando o empréstimo for alterado durante a devolução.")
+    public void returnBookConcurrentlyModifiedTest() throws Exception {
+        // cenário
+        Loan loan = Loan.builder().id(1l).version(2l).build();
+        BDDMockito.given(loanService.getById(1l)).willReturn(Optional.of(loan));
+        BDDMockito.given(loanService.update(loan)).willThrow(new ObjectOptimisticLockingFailureException(Loan.class, 1l));
+        String json = new ObjectMapper().writeValueAsString(ReturnedLoanDTO.builder().returned(true).build());
+
+        MockHttpServletRequestBuilder request = MockMvcRequestBuilders.patch(LOAN_API.concat("/1"))
+                .header(HttpHeaders.IF_MATCH, "\"2\"")
+                .accept(MediaType.APPLICATION_JSON)
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(json);
+
+        // execução e verificação
+        mvc
+                .perform(request)
+                .andExpect(status().isConflict());
+    }
+
     @Test
     @DisplayName("Deve retornar 404 ao tentar devolver um livro inexistent.")
     public void returnInexistentBookTest() throws Exception {
@@ -241,4 +309,116 @@ public class LoanControllerTest {
 
     }
 
+    @Test
+    @DisplayName("Deve filtrar empréstimos por cursor de data e id.")
+    public void findLoansAfterTest() throws Exception {
+        // cenário
+        LocalDate loanDate = LocalDate.of(2020, 1, 10);
+        Book book = Book.builder().id(1l).isbn("321").build();
+        Loan loan = LoanServiceTest.createLoan();
+        loan.setId(8l);
+        loan.setBook(book);
+        loan.setLoanDate(loanDate);
+
+        BDDMockito.given(loanService.findAfter(
+                Mockito.any(LoanFilterDTO.class), Mockito.eq(loanDate), Mockito.eq(3l), Mockito.eq(1)))
+                .willReturn(new SliceImpl<Loan>(Arrays.asList(loan), PageRequest.of(0, 1), true));
+
+        // execução
+        String after = Base64.getUrlEncoder().withoutPadding().encodeToString("2020-01-10:3".getBytes());
+        MockHttpServletRequestBuilder request = MockMvcRequestBuilders
+                .get(LOAN_API.concat("?isbn=321&customer=Fulano&size=1&after=" + after))
+                .accept(MediaType.APPLICATION_JSON);
+
+        // verificação
+        mvc
+                .perform(request)
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("content", Matchers.hasSize(1)))
+                .andExpect(jsonPath("content[0].id").value(8))
+                .andExpect(jsonPath("next").value(
+                        Base64.getUrlEncoder().withoutPadding().encodeToString("2020-01-10:8".getBytes())));
+    }
+
+    @Test
+    @DisplayName("Deve retornar bad request para cursor de empréstimo sem data.")
+    public void findLoansInvalidCursorTest() throws Exception {
+        String after = Base64.getUrlEncoder().withoutPadding().encodeToString("3".getBytes());
+        MockHttpServletRequestBuilder request = MockMvcRequestBuilders
+                .get(LOAN_API.concat("?after=" + after))
+                .accept(MediaType.APPLICATION_JSON);
+
+        mvc
+                .perform(request)
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("errors[0]").value("Invalid cursor"));
+    }
+
+    @Test
+    @DisplayName("Deve realizar vários empréstimos de uma vez informando o resultado de cada um.")
+    public void createBatchTest() throws Exception {
+        // cenário
+        List<LoanDTO> dtos = Arrays.asList(
+                LoanDTO.builder().isbn("001").customer("Fulano").email("fulano@email.com").build(),
+                LoanDTO.builder().isbn("002").customer("Fulano").email("fulano@email.com").build());
+        BDDMockito.given(loanBatchService.create(dtos)).willReturn(Arrays.asList(
+                LoanBatchItemDTO.builder().index(0).id(1l).isbn("001").errors(Collections.emptyList()).build(),
+                LoanBatchItemDTO.builder().index(1).isbn("002").errors(Collections.singletonList("Book already loaned")).build()));
+
+        // execução
+        MockHttpServletRequestBuilder request = MockMvcRequestBuilders.post(LOAN_API.concat("/batch"))
+                .accept(MediaType.APPLICATION_JSON)
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(new ObjectMapper().writeValueAsString(dtos));
+
+        // verificação
+        mvc
+                .perform(request)
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("[0].id").value(1))
+                .andExpect(jsonPath("[0].errors", Matchers.hasSize(0)))
+                .andExpect(jsonPath("[1].errors[0]").value("Book already loaned"));
+    }
+
+    @Test
+    @DisplayName("Deve devolver vários livros de uma vez.")
+    public void returnBatchTest() throws Exception {
+        // cenário
+        List<ReturnedLoanDTO> dtos = Collections.singletonList(ReturnedLoanDTO.builder().id(1l).returned(true).build());
+        BDDMockito.given(loanBatchService.returnLoans(dtos)).willReturn(Collections.singletonList(
+                LoanBatchItemDTO.builder().index(0).id(1l).errors(Collections.emptyList()).build()));
+
+        // execução
+        MockHttpServletRequestBuilder request = MockMvcRequestBuilders.patch(LOAN_API.concat("/batch"))
+                .accept(MediaType.APPLICATION_JSON)
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(new ObjectMapper().writeValueAsString(dtos));
+
+        // verificação
+        mvc
+                .perform(request)
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("[0].id").value(1));
+        Mockito.verify(loanBatchService).returnLoans(dtos);
+    }
+
+    @Test
+    @DisplayName("Deve recusar um lote de empréstimos grande demais.")
+    public void createBatchTooLargeTest() throws Exception {
+        // cenário
+        LoanDTO[] dtos = new LoanDTO[LoanController.MAX_BATCH_SIZE + 1];
+        Arrays.fill(dtos, LoanDTO.builder().isbn("001").customer("Fulano").build());
+
+        // execução
+        MockHttpServletRequestBuilder request = MockMvcRequestBuilders.post(LOAN_API.concat("/batch"))
+                .accept(MediaType.APPLICATION_JSON)
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(new ObjectMapper().writeValueAsString(dtos));
+
+        // verificação
+        mvc
+                .perform(request)
+                .andExpect(status().isBadRequest());
+        Mockito.verifyNoInteractions(loanBatchService);
+    }
 }
@@ -0,0 +1,199 @@
+package br.com.nerdslab.libraryapi.config;
+
+import br.com.nerdslab.libraryapi.model.entity.Book;
+import br.com.nerdslab.libraryapi.model.repository.BookRepository;
+import br.com.nerdslab.libraryapi.service.BookService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Slice;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManagerFactory;
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@ExtendWith(SpringExtension.class)
+@ActiveProfiles("test")
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:routing-primary;DB_CLOSE_DELAY=-1",
+        "application.datasource.replica.jdbc-url=jdbc:h2:mem:routing-replica;DB_CLOSE_DELAY=-1",
+        "application.datasource.replica.username=sa"
+})
+public class ReplicaRoutingTest {
+
+    private static final long REPLICA_BOOK_ID = 900_001;
+
+    @Autowired
+    BookService bookService;
+
+    @Autowired
+    BookRepository bookRepository;
+
+    @Autowired
+    PlatformTransactionManager transactionManager;
+
+    @Autowired
+    EntityManagerFactory entityManagerFactory;
+
+    DataSource primaryDataSource = new DriverManagerDataSource("jdbc:h2:mem:routing-primary", "sa", "");
+
+    DataSource replicaDataSource = new DriverManagerDataSource("jdbc:h2:mem:routing-replica", "sa", "");
+
+    JdbcTemplate primary;
+
+    JdbcTemplate replica;
+
+    Book primaryBook;
+
+    /**
+     * The replica gets the primary's schema and, instead of replication, a book of its own.
+     */
+    @BeforeEach
+    public void setUp() {
+        primary = new JdbcTemplate(primaryDataSource);
+        replica = new JdbcTemplate(replicaDataSource);
+        Integer tables = replica.queryForObject(
+                " select count(*) from information_schema.tables where table_name = 'BOOK' ", Integer.class);
+        if (tables == 0) {
+            primary.queryForList(" script nodata ", String.class).forEach(replica::execute);
+        }
+        replica.update(" insert into book (id, title, author, isbn) values (?, 'Réplica', 'Fulano', 'replica-1') ",
+                REPLICA_BOOK_ID);
+        primaryBook = bookRepository.save(Book.builder().title("Primário").author("Fulano").isbn("primary-1").build());
+    }
+
+    @AfterEach
+    public void tearDown() {
+        replica.update(" delete from book ");
+        bookRepository.deleteAllInBatch();
+    }
+
+    @Test
+    @DisplayName("Deve ler as consultas somente leitura da réplica")
+    public void readOnlyQueryFromReplicaTest() {
+        // execução
+        Slice<Book> books = bookService.findAfter(new Book(), 0L, 100);
+
+        // verificação
+        assertThat(books.getContent()).extracting(Book::getIsbn).containsExactly("replica-1");
+    }
+
+    @Test
+    @DisplayName("Não deve colocar no cache de segundo nível o que foi lido da réplica")
+    public void replicaReadsNotCachedTest() {
+        // cenário
+        entityManagerFactory.getCache().evictAll();
+
+        // execução
+        bookService.findAfter(new Book(), 0L, 100);
+        bookService.getById(primaryBook.getId());
+
+        // verificação
+        assertThat(entityManagerFactory.getCache().contains(Book.class, REPLICA_BOOK_ID)).isFalse();
+        assertThat(entityManagerFactory.getCache().contains(Book.class, primaryBook.getId())).isTrue();
+    }
+
+    @Test
+    @DisplayName("Deve ler as buscas por chave do primário")
+    public void keyLookupFromPrimaryTest() {
+        // execução
+        boolean primaryFound = bookService.getById(primaryBook.getId()).isPresent();
+        boolean replicaFound = bookService.getById(REPLICA_BOOK_ID).isPresent();
+        List<Long> batch = Arrays.asList(primaryBook.getId(), REPLICA_BOOK_ID);
+
+        // verificação
+        assertThat(primaryFound).isTrue();
+        assertThat(replicaFound).isFalse();
+        assertThat(bookService.getByIds(batch)).containsOnlyKeys(primaryBook.getId());
+    }
+
+    @Test
+    @DisplayName("Deve manter no primário a leitura feita dentro de uma transação de escrita")
+    public void readInsideWriteTransactionTest() {
+        // execução
+        Slice<Book> books = new TransactionTemplate(transactionManager)
+                .execute(status -> bookService.findAfter(new Book(), 0L, 100));
+
+        // verificação
+        assertThat(books.getContent()).extracting(Book::getIsbn).containsExactly("primary-1");
+    }
+
+    @Test
+    @DisplayName("Não deve gravar alterações feitas em uma transação somente leitura")
+    public void readOnlyTransactionNotFlushedTest() {
+        // cenário
+        TransactionTemplate readOnly = new TransactionTemplate(transactionManager);
+        readOnly.setReadOnly(true);
+
+        // execução
+        readOnly.execute(status -> ReplicaRoutingDataSource.onPrimary(() -> {
+            bookRepository.findById(primaryBook.getId()).get().setTitle("Alterado");
+            return null;
+        }));
+
+        // verificação
+        assertThat(primary.queryForObject(" select title from book where id = ? ", String.class, primaryBook.getId()))
+                .isEqualTo("Primário");
+    }
+
+    @Test
+    @DisplayName("Deve ler do primário quando a réplica não estiver disponível")
+    public void replicaUnavailableTest() throws Exception {
+        // cenário
+        DataSource unavailable = new DriverManagerDataSource("jdbc:h2:mem:routing-missing;IFEXISTS=TRUE", "sa", "");
+        ReplicaRoutingDataSource routing = new ReplicaRoutingDataSource(primaryDataSource, unavailable, Duration.ZERO);
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+
+        // execução
+        try (Connection connection = routing.getConnection()) {
+
+            // verificação
+            assertThat(connection.getMetaData().getURL()).contains("routing-primary");
+        } finally {
+            TransactionSynchronizationManager.setCurrentTransactionReadOnly(false);
+        }
+        routing.close();
+    }
+
+    @Test
+    @DisplayName("Deve deixar de tentar a réplica por um período depois de uma falha")
+    public void replicaCircuitOpenTest() throws Exception {
+        // cenário
+        DataSource unavailable = Mockito.mock(DataSource.class);
+        Mockito.when(unavailable.getConnection()).thenThrow(new SQLException("replica down"));
+        ReplicaRoutingDataSource routing = new ReplicaRoutingDataSource(primaryDataSource, unavailable, Duration.ofMinutes(1));
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+
+        // execução
+        try {
+            for (int i = 0; i < 3; i++) {
+                try (Connection connection = routing.getConnection()) {
+                    connection.getMetaData();
+                }
+            }
+        } finally {
+            TransactionSynchronizationManager.setCurrentTransactionReadOnly(false);
+        }
+
+        // verificação
+        Mockito.verify(unavailable, Mockito.times(1)).getConnection();
+    }
+}
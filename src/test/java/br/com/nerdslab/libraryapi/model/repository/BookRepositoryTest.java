@@ -2,7 +2,10 @@ package br.com.nerdslab.libraryapi.model.repository;
 
 import br.com.nerdslab.libraryapi.model.entity.Book;
 import br.com.nerdslab.libraryapi.service.EmailService;
+import br.com.nerdslab.libraryapi.support.StatementRecorder;
 import org.assertj.core.api.Assertions;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -10,9 +13,16 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
 import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.test.context.transaction.TestTransaction;
 
+import javax.persistence.EntityManagerFactory;
+import java.util.Arrays;
 import java.util.Optional;
 
 import static org.assertj.core.api.Assertions.assertThat;
@@ -20,6 +30,7 @@ import static org.assertj.core.api.Assertions.assertThat;
 @ExtendWith(SpringExtension.class)
 @ActiveProfiles("test")
 @DataJpaTest
+@Import(StatementRecorder.class)
 public class BookRepositoryTest {
 
     // Utilizando para criar um cenário
@@ -29,6 +40,12 @@ public class BookRepositoryTest {
     @Autowired
     BookRepository repository;
 
+    @Autowired
+    EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    StatementRecorder statementRecorder;
+
     @MockBean
     EmailService emailService;
 
@@ -39,12 +56,16 @@ public class BookRepositoryTest {
         String isbn = "123";
         Book book = createNewBook(isbn);
         entityManager.persist(book);
+        entityManager.flush();
+        statementRecorder.clear();
 
         // execução
         boolean exists = repository.existsByIsbn(isbn);
 
         // verificação
         assertThat(exists).isTrue();
+        statementRecorder.assertStatementCount(1);
+        statementRecorder.assertNoFullScans();
     }
 
     @Test
@@ -105,6 +126,124 @@ public class BookRepositoryTest {
 
     }
 
+    @Test
+    @DisplayName("Deve buscar livros filtrados a partir do último id informado")
+    public void findAfterTest() {
+        // cenário
+        Book first = entityManager.persist(createNewBook("001"));
+        Book second = entityManager.persist(createNewBook("002"));
+        Book third = entityManager.persist(createNewBook("003"));
+        entityManager.persist(Book.builder().title("Outro").author("Beltrano").isbn("004").build());
+
+        // execução
+        Slice<Book> firstSlice = repository.findAfter(0L, "aventuras", null, null, PageRequest.of(0, 2));
+        Slice<Book> secondSlice = repository.findAfter(second.getId(), "aventuras", null, null, PageRequest.of(0, 2));
+
+        // verificação
+        assertThat(firstSlice.getContent()).containsExactly(first, second);
+        assertThat(firstSlice.hasNext()).isTrue();
+        assertThat(secondSlice.getContent()).containsExactly(third);
+        assertThat(secondSlice.hasNext()).isFalse();
+    }
+
+    @Test
+    @DisplayName("Não deve permitir dois livros com o mesmo isbn")
+    public void uniqueIsbnTest() {
+        // cenário
+        entityManager.persist(createNewBook("123"));
+
+        // execução
+        Throwable exception = Assertions.catchThrowable(() -> repository.saveAndFlush(createNewBook("123")));
+
+        // verificação
+        assertThat(exception).isInstanceOf(DataIntegrityViolationException.class);
+    }
+
+    @Test
+    @DisplayName("Deve gerar ids sequenciais reservados em bloco")
+    public void pooledIdsTest() {
+        // cenário
+        Book first = createNewBook("001");
+        Book second = createNewBook("002");
+        Book third = createNewBook("003");
+
+        // execução
+        repository.saveAll(Arrays.asList(first, second, third));
+
+        // verificação
+        assertThat(second.getId()).isEqualTo(first.getId() + 1);
+        assertThat(third.getId()).isEqualTo(first.getId() + 2);
+    }
+
+    @Test
+    @DisplayName("Deve manter o empréstimo ativo do livro sem que o salvar do livro o sobrescreva")
+    public void activeLoanTest() {
+        // cenário
+        Book book = createNewBook("123");
+        entityManager.persist(book);
+        entityManager.flush();
+
+        // execução
+        repository.markLoaned(book.getId(), 10l);
+        book.setTitle("Outro título");
+        repository.saveAndFlush(book);
+        int returnedOther = repository.markReturned(book.getId(), 11l);
+        Long active = repository.findActiveLoanId(book.getId());
+        int returned = repository.markReturned(book.getId(), 10l);
+
+        // verificação
+        assertThat(active).isEqualTo(10l);
+        assertThat(returnedOther).isZero();
+        assertThat(returned).isEqualTo(1);
+        assertThat(repository.findActiveLoanId(book.getId())).isNull();
+    }
+
+    @Test
+    @DisplayName("Deve obter o empréstimo ativo do livro em uma consulta pela chave primária")
+    public void findActiveLoanIdStatementTest() {
+        // cenário
+        Book book = createNewBook("123");
+        entityManager.persist(book);
+        entityManager.flush();
+        repository.markLoaned(book.getId(), 10l);
+        statementRecorder.clear();
+
+        // execução
+        Long active = repository.findActiveLoanId(book.getId());
+
+        // verificação
+        assertThat(active).isEqualTo(10l);
+        statementRecorder.assertStatementCount(1);
+        assertThat(statementRecorder.statements().get(0).getBinds()).isEqualTo(1);
+        statementRecorder.assertNoFullScans();
+    }
+
+    @Test
+    @DisplayName("Deve obter o livro por isbn do cache de consultas")
+    public void findByIsbnFromQueryCacheTest() throws InterruptedException {
+        // cenário
+        Book book = entityManager.persist(createNewBook("cached-isbn"));
+        TestTransaction.flagForCommit();
+        TestTransaction.end();
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        try {
+            // o resultado só vale a partir do instante seguinte ao commit
+            Thread.sleep(10);
+            repository.findByIsbn("cached-isbn");
+            statistics.clear();
+
+            // execução
+            Optional<Book> found = repository.findByIsbn("cached-isbn");
+
+            // verificação
+            assertThat(found).isPresent();
+            assertThat(statistics.getQueryCacheHitCount()).isEqualTo(1);
+            assertThat(statistics.getPrepareStatementCount()).isZero();
+        } finally {
+            repository.deleteById(book.getId());
+        }
+    }
+
     public static Book createNewBook(String isbn) {
         return Book.builder().title("Aventuras").author("Fulano").isbn(isbn).build();
     }
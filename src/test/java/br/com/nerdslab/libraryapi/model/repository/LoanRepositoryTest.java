@@ -1,29 +1,47 @@
 package br.com.nerdslab.libraryapi.model.repository;
 
 import br.com.nerdslab.libraryapi.model.entity.Book;
+import br.com.nerdslab.libraryapi.model.entity.LateLoanNotification;
 import br.com.nerdslab.libraryapi.model.entity.Loan;
+import br.com.nerdslab.libraryapi.model.entity.LoanStatus;
 import br.com.nerdslab.libraryapi.service.EmailService;
+import br.com.nerdslab.libraryapi.support.StatementRecorder;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.CacheRegionStatistics;
+import org.hibernate.stat.Statistics;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
 import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import javax.persistence.EntityManagerFactory;
 import java.time.LocalDate;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.stream.Collectors;
 
 import static br.com.nerdslab.libraryapi.model.repository.BookRepositoryTest.createNewBook;
 import static org.assertj.core.api.Assertions.assertThat;
 
 @ExtendWith(SpringExtension.class)
 @ActiveProfiles("test")
-@DataJpaTest
+@DataJpaTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+@Import(StatementRecorder.class)
 public class LoanRepositoryTest {
 
     @Autowired
@@ -32,22 +50,16 @@ public class LoanRepositoryTest {
     @Autowired
     private TestEntityManager entityManager;
 
-    @MockBean
-    private EmailService emailService;
+    @Autowired
+    private StatementRecorder statementRecorder;
 
-    @Test
-    @DisplayName("deve verificar se existe empréstimo não devolvido para o livro.")
-    public void existsByBookAndNotReturnedTest() {
-        // cenário
-        Loan loan = createAndPersistLoan(LocalDate.now());
-        Book book = loan.getBook();
+    @Autowired
+    private PlatformTransactionManager transactionManager;
 
-        // execução
-        boolean exists = repository.existsByBookAndNotReturned(book);
+    @MockBean
+    private EmailService emailService;
 
-        // verificação
-        assertThat(exists).isTrue();
-    }
+    private int loanSequence;
 
     @Test
     @DisplayName("Deve buscar empréstimo pelo isbn do livro ou customer")
@@ -67,36 +79,205 @@ public class LoanRepositoryTest {
     }
 
     @Test
-    @DisplayName("Deve obter empréstimos cuja data empréstimo for menor ou igual a três dias atrás e não retornados")
-    public void findByLoanDateLessThanAndNotReturned() {
+    @DisplayName("Deve buscar empréstimos por isbn ou customer a partir da última data e id informados")
+    public void findSliceByBookIsbnOrCustomerAfterTest() {
+        // cenário
+        Loan older = createAndPersistLoan(LocalDate.now().minusDays(1));
+        Loan newer = createAndPersistLoan(LocalDate.now());
+        Loan sameDay = createAndPersistLoan(LocalDate.now());
+
+        // execução
+        Slice<Loan> firstSlice = repository.findSliceByBookIsbnOrCustomer("123", "Fulano", PageRequest.of(0, 2));
+        Slice<Loan> secondSlice = repository.findSliceByBookIsbnOrCustomerAfter(
+                "123", "Fulano", newer.getLoanDate(), newer.getId(), PageRequest.of(0, 2));
+
+        // verificação
+        assertThat(firstSlice.getContent()).containsExactly(older, newer);
+        assertThat(firstSlice.hasNext()).isTrue();
+        assertThat(secondSlice.getContent()).containsExactly(sameDay);
+        assertThat(secondSlice.hasNext()).isFalse();
+    }
+
+    @Test
+    @DisplayName("Deve obter empréstimos ativos com a data de devolução vencida")
+    public void findOverdueTest() {
         // cenário
         Loan loan = createAndPersistLoan(LocalDate.now().minusDays(5));
+        Loan returned = createAndPersistLoan(LocalDate.now().minusDays(5));
+        returned.setReturned(true);
+        flushAndClear();
 
         // execução
-        List<Loan> result = repository.findByLoanDateLessThanAndNotReturned(LocalDate.now().minusDays(4));
+        List<LoanRepository.LateLoan> result =
+                repository.findUnnotifiedOverdueBetween(LocalDate.now(), 0L, Long.MAX_VALUE, PageRequest.of(0, 10));
 
         // verificação
-        assertThat(result).hasSize(1).contains(loan);
+        assertThat(result).extracting(LoanRepository.LateLoan::getId).containsExactly(loan.getId());
+        assertThat(returned.getStatus()).isEqualTo(LoanStatus.RETURNED);
+        statementRecorder.assertIndexUsed(Loan.STATUS_ID_INDEX);
     }
 
     @Test
     @DisplayName("Deve retornar vazio quando não houver empréstimos atrasados")
-    public void notFindByLoanDateLessThanAndNotReturned() {
+    public void notFindOverdueTest() {
         // cenário
-        Loan loan = createAndPersistLoan(LocalDate.now());
+        createAndPersistLoan(LocalDate.now());
+        createAndPersistLoan(LocalDate.now().minusDays(4));
 
         // execução
-        List<Loan> result = repository.findByLoanDateLessThanAndNotReturned(LocalDate.now().minusDays(4));
+        List<LoanRepository.LateLoan> result =
+                repository.findUnnotifiedOverdueBetween(LocalDate.now(), 0L, Long.MAX_VALUE, PageRequest.of(0, 10));
 
         // verificação
         assertThat(result).isEmpty();
+        assertThat(repository.findMaxOverdueId(LocalDate.now())).isNull();
+    }
+
+    @Test
+    @DisplayName("Deve obter os empréstimos atrasados ainda não notificados em blocos ordenados por id")
+    public void findUnnotifiedOverdueBetweenTest() {
+        // cenário
+        Loan first = createAndPersistLoan(LocalDate.now().minusDays(5));
+        createAndPersistLoan(LocalDate.now());
+        Loan second = createAndPersistLoan(LocalDate.now().minusDays(6));
+        Loan returned = createAndPersistLoan(LocalDate.now().minusDays(6));
+        returned.setReturned(true);
+        Loan notified = createAndPersistLoan(LocalDate.now().minusDays(6));
+        entityManager.persist(LateLoanNotification.builder().loanId(notified.getId()).recipient("a@email.com").build());
+        Loan third = createAndPersistLoan(LocalDate.now().minusDays(7));
+        third.setCustomerEmail("fulano@email.com");
+        entityManager.flush();
+
+        // execução
+        List<LoanRepository.LateLoan> firstChunk =
+                repository.findUnnotifiedOverdueBetween(LocalDate.now(), 0L, Long.MAX_VALUE, PageRequest.of(0, 2));
+        List<LoanRepository.LateLoan> secondChunk = repository.findUnnotifiedOverdueBetween(
+                LocalDate.now(), firstChunk.get(1).getId(), Long.MAX_VALUE, PageRequest.of(0, 2));
+        List<LoanRepository.LateLoan> range = repository.findUnnotifiedOverdueBetween(
+                LocalDate.now(), 0L, second.getId(), PageRequest.of(0, 10));
+
+        // verificação
+        assertThat(firstChunk).extracting(LoanRepository.LateLoan::getId).containsExactly(first.getId(), second.getId());
+        assertThat(secondChunk).extracting(LoanRepository.LateLoan::getId).containsExactly(third.getId());
+        assertThat(secondChunk.get(0).getCustomerEmail()).isEqualTo("fulano@email.com");
+        assertThat(range).extracting(LoanRepository.LateLoan::getId).containsExactly(first.getId(), second.getId());
+        assertThat(repository.findMaxOverdueId(LocalDate.now())).isEqualTo(third.getId());
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {5, 20})
+    @DisplayName("Deve buscar empréstimos por isbn ou customer com número constante de consultas")
+    public void findByBookIsbnOrCustomerStatementCountTest(int pageSize) {
+        // cenário
+        for (int i = 0; i < 40; i++) {
+            Book book = createNewBook("isbn-" + i);
+            entityManager.persist(book);
+            entityManager.persist(Loan.builder().book(book).customer("Fulano").loanDate(LocalDate.now()).build());
+        }
+        flushAndClear();
+
+        // execução
+        Page<Loan> result = repository.findByBookIsbnOrCustomer("123", "Fulano", PageRequest.of(0, pageSize));
+        result.getContent().forEach(loan -> loan.getBook().getTitle());
+
+        // verificação
+        assertThat(result.getContent()).hasSize(pageSize);
+        assertThat(result.getTotalElements()).isEqualTo(40);
+        statementRecorder.assertStatementCount(2);
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {5, 20})
+    @DisplayName("Deve buscar empréstimos do livro com número constante de consultas")
+    public void findByBookStatementCountTest(int pageSize) {
+        // cenário
+        List<Book> books = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            Book book = createNewBook("123-" + i);
+            entityManager.persist(book);
+            books.add(book);
+        }
+        for (int i = 0; i < 40; i++) {
+            for (Book book : books) {
+                entityManager.persist(Loan.builder().book(book).customer("Fulano").loanDate(LocalDate.now()).returned(true).build());
+            }
+        }
+        Book book = books.get(2);
+        flushAndClear();
+
+        // execução
+        Page<Loan> result = repository.findByBook(book, PageRequest.of(0, pageSize));
+        result.getContent().forEach(loan -> loan.getBook().getTitle());
+
+        // verificação
+        assertThat(result.getContent()).hasSize(pageSize);
+        assertThat(result.getContent()).allMatch(loan -> loan.getBook().getId().equals(book.getId()));
+        assertThat(result.getTotalElements()).isEqualTo(40);
+        statementRecorder.assertStatementCount(2);
+        statementRecorder.assertNoFullScans();
+    }
+
+    @Test
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    @DisplayName("Deve ler os livros dos empréstimos do cache de segundo nível nas listagens seguintes")
+    public void findAllBooksFromSecondLevelCacheTest() {
+        // cenário
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        transaction.execute(status -> {
+            for (int i = 0; i < 4; i++) {
+                Book book = createNewBook("cached-" + i);
+                entityManager.persist(book);
+                for (int j = 0; j < 5; j++) {
+                    entityManager.persist(Loan.builder().book(book).customer("Fulano").loanDate(LocalDate.now()).returned(true).build());
+                }
+            }
+            return null;
+        });
+        EntityManagerFactory entityManagerFactory = transaction.execute(status ->
+                entityManager.getEntityManager().getEntityManagerFactory());
+        entityManagerFactory.getCache().evictAll();
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+
+        try {
+            statistics.clear();
+            transaction.execute(status -> repository.findAll(PageRequest.of(0, 50)).getContent().size());
+            long firstStatements = statistics.getPrepareStatementCount();
+            statistics.clear();
+
+            // execução
+            List<String> titles = transaction.execute(status -> repository.findAll(PageRequest.of(0, 50)).getContent()
+                    .stream()
+                    .map(loan -> loan.getBook().getTitle())
+                    .collect(Collectors.toList()));
+
+            // verificação
+            assertThat(titles).hasSize(20);
+            assertThat(firstStatements).isEqualTo(5);
+            assertThat(statistics.getPrepareStatementCount()).isEqualTo(1);
+            CacheRegionStatistics bookRegion = statistics.getDomainDataRegionStatistics(Book.CACHE_REGION);
+            assertThat(bookRegion.getHitCount()).isEqualTo(4);
+            assertThat(bookRegion.getMissCount()).isZero();
+        } finally {
+            transaction.execute(status -> {
+                entityManager.getEntityManager().createQuery(" delete from Loan ").executeUpdate();
+                entityManager.getEntityManager().createQuery(" delete from Book ").executeUpdate();
+                return null;
+            });
+            entityManagerFactory.getCache().evictAll();
+        }
+    }
+
+    private void flushAndClear() {
+        entityManager.flush();
+        entityManager.clear();
+        statementRecorder.clear();
     }
 
     public Loan createAndPersistLoan(LocalDate loanDate) {
-        Book book = createNewBook("123");
+        Book book = createNewBook("123-" + loanSequence++);
         entityManager.persist(book);
 
-        Loan loan = Loan.builder().book(book).customer("Fulano").loanDate(loanDate).build();
+        Loan loan = Loan.builder().book(book).customer("Fulano").loanDate(loanDate).dueDate(loanDate.plusDays(4)).build();
         entityManager.persist(loan);
 
         return loan;
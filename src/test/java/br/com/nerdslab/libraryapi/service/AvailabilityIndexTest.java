@@ -0,0 +1,122 @@
+package br.com.nerdslab.libraryapi.service;
+
+import br.com.nerdslab.libraryapi.model.entity.Book;
+import br.com.nerdslab.libraryapi.model.entity.Loan;
+import br.com.nerdslab.libraryapi.service.impl.AvailabilityIndexImpl;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDate;
+import java.util.stream.LongStream;
+
+import static br.com.nerdslab.libraryapi.model.repository.BookRepositoryTest.createNewBook;
+import static org.assertj.core.api.Assertions.assertThat;
+
+@ExtendWith(SpringExtension.class)
+@ActiveProfiles("test")
+@DataJpaTest
+@Import(AvailabilityIndexImpl.class)
+public class AvailabilityIndexTest {
+
+    @Autowired
+    AvailabilityIndex availabilityIndex;
+
+    @Autowired
+    TestEntityManager entityManager;
+
+    @MockBean
+    EmailService emailService;
+
+    @Test
+    @DisplayName("Deve carregar os livros emprestados a partir dos empréstimos em aberto")
+    public void rebuildTest() {
+        // cenário
+        ReflectionTestUtils.setField(availabilityIndex, "chunkSize", 2);
+        Book open = persistBook("001", null);
+        Book returned = persistBook("002", true);
+        Book other = persistBook("003", false);
+        Book never = entityManager.persist(createNewBook("004"));
+        entityManager.flush();
+
+        // execução
+        availabilityIndex.rebuild();
+
+        // verificação
+        assertThat(availabilityIndex.isReady()).isTrue();
+        assertThat(isLoaned(open.getId())).isTrue();
+        assertThat(isLoaned(other.getId())).isTrue();
+        assertThat(isLoaned(returned.getId())).isFalse();
+        assertThat(isLoaned(never.getId())).isFalse();
+        assertThat(availabilityIndex.loaned(new long[]{never.getId(), other.getId(), open.getId()}))
+                .containsExactly(other.getId(), open.getId());
+    }
+
+    @Test
+    @DisplayName("Deve aplicar empréstimos e devoluções somente após o commit")
+    public void deferredUntilCommitTest() {
+        // cenário
+        availabilityIndex.rebuild();
+
+        // execução
+        availabilityIndex.markLoaned(42);
+
+        // verificação
+        assertThat(isLoaned(42)).isFalse();
+    }
+
+    @Test
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    @DisplayName("Deve manter ids esparsos e densos, inclusive acima de 32 bits")
+    public void sparseAndDenseTest() {
+        // cenário
+        availabilityIndex.rebuild();
+        long base = 5_000_000_000L;
+
+        // execução
+        LongStream.range(0, 10_000).forEach(i -> availabilityIndex.markLoaned(base + i));
+        LongStream.range(0, 10_000).filter(i -> i % 3 != 0).forEach(i -> availabilityIndex.markReturned(base + i));
+        availabilityIndex.markLoaned(7);
+        availabilityIndex.markLoaned(Long.MAX_VALUE);
+        availabilityIndex.markReturned(8);
+
+        // verificação
+        assertThat(isLoaned(base)).isTrue();
+        assertThat(isLoaned(base + 1)).isFalse();
+        assertThat(isLoaned(base + 9_999)).isTrue();
+        assertThat(isLoaned(base + 10_000)).isFalse();
+        assertThat(isLoaned(7)).isTrue();
+        assertThat(isLoaned(8)).isFalse();
+        assertThat(isLoaned(Long.MAX_VALUE)).isTrue();
+        long[] ids = LongStream.range(0, 10_000).map(i -> base + i).toArray();
+        assertThat(availabilityIndex.loaned(ids)).hasSize(3_334);
+
+        LongStream.range(0, 10_000).forEach(i -> availabilityIndex.markReturned(base + i));
+        assertThat(availabilityIndex.loaned(ids)).isEmpty();
+    }
+
+    private boolean isLoaned(long bookId) {
+        return availabilityIndex.loaned(new long[]{bookId}).length == 1;
+    }
+
+    private Book persistBook(String isbn, Boolean returned) {
+        Book book = entityManager.persist(createNewBook(isbn));
+        entityManager.persist(Loan.builder()
+                .book(book)
+                .customer("Fulano")
+                .loanDate(LocalDate.now())
+                .returned(returned)
+                .build());
+        return book;
+    }
+}
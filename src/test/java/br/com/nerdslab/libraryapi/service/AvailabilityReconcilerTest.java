@@ -0,0 +1,82 @@
+package br.com.nerdslab.libraryapi.service;
+
+import br.com.nerdslab.libraryapi.model.entity.Book;
+import br.com.nerdslab.libraryapi.model.entity.Loan;
+import br.com.nerdslab.libraryapi.model.repository.BookRepository;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDate;
+
+import static br.com.nerdslab.libraryapi.model.repository.BookRepositoryTest.createNewBook;
+import static org.assertj.core.api.Assertions.assertThat;
+
+@ExtendWith(SpringExtension.class)
+@ActiveProfiles("test")
+@DataJpaTest
+@Import(AvailabilityReconciler.class)
+public class AvailabilityReconcilerTest {
+
+    @Autowired
+    private AvailabilityReconciler reconciler;
+
+    @Autowired
+    private BookRepository bookRepository;
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @MockBean
+    private EmailService emailService;
+
+    @Test
+    @DisplayName("Deve reconstruir o empréstimo ativo dos livros a partir dos empréstimos")
+    public void reconcileTest() {
+        // cenário
+        ReflectionTestUtils.setField(reconciler, "chunkSize", 2);
+        Book missing = persistBook("001");
+        Loan open = persistLoan(missing, null);
+        Book stale = persistBook("002");
+        Loan returned = persistLoan(stale, true);
+        bookRepository.markLoaned(stale.getId(), returned.getId());
+        Book consistent = persistBook("003");
+        Loan current = persistLoan(consistent, null);
+        bookRepository.markLoaned(consistent.getId(), current.getId());
+        Book free = persistBook("004");
+
+        // execução
+        int fixed = reconciler.reconcile();
+
+        // verificação
+        assertThat(fixed).isEqualTo(2);
+        assertThat(bookRepository.findActiveLoanId(missing.getId())).isEqualTo(open.getId());
+        assertThat(bookRepository.findActiveLoanId(stale.getId())).isNull();
+        assertThat(bookRepository.findActiveLoanId(consistent.getId())).isEqualTo(current.getId());
+        assertThat(bookRepository.findActiveLoanId(free.getId())).isNull();
+        assertThat(reconciler.reconcile()).isZero();
+    }
+
+    private Book persistBook(String isbn) {
+        return entityManager.persist(createNewBook(isbn));
+    }
+
+    private Loan persistLoan(Book book, Boolean returned) {
+        Loan loan = entityManager.persist(Loan.builder()
+                .book(book)
+                .customer("Fulano")
+                .loanDate(LocalDate.now())
+                .returned(returned)
+                .build());
+        entityManager.flush();
+        return loan;
+    }
+}
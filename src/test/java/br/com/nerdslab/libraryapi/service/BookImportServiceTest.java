@@ -0,0 +1,152 @@
+package br.com.nerdslab.libraryapi.service;
+
+import br.com.nerdslab.libraryapi.api.dto.BookImportErrorDTO;
+import br.com.nerdslab.libraryapi.api.dto.BookImportResultDTO;
+import br.com.nerdslab.libraryapi.model.entity.Book;
+import br.com.nerdslab.libraryapi.model.repository.BookRepository;
+import br.com.nerdslab.libraryapi.service.impl.BookImportServiceImpl;
+import br.com.nerdslab.libraryapi.service.impl.BookSearchIndexImpl;
+import br.com.nerdslab.libraryapi.service.impl.IsbnFilterImpl;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
+import org.springframework.boot.autoconfigure.jackson.JacksonAutoConfiguration;
+import org.springframework.boot.autoconfigure.validation.ValidationAutoConfiguration;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@ExtendWith(SpringExtension.class)
+@ActiveProfiles("test")
+@DataJpaTest
+@Import({BookImportServiceImpl.class, BookSearchIndexImpl.class, IsbnFilterImpl.class})
+@ImportAutoConfiguration({JacksonAutoConfiguration.class, ValidationAutoConfiguration.class})
+@TestPropertySource(properties = {
+        "application.books.import.batch-size=2",
+        "application.books.import.max-errors=5"
+})
+public class BookImportServiceTest {
+
+    @Autowired
+    BookImportService importService;
+
+    @Autowired
+    BookRepository repository;
+
+    @Autowired
+    IsbnFilter isbnFilter;
+
+    @Autowired
+    TestEntityManager entityManager;
+
+    @MockBean
+    EmailService emailService;
+
+    @Test
+    @DisplayName("Deve importar livros em NDJSON reportando as linhas inválidas")
+    public void importNdjsonTest() throws IOException {
+        // cenário
+        entityManager.persistAndFlush(Book.builder().title("Existente").author("Fulano").isbn("004").build());
+        String input = String.join("\n",
+                "{\"title\": \"Aventuras\", \"author\": \"Fulano\", \"isbn\": \"001\"}",
+                "{\"title\": \"Viagens\", \"author\": \"Beltrano\", \"isbn\": \"002\"}",
+                "{\"author\": \"Ciclano\", \"isbn\": \"003\"}",
+                "",
+                "{\"title\": \"Quebrado\"",
+                "{\"title\": \"Outra edição\", \"author\": \"Fulano\", \"isbn\": \"001\"}",
+                "{\"title\": \"Repetido\", \"author\": \"Fulano\", \"isbn\": \"004\"}",
+                "{\"title\": \"Contos\", \"author\": \"Fulano\", \"isbn\": \"005\"}");
+
+        // execução
+        BookImportResultDTO result = importService.importBooks(stream(input), BookImportService.Format.NDJSON);
+
+        // verificação
+        assertThat(result.getImported()).isEqualTo(3);
+        assertThat(result.getRejected()).isEqualTo(4);
+        assertThat(result.getErrors()).extracting(BookImportErrorDTO::getLine).containsExactlyInAnyOrder(3L, 5L, 6L, 7L);
+        assertThat(result.getErrors()).filteredOn(error -> error.getLine() == 3)
+                .flatExtracting(BookImportErrorDTO::getErrors).containsExactly("title must not be empty");
+        assertThat(result.getErrors()).filteredOn(error -> error.getLine() == 6)
+                .flatExtracting(BookImportErrorDTO::getErrors).containsExactly("Isbn já cadastrado.");
+        assertThat(repository.findByIsbn("001")).hasValueSatisfying(book -> assertThat(book.getTitle()).isEqualTo("Aventuras"));
+        assertThat(repository.count()).isEqualTo(4);
+        assertThat(isbnFilter.mightExist("005")).isTrue();
+    }
+
+    @Test
+    @DisplayName("Deve importar livros em CSV com cabeçalho reportando as linhas inválidas")
+    public void importCsvTest() throws IOException {
+        // cenário
+        String input = String.join("\n",
+                "isbn,title,author",
+                "001,\"Aventuras, volume 1\",Fulano",
+                "002,,Beltrano",
+                "003,Viagens,Ciclano",
+                "004,\"Contos\"x,Fulano",
+                "005,Lendas,Fulano");
+
+        // execução
+        BookImportResultDTO result = importService.importBooks(stream(input), BookImportService.Format.CSV);
+
+        // verificação
+        assertThat(result.getImported()).isEqualTo(3);
+        assertThat(result.getRejected()).isEqualTo(2);
+        assertThat(result.getErrors()).extracting(BookImportErrorDTO::getLine).containsExactly(3L, 5L);
+        assertThat(result.getErrors().get(0).getIsbn()).isEqualTo("002");
+        assertThat(repository.existsByIsbn("005")).isTrue();
+        assertThat(repository.findByIsbn("001")).hasValueSatisfying(book -> assertThat(book.getTitle()).isEqualTo("Aventuras, volume 1"));
+    }
+
+    @Test
+    @DisplayName("Deve limitar a quantidade de erros reportados")
+    public void maxErrorsTest() throws IOException {
+        // cenário
+        String input = IntStream.range(0, 8)
+                .mapToObj(i -> "{\"isbn\": \"" + i + "\"}")
+                .collect(Collectors.joining("\n"));
+
+        // execução
+        BookImportResultDTO result = importService.importBooks(stream(input), BookImportService.Format.NDJSON);
+
+        // verificação
+        assertThat(result.getImported()).isZero();
+        assertThat(result.getRejected()).isEqualTo(8);
+        assertThat(result.getErrors()).hasSize(5);
+    }
+
+    @Test
+    @DisplayName("Deve gerar ids do mesmo sequence usado pelo JPA")
+    public void sharedIdsTest() throws IOException {
+        // cenário
+        Book before = entityManager.persistAndFlush(Book.builder().title("Antes").author("Fulano").isbn("001").build());
+        String input = "{\"title\": \"Aventuras\", \"author\": \"Fulano\", \"isbn\": \"002\"}";
+
+        // execução
+        importService.importBooks(stream(input), BookImportService.Format.NDJSON);
+        Book after = entityManager.persistAndFlush(Book.builder().title("Depois").author("Fulano").isbn("003").build());
+
+        // verificação
+        Long imported = repository.findByIsbn("002").get().getId();
+        assertThat(imported).isEqualTo(before.getId() + 1);
+        assertThat(after.getId()).isEqualTo(imported + 1);
+    }
+
+    private ByteArrayInputStream stream(String input) {
+        return new ByteArrayInputStream(input.getBytes(StandardCharsets.UTF_8));
+    }
+
+}
@@ -0,0 +1,190 @@
+package br.com.nerdslab.libraryapi.service;
+
+import br.com.nerdslab.libraryapi.model.entity.Book;
+import br.com.nerdslab.libraryapi.model.repository.BookRepository;
+import br.com.nerdslab.libraryapi.service.impl.BookSearchIndexImpl;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.domain.Example;
+import org.springframework.data.domain.ExampleMatcher;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@ExtendWith(SpringExtension.class)
+@ActiveProfiles("test")
+@DataJpaTest
+@Import(BookSearchIndexImpl.class)
+public class BookSearchIndexTest {
+
+    @Autowired
+    BookSearchIndex searchIndex;
+
+    @Autowired
+    BookRepository repository;
+
+    @Autowired
+    TestEntityManager entityManager;
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    TransactionTemplate transactionTemplate;
+
+    @MockBean
+    EmailService emailService;
+
+    @BeforeEach
+    public void setUp() {
+        ((BookSearchIndexImpl) searchIndex).rebuildIfEmpty();
+    }
+
+    @Test
+    @DisplayName("Não deve usar o índice antes da verificação inicial")
+    public void notReadyTest() {
+        // cenário
+        BookSearchIndex starting = new BookSearchIndexImpl(jdbcTemplate, transactionTemplate);
+
+        // verificação
+        assertThat(starting.supports(Book.builder().title("SENHOR").build())).isFalse();
+        assertThat(searchIndex.supports(Book.builder().title("SENHOR").build())).isTrue();
+        assertThat(searchIndex.supports(Book.builder().title("SE").build())).isFalse();
+    }
+
+    @Test
+    @DisplayName("Deve encontrar livros por trecho do título ou autor usando o índice")
+    public void findByIndexTest() {
+        // cenário
+        Book tolkien = indexed(Book.builder().title("O Senhor dos Anéis").author("J. R. R. Tolkien").isbn("001").build());
+        Book hobbit = indexed(Book.builder().title("O Hobbit").author("J. R. R. Tolkien").isbn("002").build());
+        indexed(Book.builder().title("Dom Casmurro").author("Machado de Assis").isbn("003").build());
+
+        // execução
+        Page<Book> byTitle = find(Book.builder().title("SENHOR").build());
+        Page<Book> byAuthor = find(Book.builder().author("tolk").build());
+        Page<Book> byBoth = find(Book.builder().title("hobb").author("tolkien").build());
+
+        // verificação
+        assertThat(searchIndex.supports(Book.builder().title("SENHOR").build())).isTrue();
+        assertThat(byTitle.getContent()).containsExactly(tolkien);
+        assertThat(byAuthor.getContent()).containsExactlyInAnyOrder(tolkien, hobbit);
+        assertThat(byAuthor.getTotalElements()).isEqualTo(2);
+        assertThat(byBoth.getContent()).containsExactly(hobbit);
+    }
+
+    @Test
+    @DisplayName("Deve descartar candidatos que possuem os trigramas fora de ordem")
+    public void discardFalsePositivesTest() {
+        // cenário
+        indexed(Book.builder().title("abcd bcde").author("Fulano").isbn("001").build());
+
+        // execução
+        Page<Book> result = find(Book.builder().title("abcde").build());
+
+        // verificação
+        assertThat(result.getContent()).isEmpty();
+    }
+
+    @Test
+    @DisplayName("Deve recorrer ao filtro por exemplo quando os trigramas não forem seletivos")
+    public void nonSelectiveTrigramsTest() {
+        // cenário
+        for (int i = 0; i < 150; i++) {
+            indexed(Book.builder().title("Aventuras " + i).author("Fulano").isbn("isbn-" + i).build());
+        }
+
+        // execução
+        Page<Book> common = find(Book.builder().title("aventuras 14").build());
+
+        // verificação
+        assertThat(common.getTotalElements()).isEqualTo(11);
+        assertThat(common.getContent()).allMatch(book -> book.getTitle().startsWith("Aventuras 14"));
+    }
+
+    @Test
+    @DisplayName("Deve reindexar o livro atualizado e remover o livro excluído do índice")
+    public void updateAndRemoveTest() {
+        // cenário
+        Book book = indexed(Book.builder().title("Aventuras").author("Fulano").isbn("001").build());
+
+        // execução
+        book.setTitle("Viagens");
+        searchIndex.index(book);
+
+        // verificação
+        assertThat(find(Book.builder().title("aventuras").build()).getContent()).isEmpty();
+        assertThat(find(Book.builder().title("viagens").build()).getContent()).containsExactly(book);
+
+        searchIndex.remove(book);
+        assertThat(countRows()).isZero();
+    }
+
+    @Test
+    @DisplayName("Deve reconstruir o índice a partir da tabela de livros")
+    public void rebuildTest() {
+        // cenário
+        Book book = entityManager.persistFlushFind(Book.builder().title("Aventuras").author("Fulano").isbn("001").build());
+
+        // execução
+        searchIndex.rebuild();
+
+        // verificação
+        assertThat(countRows()).isEqualTo(7 + 4);
+        assertThat(find(Book.builder().title("ventura").build()).getContent()).containsExactly(book);
+    }
+
+    @Test
+    @DisplayName("Deve substituir as linhas desatualizadas e descartar as de livros excluídos ao reconstruir")
+    public void rebuildStaleRowsTest() {
+        // cenário
+        Book book = indexed(Book.builder().title("Aventuras").author("Fulano").isbn("001").build());
+        jdbcTemplate.update(" update book set title = 'Viagens' where id = ? ", book.getId());
+        jdbcTemplate.update(" insert into book_trigram (field, gram, book_id) values ('TITLE', 'ven', ?) ", book.getId() + 1000);
+        entityManager.clear();
+
+        // execução
+        searchIndex.rebuild();
+
+        // verificação
+        assertThat(countRows()).isEqualTo(5 + 4);
+        assertThat(find(Book.builder().title("aventuras").build()).getContent()).isEmpty();
+        assertThat(find(Book.builder().title("viagens").build()).getContent())
+                .extracting(Book::getId)
+                .containsExactly(book.getId());
+    }
+
+    private Book indexed(Book book) {
+        Book saved = entityManager.persistFlushFind(book);
+        searchIndex.index(saved);
+        return saved;
+    }
+
+    private Page<Book> find(Book filter) {
+        Example<Book> example = Example.of(filter,
+                ExampleMatcher
+                        .matching()
+                        .withIgnoreCase()
+                        .withIgnoreNullValues()
+                        .withStringMatcher(ExampleMatcher.StringMatcher.CONTAINING)
+        );
+        return repository.findAll(searchIndex.matching(example), PageRequest.of(0, 10));
+    }
+
+    private int countRows() {
+        return jdbcTemplate.queryForObject(" select count(*) from book_trigram ", Integer.class);
+    }
+
+}
@@ -0,0 +1,177 @@
+package br.com.nerdslab.libraryapi.service;
+
+import br.com.nerdslab.libraryapi.config.CacheConfig;
+import br.com.nerdslab.libraryapi.model.entity.Book;
+import br.com.nerdslab.libraryapi.model.repository.BookRepository;
+import br.com.nerdslab.libraryapi.service.impl.BookServiceImpl;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.autoconfigure.metrics.CompositeMeterRegistryAutoConfiguration;
+import org.springframework.boot.actuate.autoconfigure.metrics.MetricsAutoConfiguration;
+import org.springframework.boot.actuate.autoconfigure.metrics.cache.CacheMetricsAutoConfiguration;
+import org.springframework.boot.actuate.autoconfigure.metrics.export.simple.SimpleMetricsExportAutoConfiguration;
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
+import org.springframework.boot.autoconfigure.cache.CacheAutoConfiguration;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@ExtendWith(SpringExtension.class)
+@ActiveProfiles("test")
+@ContextConfiguration(classes = {CacheConfig.class, BookServiceImpl.class})
+@ImportAutoConfiguration({
+        CacheAutoConfiguration.class,
+        MetricsAutoConfiguration.class,
+        CompositeMeterRegistryAutoConfiguration.class,
+        SimpleMetricsExportAutoConfiguration.class,
+        CacheMetricsAutoConfiguration.class
+})
+@TestPropertySource(properties = {
+        "spring.cache.type=caffeine",
+        "spring.cache.cache-names=books,booksByIsbn",
+        "spring.cache.caffeine.spec=maximumSize=100,recordStats"
+})
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+public class BookServiceCacheTest {
+
+    @Autowired
+    BookService service;
+
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    @MockBean
+    BookRepository repository;
+
+    @MockBean
+    BookSearchIndex searchIndex;
+
+    @MockBean
+    IsbnFilter isbnFilter;
+
+    @MockBean
+    PlatformTransactionManager transactionManager;
+
+    @Test
+    @DisplayName("Deve obter o livro do cache nas consultas seguintes por id e isbn")
+    public void getFromCacheTest() {
+        // cenário
+        Book book = createValidBook();
+        Mockito.when(repository.findById(1l)).thenReturn(Optional.of(book));
+        Mockito.when(repository.findByIsbn("123")).thenReturn(Optional.of(book));
+
+        // execução
+        service.getById(1l);
+        Optional<Book> cached = service.getById(1l);
+        service.getBookByIsbn("123");
+        service.getBookByIsbn("123");
+
+        // verificação
+        assertThat(cached).contains(book);
+        Mockito.verify(repository, Mockito.times(1)).findById(1l);
+        Mockito.verify(repository, Mockito.times(1)).findByIsbn("123");
+        assertThat(meterRegistry.get("cache.gets").tag("name", CacheConfig.BOOKS).tag("result", "hit")
+                .functionCounter().count()).isEqualTo(1);
+        assertThat(meterRegistry.get("cache.gets").tag("name", CacheConfig.BOOKS).tag("result", "miss")
+                .functionCounter().count()).isEqualTo(1);
+        // cache hits never reach the coalesced lookups
+        assertThat(meterRegistry.get("library.books.lookups.loaded").tag("key", "id").counter().count()).isEqualTo(1);
+        assertThat(meterRegistry.get("library.books.lookups.loaded").tag("key", "isbn").counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("Não deve guardar no cache um livro inexistente")
+    public void notCacheMissingBookTest() {
+        // cenário
+        Mockito.when(repository.findById(1l)).thenReturn(Optional.empty());
+
+        // execução
+        service.getById(1l);
+        Optional<Book> book = service.getById(1l);
+
+        // verificação
+        assertThat(book).isEmpty();
+        Mockito.verify(repository, Mockito.times(2)).findById(1l);
+    }
+
+    @Test
+    @DisplayName("Deve invalidar o cache ao atualizar um livro")
+    public void evictOnUpdateTest() {
+        // cenário
+        Book book = createValidBook();
+        Mockito.when(repository.findById(1l)).thenReturn(Optional.of(book));
+        Mockito.when(repository.findByIsbn("123")).thenReturn(Optional.of(book));
+        Mockito.when(repository.save(book)).thenReturn(book);
+        service.getById(1l);
+        service.getBookByIsbn("123");
+
+        // execução
+        service.update(book);
+        service.getById(1l);
+        service.getBookByIsbn("123");
+
+        // verificação
+        Mockito.verify(repository, Mockito.times(2)).findById(1l);
+        Mockito.verify(repository, Mockito.times(2)).findByIsbn("123");
+    }
+
+    @Test
+    @DisplayName("Deve invalidar o cache ao deletar um livro")
+    public void evictOnDeleteTest() {
+        // cenário
+        Book book = createValidBook();
+        Mockito.when(repository.findById(1l)).thenReturn(Optional.of(book), Optional.empty());
+        Mockito.when(repository.findByIsbn("123")).thenReturn(Optional.of(book), Optional.empty());
+        service.getById(1l);
+        service.getBookByIsbn("123");
+
+        // execução
+        service.delete(book);
+
+        // verificação
+        assertThat(service.getById(1l)).isEmpty();
+        assertThat(service.getBookByIsbn("123")).isEmpty();
+    }
+
+    @Test
+    @DisplayName("Deve consultar em lote somente os livros que não estão no cache")
+    public void getByIdsPartialHitTest() {
+        // cenário
+        Book cached = createValidBook();
+        Book other = Book.builder().id(2l).isbn("456").author("Ciclano").title("Outras aventuras").build();
+        Mockito.when(repository.findById(1l)).thenReturn(Optional.of(cached));
+        Mockito.when(repository.findAllById(Arrays.asList(2l, 3l))).thenReturn(Collections.singletonList(other));
+        service.getById(1l);
+
+        // execução
+        Map<Long, Book> books = service.getByIds(Arrays.asList(1l, 2l, 3l));
+        Optional<Book> single = service.getById(2l);
+
+        // verificação
+        assertThat(books).containsOnlyKeys(1l, 2l);
+        assertThat(books.get(1l)).isEqualTo(cached);
+        assertThat(single).contains(other);
+        Mockito.verify(repository).findAllById(Arrays.asList(2l, 3l));
+        Mockito.verify(repository, Mockito.never()).findById(2l);
+    }
+
+    private Book createValidBook() {
+        return Book.builder().id(1l).isbn("123").author("Fulano").title("As aventuras").build();
+    }
+
+}
@@ -0,0 +1,181 @@
+package br.com.nerdslab.libraryapi.service;
+
+import br.com.nerdslab.libraryapi.model.entity.Book;
+import br.com.nerdslab.libraryapi.model.repository.BookRepository;
+import br.com.nerdslab.libraryapi.service.impl.BookServiceImpl;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.cache.support.NoOpCacheManager;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+
+/**
+ * The service is built without its cache advice, so every lookup is a miss.
+ */
+public class BookServiceCoalescingTest {
+
+    private static final int CALLERS = 8;
+
+    BookRepository repository;
+
+    MeterRegistry meterRegistry;
+
+    ExecutorService executor;
+
+    CountDownLatch loading;
+
+    CountDownLatch release;
+
+    @BeforeEach
+    public void setUp() {
+        repository = Mockito.mock(BookRepository.class);
+        meterRegistry = new SimpleMeterRegistry();
+        executor = Executors.newFixedThreadPool(CALLERS);
+        loading = new CountDownLatch(1);
+        release = new CountDownLatch(1);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        release.countDown();
+        executor.shutdownNow();
+    }
+
+    @Test
+    @DisplayName("Deve fazer uma só consulta para buscas simultâneas do mesmo livro")
+    public void coalesceConcurrentLookupsTest() throws Exception {
+        // cenário
+        Book book = Book.builder().id(1l).isbn("123").build();
+        Mockito.when(repository.findById(1l)).thenAnswer(invocation -> {
+            loading.countDown();
+            release.await();
+            return Optional.of(book);
+        });
+        BookService service = service(5_000);
+
+        // execução
+        List<Future<Optional<Book>>> results = submit(() -> service.getById(1l));
+        release.countDown();
+
+        // verificação
+        for (Future<Optional<Book>> result : results) {
+            assertThat(result.get(5, TimeUnit.SECONDS)).contains(book);
+        }
+        Mockito.verify(repository, Mockito.times(1)).findById(1l);
+        assertThat(count("library.books.lookups.loaded", "id")).isEqualTo(1);
+        assertThat(count("library.books.lookups.coalesced", "id")).isEqualTo(CALLERS - 1);
+    }
+
+    @Test
+    @DisplayName("Deve repassar a exceção da consulta a todos que a aguardavam")
+    public void propagateLoadFailureTest() throws Exception {
+        // cenário
+        Mockito.when(repository.findByIsbn("123")).thenAnswer(invocation -> {
+            loading.countDown();
+            release.await();
+            throw new IllegalStateException("banco indisponível");
+        });
+        BookService service = service(5_000);
+
+        // execução
+        List<Future<Optional<Book>>> results = submit(() -> service.getBookByIsbn("123"));
+        release.countDown();
+
+        // verificação
+        for (Future<Optional<Book>> result : results) {
+            Throwable failure = catchThrowable(() -> result.get(5, TimeUnit.SECONDS));
+            assertThat(failure).isInstanceOf(ExecutionException.class);
+            assertThat(failure.getCause()).isInstanceOf(IllegalStateException.class).hasMessage("banco indisponível");
+        }
+        Mockito.verify(repository, Mockito.times(1)).findByIsbn("123");
+    }
+
+    @Test
+    @DisplayName("Deve desistir de aguardar uma consulta demorada depois do tempo máximo")
+    public void boundedWaitTest() throws Exception {
+        // cenário
+        Mockito.when(repository.findById(1l)).thenAnswer(invocation -> {
+            loading.countDown();
+            release.await();
+            return Optional.empty();
+        });
+        BookService service = service(50);
+        executor.submit(() -> service.getById(1l));
+        loading.await(5, TimeUnit.SECONDS);
+
+        // execução
+        Throwable failure = catchThrowable(() -> service.getById(1l));
+
+        // verificação
+        assertThat(failure).isInstanceOf(QueryTimeoutException.class);
+        assertThat(count("library.books.lookups.timed-out", "id")).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("Deve consultar de novo depois que a consulta anterior terminar")
+    public void loadAgainAfterCompletionTest() {
+        // cenário
+        Mockito.when(repository.findById(1l)).thenReturn(Optional.empty());
+        BookService service = service(5_000);
+
+        // execução
+        service.getById(1l);
+        service.getById(1l);
+
+        // verificação
+        Mockito.verify(repository, Mockito.times(2)).findById(1l);
+        assertThat(count("library.books.lookups.coalesced", "id")).isZero();
+    }
+
+    private BookService service(long maxWaitMs) {
+        return new BookServiceImpl(repository, Mockito.mock(BookSearchIndex.class), Mockito.mock(IsbnFilter.class),
+                new NoOpCacheManager(), Mockito.mock(PlatformTransactionManager.class), meterRegistry, 2, maxWaitMs);
+    }
+
+    /**
+     * The first caller starts the load, the others are submitted while it is blocked.
+     */
+    private <T> List<Future<T>> submit(Callable<T> lookup) throws InterruptedException {
+        List<Future<T>> results = new ArrayList<>();
+        results.add(executor.submit(lookup));
+        loading.await(5, TimeUnit.SECONDS);
+        CountDownLatch started = new CountDownLatch(CALLERS - 1);
+        for (int i = 1; i < CALLERS; i++) {
+            results.add(executor.submit(() -> {
+                started.countDown();
+                return lookup.call();
+            }));
+        }
+        started.await(5, TimeUnit.SECONDS);
+        // the waiters are running but may not have joined the load yet
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (count("library.books.lookups.coalesced", "id") + count("library.books.lookups.coalesced", "isbn") < CALLERS - 1
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(1);
+        }
+        return results;
+    }
+
+    private double count(String name, String key) {
+        return meterRegistry.counter(name, "key", key).count();
+    }
+}
@@ -2,8 +2,10 @@ package br.com.nerdslab.libraryapi.service;
 
 import br.com.nerdslab.libraryapi.exception.BusinessException;
 import br.com.nerdslab.libraryapi.model.entity.Book;
+import br.com.nerdslab.libraryapi.model.entity.Loan;
 import br.com.nerdslab.libraryapi.model.repository.BookRepository;
 import br.com.nerdslab.libraryapi.service.impl.BookServiceImpl;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.assertj.core.api.Assertions;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
@@ -12,19 +14,26 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.cache.support.NoOpCacheManager;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.data.domain.Example;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.data.jpa.domain.Specification;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.junit.jupiter.DisabledIf;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.transaction.PlatformTransactionManager;
 
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
-import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 
@@ -37,9 +46,19 @@ public class BookServiceTest {
     @MockBean
     BookRepository repository;
 
+    @MockBean
+    BookSearchIndex searchIndex;
+
+    @MockBean
+    IsbnFilter isbnFilter;
+
+    @MockBean
+    PlatformTransactionManager transactionManager;
+
     @BeforeEach
     public void setUp() {
-        this.service = new BookServiceImpl(repository);
+        this.service = new BookServiceImpl(repository, searchIndex, isbnFilter, new NoOpCacheManager(),
+                transactionManager, new SimpleMeterRegistry(), 2, 2_000);
     }
 
     @Test
@@ -49,7 +68,7 @@ public class BookServiceTest {
         Book book = createValidBook();
         //mocando
         Mockito.when(repository.existsByIsbn(Mockito.anyString())).thenReturn(false);
-        Mockito.when( repository.save(book) )
+        Mockito.when( repository.saveAndFlush(book) )
                 .thenReturn(Book
                         .builder()
                         .id(1l)
@@ -67,6 +86,42 @@ public class BookServiceTest {
         assertThat(savedBook.getIsbn()).isEqualTo("123");
         assertThat(savedBook.getTitle()).isEqualTo("As aventuras");
         assertThat(savedBook.getAuthor()).isEqualTo("Fulano");
+        Mockito.verify(searchIndex).index(savedBook);
+        Mockito.verify(isbnFilter).add("123");
+    }
+
+    @Test
+    @DisplayName("Não deve consultar o isbn na base quando o filtro garantir que ele é novo")
+    public void skipExistsQueryForNewIsbnTest() {
+        // cenário
+        Book book = createValidBook();
+        Mockito.when(isbnFilter.mightExist("123")).thenReturn(false);
+        Mockito.when(repository.saveAndFlush(book)).thenReturn(book);
+
+        // execução
+        service.save(book);
+
+        // verificação
+        Mockito.verify(repository, Mockito.never()).existsByIsbn(Mockito.anyString());
+        Mockito.verify(repository).saveAndFlush(book);
+    }
+
+    @Test
+    @DisplayName("Deve lançar erro de negócio quando a restrição de isbn único for violada")
+    public void duplicatedIsbnConstraintTest() {
+        // cenário
+        Book book = createValidBook();
+        Mockito.when(isbnFilter.mightExist("123")).thenReturn(false);
+        Mockito.when(repository.saveAndFlush(book)).thenThrow(new DataIntegrityViolationException("isbn"));
+
+        // execução
+        Throwable exception = Assertions.catchThrowable(() -> service.save(book));
+
+        // verificação
+        assertThat(exception)
+                .isInstanceOf(BusinessException.class)
+                .hasMessage("Isbn já cadastrado.");
+        Mockito.verify(isbnFilter, Mockito.never()).add(Mockito.anyString());
     }
 
     @Test
@@ -75,6 +130,7 @@ public class BookServiceTest {
         // cenário
         Book book = createValidBook();
         //mocando
+        Mockito.when(isbnFilter.mightExist(Mockito.anyString())).thenReturn(true);
         Mockito.when(repository.existsByIsbn(Mockito.anyString())).thenReturn(true);
 
         // execução
@@ -86,7 +142,7 @@ public class BookServiceTest {
                 .hasMessage("Isbn já cadastrado.");
 
         // para verificar que o método nunca será executado
-        Mockito.verify(repository, Mockito.never()).save(book);
+        Mockito.verify(repository, Mockito.never()).saveAndFlush(book);
 
     }
 
@@ -109,6 +165,25 @@ public class BookServiceTest {
         assertThat(foundBook.get().getAuthor()).isEqualTo(book.getAuthor());
         assertThat(foundBook.get().getTitle()).isEqualTo(book.getTitle());
         assertThat(foundBook.get().getIsbn()).isEqualTo(book.getIsbn());
+        assertThat(foundBook.get()).isNotSameAs(book);
+    }
+
+    @Test
+    @DisplayName("Deve devolver uma cópia do livro sem os empréstimos para o cache")
+    public void getByIdDetachedTest() {
+        // cenário
+        Book book = createValidBook();
+        book.setId(1l);
+        book.setLoans(Arrays.asList(Loan.builder().id(1l).book(book).build()));
+        Mockito.when(repository.findById(1l)).thenReturn(Optional.of(book));
+
+        // execução
+        Book foundBook = service.getById(1l).get();
+
+        // verificação
+        assertThat(foundBook).isNotSameAs(book).isEqualTo(book);
+        assertThat(foundBook.getLoans()).isNull();
+        assertThat(book.toString()).doesNotContain("loans");
     }
 
     @Test
@@ -137,6 +212,8 @@ public class BookServiceTest {
 
         // verificação
         Mockito.verify(repository, Mockito.times(1)).delete(book);
+        Mockito.verify(searchIndex, Mockito.times(1)).remove(book);
+        Mockito.verify(isbnFilter, Mockito.times(1)).remove(book.getIsbn());
 
     }
 
@@ -188,6 +265,7 @@ public class BookServiceTest {
         assertThat(book.getAuthor()).isEqualTo(updatedBook.getAuthor());
         assertThat(book.getTitle()).isEqualTo(updatedBook.getTitle());
         assertThat(book.getIsbn()).isEqualTo(updatedBook.getIsbn());
+        Mockito.verify(searchIndex).index(updatedBook);
     }
 
     @Test
@@ -214,6 +292,44 @@ public class BookServiceTest {
 
     }
 
+    @Test
+    @DisplayName("Deve filtrar livros pelo índice de trigramas quando o filtro permitir")
+    public void findBookByIndexTest() {
+        // cenário
+        Book book = createValidBook();
+
+        PageRequest pageRequest = PageRequest.of(0, 10);
+        Page<Book> page = new PageImpl<Book>(Arrays.asList(book), pageRequest, 1);
+        Specification<Book> specification = (root, query, cb) -> null;
+
+        Mockito.when(searchIndex.supports(book)).thenReturn(true);
+        Mockito.when(searchIndex.matching(Mockito.any(Example.class))).thenReturn(specification);
+        Mockito.when(repository.findAll(specification, pageRequest)).thenReturn(page);
+
+        // execução
+        Page<Book> result = service.find(book, pageRequest);
+
+        // verificação
+        assertThat(result).isEqualTo(page);
+        Mockito.verify(repository, Mockito.never()).findAll(Mockito.any(Example.class), Mockito.any(PageRequest.class));
+    }
+
+    @Test
+    @DisplayName("Deve buscar livros a partir do cursor informado")
+    public void findAfterTest() {
+        // cenário
+        Book book = createValidBook();
+        Slice<Book> slice = new SliceImpl<Book>(Arrays.asList(book), PageRequest.of(0, 10), false);
+        Mockito.when(repository.findAfter(0L, book.getTitle(), book.getAuthor(), book.getIsbn(), PageRequest.of(0, 10)))
+                .thenReturn(slice);
+
+        // execução
+        Slice<Book> result = service.findAfter(book, null, 10);
+
+        // verificação
+        assertThat(result).isEqualTo(slice);
+    }
+
     @Test
     @DisplayName("deve obter um livro pelo isbn")
     public void getBookByIsbnTest() {
@@ -234,6 +350,39 @@ public class BookServiceTest {
         Mockito.verify(repository, Mockito.times(1)).findByIsbn(isbn);
     }
 
+    @Test
+    @DisplayName("deve obter vários livros pelo id em consultas de tamanho limitado")
+    public void getByIdsTest() {
+        // cenário
+        Book first = Book.builder().id(1l).isbn("001").build();
+        Book third = Book.builder().id(3l).isbn("003").build();
+        Mockito.when(repository.findAllById(Arrays.asList(1l, 2l))).thenReturn(Arrays.asList(first));
+        Mockito.when(repository.findAllById(Arrays.asList(3l))).thenReturn(Arrays.asList(third));
+
+        // execução
+        Map<Long, Book> books = service.getByIds(Arrays.asList(1l, 2l, 1l, 3l));
+
+        // verificação
+        assertThat(books).containsOnlyKeys(1l, 3l);
+        assertThat(books.get(3l)).isEqualTo(third);
+        Mockito.verify(repository, Mockito.times(2)).findAllById(Mockito.any());
+    }
+
+    @Test
+    @DisplayName("deve obter vários livros pelo isbn")
+    public void getByIsbnsTest() {
+        // cenário
+        Book book = Book.builder().id(1l).isbn("001").build();
+        Mockito.when(repository.findByIsbnIn(Arrays.asList("001", "002"))).thenReturn(Arrays.asList(book));
+
+        // execução
+        Map<String, Book> books = service.getByIsbns(Arrays.asList("001", "002"));
+
+        // verificação
+        assertThat(books).containsOnlyKeys("001");
+        assertThat(books.get("001")).isEqualTo(book);
+    }
+
     private Book createValidBook() {
         return Book.builder().isbn("123").author("Fulano").title("As aventuras").build();
     }
@@ -0,0 +1,56 @@
+package br.com.nerdslab.libraryapi.service;
+
+import br.com.nerdslab.libraryapi.service.impl.EmailServiceImpl;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.mail.SimpleMailMessage;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@ExtendWith(SpringExtension.class)
+@ActiveProfiles("test")
+public class EmailServiceTest {
+
+    private EmailService service;
+
+    @MockBean
+    private MailDispatcher mailDispatcher;
+
+    @BeforeEach
+    public void setUp() {
+        service = new EmailServiceImpl(mailDispatcher);
+        ReflectionTestUtils.setField(service, "remetent", "mail@library-api.com");
+        ReflectionTestUtils.setField(service, "subject", "Livro com empréstimo atrasado");
+    }
+
+    @Test
+    @DisplayName("Deve criar uma mensagem por destinatário")
+    public void sendMailsTest() {
+        // execução
+        service.sendMails("Atenção!", Arrays.asList("a@email.com", "b@email.com", null, "a@email.com"));
+
+        // verificação
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<SimpleMailMessage>> messages = ArgumentCaptor.forClass(List.class);
+        Mockito.verify(mailDispatcher).dispatch(messages.capture(), Mockito.eq(MailDispatcher.DeliveryListener.NONE));
+        assertThat(messages.getValue()).hasSize(2);
+        assertThat(messages.getValue()).extracting(message -> message.getTo()[0]).containsExactly("a@email.com", "b@email.com");
+        assertThat(messages.getValue()).allSatisfy(message -> {
+            assertThat(message.getTo()).hasSize(1);
+            assertThat(message.getFrom()).isEqualTo("mail@library-api.com");
+            assertThat(message.getSubject()).isEqualTo("Livro com empréstimo atrasado");
+            assertThat(message.getText()).isEqualTo("Atenção!");
+        });
+    }
+}
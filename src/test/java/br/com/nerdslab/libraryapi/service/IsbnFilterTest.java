@@ -0,0 +1,90 @@
+package br.com.nerdslab.libraryapi.service;
+
+import br.com.nerdslab.libraryapi.model.entity.Book;
+import br.com.nerdslab.libraryapi.service.impl.IsbnFilterImpl;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@ExtendWith(SpringExtension.class)
+@ActiveProfiles("test")
+@DataJpaTest
+@Import(IsbnFilterImpl.class)
+public class IsbnFilterTest {
+
+    @Autowired
+    IsbnFilter isbnFilter;
+
+    @Autowired
+    TestEntityManager entityManager;
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    @MockBean
+    EmailService emailService;
+
+    @Test
+    @DisplayName("Deve considerar qualquer isbn possível antes da primeira reconstrução")
+    public void mightExistBeforeRebuildTest() {
+        // cenário
+        IsbnFilter notBuilt = new IsbnFilterImpl(jdbcTemplate);
+
+        // execução
+        boolean exists = notBuilt.mightExist("123");
+
+        // verificação
+        assertThat(exists).isTrue();
+    }
+
+    @Test
+    @DisplayName("Deve reconhecer os isbns da base após a reconstrução")
+    public void rebuildTest() {
+        // cenário
+        IntStream.range(0, 100).forEach(i ->
+                entityManager.persist(Book.builder().title("Aventuras").author("Fulano").isbn("isbn-" + i).build()));
+        entityManager.flush();
+
+        // execução
+        isbnFilter.rebuild();
+
+        // verificação
+        assertThat(IntStream.range(0, 100).allMatch(i -> isbnFilter.mightExist("isbn-" + i))).isTrue();
+        long falsePositives = IntStream.range(100, 10_100).filter(i -> isbnFilter.mightExist("isbn-" + i)).count();
+        assertThat(falsePositives).isLessThan(300);
+    }
+
+    @Test
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    @DisplayName("Deve incluir e remover isbns do filtro")
+    public void addAndRemoveTest() {
+        // cenário
+        isbnFilter.rebuild();
+
+        // execução
+        isbnFilter.add("123");
+        isbnFilter.add("456");
+        boolean added = isbnFilter.mightExist("123");
+        isbnFilter.remove("123");
+
+        // verificação
+        assertThat(added).isTrue();
+        assertThat(isbnFilter.mightExist("123")).isFalse();
+        assertThat(isbnFilter.mightExist("456")).isTrue();
+    }
+
+}
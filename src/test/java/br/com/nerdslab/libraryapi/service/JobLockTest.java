@@ -0,0 +1,111 @@
+package br.com.nerdslab.libraryapi.service;
+
+import br.com.nerdslab.libraryapi.model.repository.JobLeaseRepository;
+import br.com.nerdslab.libraryapi.service.impl.JobLockImpl;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@ExtendWith(SpringExtension.class)
+@ActiveProfiles("test")
+@DataJpaTest
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+public class JobLockTest {
+
+    private static final Duration AT_MOST = Duration.ofMinutes(10);
+
+    @Autowired
+    private JobLeaseRepository repository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @MockBean
+    private EmailService emailService;
+
+    private JobLock node;
+
+    private JobLock otherNode;
+
+    private final AtomicInteger runs = new AtomicInteger();
+
+    @BeforeEach
+    public void setUp() {
+        node = new JobLockImpl(repository, transactionManager);
+        otherNode = new JobLockImpl(repository, transactionManager);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        repository.deleteAll();
+    }
+
+    @Test
+    @DisplayName("Não deve executar a tarefa enquanto outro nó detiver a concessão")
+    public void heldLeaseTest() {
+        // execução
+        boolean ran = node.runLocked("job", AT_MOST, Duration.ZERO,
+                () -> assertThat(otherNode.runLocked("job", AT_MOST, Duration.ZERO, runs::incrementAndGet)).isFalse());
+
+        // verificação
+        assertThat(ran).isTrue();
+        assertThat(runs.get()).isZero();
+        assertThat(otherNode.runLocked("job", AT_MOST, Duration.ZERO, runs::incrementAndGet)).isTrue();
+        assertThat(runs.get()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("Deve manter a concessão pelo tempo mínimo após a execução")
+    public void lockAtLeastForTest() {
+        // execução
+        node.runLocked("job", AT_MOST, Duration.ofMinutes(5), runs::incrementAndGet);
+
+        // verificação
+        assertThat(otherNode.runLocked("job", AT_MOST, Duration.ZERO, runs::incrementAndGet)).isFalse();
+        assertThat(node.runLocked("job", AT_MOST, Duration.ZERO, runs::incrementAndGet)).isFalse();
+        assertThat(runs.get()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("Deve assumir a concessão expirada de um nó que parou")
+    public void expiredLeaseTest() throws InterruptedException {
+        // cenário
+        node.runLocked("job", Duration.ofMillis(50), Duration.ofMillis(50), () -> { });
+        Thread.sleep(100);
+
+        // execução
+        boolean ran = otherNode.runLocked("job", AT_MOST, Duration.ZERO, runs::incrementAndGet);
+
+        // verificação
+        assertThat(ran).isTrue();
+        assertThat(runs.get()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("Deve liberar a concessão quando a tarefa falhar")
+    public void failedTaskTest() {
+        // execução
+        assertThatThrownBy(() -> node.runLocked("job", AT_MOST, Duration.ZERO, () -> {
+            throw new IllegalStateException("falhou");
+        })).isInstanceOf(IllegalStateException.class);
+
+        // verificação
+        assertThat(otherNode.runLocked("job", AT_MOST, Duration.ZERO, runs::incrementAndGet)).isTrue();
+    }
+}
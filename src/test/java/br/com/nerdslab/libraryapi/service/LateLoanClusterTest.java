@@ -0,0 +1,128 @@
+package br.com.nerdslab.libraryapi.service;
+
+import br.com.nerdslab.libraryapi.LibraryApiApplication;
+import br.com.nerdslab.libraryapi.model.entity.Book;
+import br.com.nerdslab.libraryapi.model.entity.Loan;
+import br.com.nerdslab.libraryapi.model.repository.BookRepository;
+import br.com.nerdslab.libraryapi.model.repository.LateLoanNotificationRepository;
+import br.com.nerdslab.libraryapi.model.repository.LoanRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.File;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Two application nodes sharing one H2 file database, as two replicas would share the real one.
+ */
+public class LateLoanClusterTest {
+
+    private static final int LOANS = 45;
+    private static final int PARTITION_SIZE = 10;
+    private static final File DATABASE = new File("target/h2/late-loan-cluster");
+
+    private static final List<ConfigurableApplicationContext> nodes = new ArrayList<>();
+
+    @BeforeAll
+    public static void startNodes() {
+        FileSystemUtils.deleteRecursively(DATABASE);
+        for (int i = 0; i < 2; i++) {
+            // arguments rather than builder properties, which would lose to application.properties
+            nodes.add(new SpringApplicationBuilder(LibraryApiApplication.class)
+                    .profiles("test")
+                    .run("--spring.datasource.url=jdbc:h2:file:./" + DATABASE.getPath() + "/library;DB_CLOSE_ON_EXIT=FALSE",
+                            "--spring.jpa.hibernate.ddl-auto=update",
+                            "--server.port=0",
+                            "--spring.jmx.enabled=false",
+                            "--application.mail.lateloans.partition-size=" + PARTITION_SIZE,
+                            "--application.mail.lateloans.lock-at-least-ms=60000",
+                            "--application.mail.lateloans.relay-delay-ms=3600000",
+                            "--application.loans.overdue.tick-ms=3600000"));
+        }
+    }
+
+    @AfterAll
+    public static void stopNodes() {
+        nodes.forEach(ConfigurableApplicationContext::close);
+        nodes.clear();
+    }
+
+    @Test
+    @DisplayName("Deve dividir a varredura dos atrasados entre os nós sem repetir faixas")
+    public void partitionedScanTest() throws Exception {
+        // cenário
+        ConfigurableApplicationContext node = nodes.get(0);
+        BookRepository books = node.getBean(BookRepository.class);
+        LoanRepository loans = node.getBean(LoanRepository.class);
+        LocalDate loanDate = LocalDate.now().minusDays(10);
+        List<Loan> overdue = new ArrayList<>();
+        for (int i = 0; i < LOANS; i++) {
+            Book book = books.save(Book.builder().title("Livro " + i).author("Autor").isbn("cluster-" + i).build());
+            overdue.add(Loan.builder()
+                    .book(book)
+                    .customer("Fulano")
+                    .customerEmail("cliente" + i + "@email.com")
+                    .loanDate(loanDate)
+                    .dueDate(loanDate.plusDays(4))
+                    .build());
+        }
+        loans.saveAll(overdue);
+        long ranges = (loans.findMaxOverdueId(LocalDate.now()) + PARTITION_SIZE - 1) / PARTITION_SIZE;
+
+        // execução
+        runOnAllNodes();
+        double firstRound = partitions();
+        runOnAllNodes();
+
+        // verificação
+        LateLoanNotificationRepository notifications = nodes.get(1).getBean(LateLoanNotificationRepository.class);
+        assertThat(notifications.count()).isEqualTo(LOANS);
+        assertThat(firstRound).isEqualTo(ranges);
+        assertThat(partitions()).isEqualTo(ranges);
+        assertThat(nodes).allSatisfy(each ->
+                assertThat(each.getBean(MeterRegistry.class).counter("library.lateloans.enqueued").count())
+                        .isLessThanOrEqualTo(LOANS));
+    }
+
+    private void runOnAllNodes() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(nodes.size());
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<?>> runs = new ArrayList<>();
+            for (ConfigurableApplicationContext node : nodes) {
+                NotificationOutbox outbox = node.getBean(NotificationOutbox.class);
+                runs.add(executor.submit(() -> {
+                    start.await();
+                    outbox.enqueueLateLoans();
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> run : runs) {
+                run.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private double partitions() {
+        return nodes.stream()
+                .mapToDouble(node -> node.getBean(MeterRegistry.class).counter("library.lateloans.partitions").count())
+                .sum();
+    }
+}
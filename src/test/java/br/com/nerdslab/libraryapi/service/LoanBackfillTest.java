@@ -0,0 +1,105 @@
+package br.com.nerdslab.libraryapi.service;
+
+import br.com.nerdslab.libraryapi.model.entity.Book;
+import br.com.nerdslab.libraryapi.model.entity.Loan;
+import br.com.nerdslab.libraryapi.model.entity.LoanStatus;
+import br.com.nerdslab.libraryapi.model.repository.LoanRepository;
+import br.com.nerdslab.libraryapi.service.impl.LoanPolicyImpl;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDate;
+
+import static br.com.nerdslab.libraryapi.model.repository.BookRepositoryTest.createNewBook;
+import static org.assertj.core.api.Assertions.assertThat;
+
+@ExtendWith(SpringExtension.class)
+@ActiveProfiles("test")
+@DataJpaTest
+@Import({LoanBackfill.class, LoanPolicyImpl.class})
+public class LoanBackfillTest {
+
+    @Autowired
+    private LoanBackfill backfill;
+
+    @Autowired
+    private LoanRepository repository;
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @MockBean
+    private EmailService emailService;
+
+    private int bookSequence;
+
+    @Test
+    @DisplayName("Deve preencher status e data de devolução dos empréstimos antigos")
+    public void backfillTest() {
+        // cenário
+        ReflectionTestUtils.setField(backfill, "chunkSize", 2);
+        LocalDate loanDate = LocalDate.now().minusDays(10);
+        Loan open = persistLegacyLoan(null, null, loanDate);
+        Loan returned = persistLegacyLoan(null, true, loanDate);
+        Loan ownPeriod = persistLegacyLoan(7, null, loanDate);
+        Loan current = persistLegacyLoan(null, null, loanDate);
+        entityManager.getEntityManager()
+                .createQuery(" update Loan l set l.dueDate = :dueDate where l.id = :id ")
+                .setParameter("dueDate", loanDate.plusDays(30))
+                .setParameter("id", current.getId())
+                .executeUpdate();
+        entityManager.clear();
+
+        // execução
+        backfill.backfill();
+        entityManager.flush();
+        entityManager.clear();
+
+        // verificação
+        assertThat(repository.findById(open.getId()).get())
+                .extracting(Loan::getStatus, Loan::getDueDate)
+                .containsExactly(LoanStatus.ACTIVE, loanDate.plusDays(4));
+        assertThat(repository.findById(returned.getId()).get())
+                .extracting(Loan::getStatus, Loan::getDueDate)
+                .containsExactly(LoanStatus.RETURNED, loanDate.plusDays(4));
+        assertThat(repository.findById(ownPeriod.getId()).get().getDueDate()).isEqualTo(loanDate.plusDays(7));
+        assertThat(repository.findById(current.getId()).get())
+                .extracting(Loan::getStatus, Loan::getDueDate)
+                .containsExactly(LoanStatus.ACTIVE, loanDate.plusDays(30));
+        assertThat(repository.findUnnotifiedOverdueBetween(LocalDate.now(), 0L, Long.MAX_VALUE, PageRequest.of(0, 10)))
+                .extracting(LoanRepository.LateLoan::getId)
+                .containsExactlyInAnyOrder(open.getId(), ownPeriod.getId());
+    }
+
+    /**
+     * Loans as stored before the columns existed: the entity callback fills the status, so it is
+     * cleared afterwards.
+     */
+    private Loan persistLegacyLoan(Integer bookLoanDays, Boolean returned, LocalDate loanDate) {
+        Book book = createNewBook("legacy-" + bookSequence++);
+        book.setLoanDays(bookLoanDays);
+        entityManager.persist(book);
+        Loan loan = entityManager.persist(Loan.builder()
+                .book(book)
+                .customer("Fulano")
+                .loanDate(loanDate)
+                .returned(returned)
+                .build());
+        entityManager.flush();
+        entityManager.getEntityManager()
+                .createNativeQuery(" update loan set status = null where id = :id ")
+                .setParameter("id", loan.getId())
+                .executeUpdate();
+        return loan;
+    }
+}
@@ -0,0 +1,175 @@
+package br.com.nerdslab.libraryapi.service;
+
+import br.com.nerdslab.libraryapi.api.dto.LoanBatchItemDTO;
+import br.com.nerdslab.libraryapi.api.dto.LoanDTO;
+import br.com.nerdslab.libraryapi.api.dto.ReturnedLoanDTO;
+import br.com.nerdslab.libraryapi.model.entity.Book;
+import br.com.nerdslab.libraryapi.model.entity.Loan;
+import br.com.nerdslab.libraryapi.model.repository.BookRepository;
+import br.com.nerdslab.libraryapi.model.repository.LoanRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@ExtendWith(SpringExtension.class)
+@ActiveProfiles("test")
+@SpringBootTest(properties = {
+        "logging.level.org.hibernate.engine.jdbc.spi.SqlExceptionHelper=OFF",
+        "logging.level.org.hibernate.engine.jdbc.batch.internal.BatchingBatch=OFF"
+})
+public class LoanBatchServiceTest {
+
+    @Autowired
+    LoanBatchService service;
+
+    @Autowired
+    BookRepository bookRepository;
+
+    @Autowired
+    LoanRepository loanRepository;
+
+    @Autowired
+    AvailabilityIndex availabilityIndex;
+
+    @AfterEach
+    public void tearDown() {
+        loanRepository.deleteAllInBatch();
+        bookRepository.deleteAllInBatch();
+    }
+
+    @Test
+    @DisplayName("Deve emprestar os livros do lote e informar os que falharam")
+    public void createTest() {
+        // cenário
+        Book first = createBook("batch-1");
+        Book second = createBook("batch-2");
+        Book loaned = createBook("batch-3");
+        service.create(Arrays.asList(newLoan(loaned.getIsbn())));
+
+        // execução
+        List<LoanBatchItemDTO> items = service.create(Arrays.asList(
+                newLoan(first.getIsbn()),
+                newLoan("batch-unknown"),
+                newLoan(second.getIsbn()),
+                newLoan(first.getIsbn()),
+                newLoan(loaned.getIsbn())));
+
+        // verificação
+        assertThat(items).extracting(LoanBatchItemDTO::getIndex).containsExactly(0, 1, 2, 3, 4);
+        assertThat(items.get(0).getErrors()).isEmpty();
+        assertThat(items.get(0).getId()).isNotNull();
+        assertThat(items.get(0).getDueDate()).isAfter(LocalDate.now());
+        assertThat(items.get(1).getErrors()).containsExactly("Book not found for passed isbn");
+        assertThat(items.get(2).getErrors()).isEmpty();
+        assertThat(items.get(3).getErrors()).containsExactly("Repeated in this batch");
+        assertThat(items.get(4).getErrors()).containsExactly("Book already loaned");
+        assertThat(loanRepository.count()).isEqualTo(3);
+        assertThat(bookRepository.findActiveLoanId(first.getId())).isEqualTo(items.get(0).getId());
+        assertThat(bookRepository.findActiveLoanId(second.getId())).isEqualTo(items.get(2).getId());
+    }
+
+    @Test
+    @DisplayName("Deve tirar do cache de segundo nível os livros marcados pelo lote")
+    public void secondLevelCacheTest() {
+        // cenário
+        Book book = createBook("cached-1");
+        assertThat(bookRepository.findById(book.getId()).get().getActiveLoanId()).isNull();
+
+        // execução
+        Long loanId = service.create(Arrays.asList(newLoan(book.getIsbn()))).get(0).getId();
+        Long activeLoanId = bookRepository.findById(book.getId()).get().getActiveLoanId();
+        service.returnLoans(Arrays.asList(ReturnedLoanDTO.builder().id(loanId).returned(true).build()));
+
+        // verificação
+        assertThat(activeLoanId).isEqualTo(loanId);
+        assertThat(bookRepository.findById(book.getId()).get().getActiveLoanId()).isNull();
+    }
+
+    @Test
+    @DisplayName("Deve refazer o lote item a item quando um livro foi emprestado por outra requisição")
+    public void createCollisionTest() {
+        // cenário
+        Book first = createBook("collision-1");
+        Book taken = createBook("collision-2");
+        // a loan the book does not know about yet, as if committed right after the availability check
+        loanRepository.save(Loan.builder().book(taken).customer("Outro").loanDate(LocalDate.now()).build());
+
+        // execução
+        List<LoanBatchItemDTO> items = service.create(Arrays.asList(newLoan(first.getIsbn()), newLoan(taken.getIsbn())));
+
+        // verificação
+        assertThat(items.get(0).getErrors()).isEmpty();
+        assertThat(items.get(0).getId()).isNotNull();
+        assertThat(items.get(1).getErrors()).containsExactly("Book already loaned");
+        assertThat(items.get(1).getId()).isNull();
+        assertThat(loanRepository.count()).isEqualTo(2);
+        assertThat(bookRepository.findActiveLoanId(first.getId())).isEqualTo(items.get(0).getId());
+    }
+
+    @Test
+    @DisplayName("Deve devolver os empréstimos do lote e informar os que falharam")
+    public void returnLoansTest() {
+        // cenário
+        Book first = createBook("return-1");
+        Book second = createBook("return-2");
+        List<LoanBatchItemDTO> created = service.create(Arrays.asList(newLoan(first.getIsbn()), newLoan(second.getIsbn())));
+        Long firstLoan = created.get(0).getId();
+        Long secondLoan = created.get(1).getId();
+
+        // execução
+        List<LoanBatchItemDTO> items = service.returnLoans(Arrays.asList(
+                ReturnedLoanDTO.builder().id(firstLoan).returned(true).build(),
+                ReturnedLoanDTO.builder().id(-1l).returned(true).build(),
+                ReturnedLoanDTO.builder().id(secondLoan).returned(true).build(),
+                ReturnedLoanDTO.builder().id(firstLoan).returned(true).build()));
+
+        // verificação
+        assertThat(items.get(0).getErrors()).isEmpty();
+        assertThat(items.get(0).getIsbn()).isEqualTo(first.getIsbn());
+        assertThat(items.get(1).getErrors()).containsExactly("Loan not found");
+        assertThat(items.get(2).getErrors()).isEmpty();
+        assertThat(items.get(3).getErrors()).containsExactly("Repeated in this batch");
+        assertThat(loanRepository.findById(firstLoan).get().getReturned()).isTrue();
+        assertThat(bookRepository.findActiveLoanId(first.getId())).isNull();
+        assertThat(bookRepository.findActiveLoanId(second.getId())).isNull();
+        assertThat(service.create(Arrays.asList(newLoan(first.getIsbn()))).get(0).getErrors()).isEmpty();
+    }
+
+    @Test
+    @DisplayName("Não deve liberar o livro no índice ao devolver de novo um empréstimo antigo")
+    public void returnStaleLoanTest() {
+        // cenário
+        Book book = createBook("return-stale");
+        Long oldLoan = service.create(Arrays.asList(newLoan(book.getIsbn()))).get(0).getId();
+        service.returnLoans(Arrays.asList(ReturnedLoanDTO.builder().id(oldLoan).returned(true).build()));
+        Long activeLoan = service.create(Arrays.asList(newLoan(book.getIsbn()))).get(0).getId();
+
+        // execução
+        List<LoanBatchItemDTO> items = service.returnLoans(Arrays.asList(
+                ReturnedLoanDTO.builder().id(oldLoan).returned(true).build()));
+
+        // verificação
+        assertThat(items.get(0).getErrors()).isEmpty();
+        assertThat(bookRepository.findActiveLoanId(book.getId())).isEqualTo(activeLoan);
+        assertThat(availabilityIndex.loaned(new long[]{book.getId()})).containsExactly(book.getId());
+    }
+
+    private Book createBook(String isbn) {
+        return bookRepository.save(Book.builder().title("Aventuras").author("Fulano").isbn(isbn).build());
+    }
+
+    private static LoanDTO newLoan(String isbn) {
+        return LoanDTO.builder().isbn(isbn).customer("Fulano").email("fulano@email.com").build();
+    }
+}
@@ -0,0 +1,52 @@
+package br.com.nerdslab.libraryapi.service;
+
+import br.com.nerdslab.libraryapi.model.entity.Book;
+import br.com.nerdslab.libraryapi.service.impl.LoanPolicyImpl;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+import java.time.LocalDate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@ExtendWith(SpringExtension.class)
+@ActiveProfiles("test")
+public class LoanPolicyTest {
+
+    private static final LocalDate LOAN_DATE = LocalDate.of(2020, 1, 10);
+
+    private LoanPolicy policy;
+
+    @BeforeEach
+    public void setUp() {
+        MockEnvironment environment = new MockEnvironment()
+                .withProperty("application.loans.days.customer-class.student", "14");
+        policy = new LoanPolicyImpl(environment, 4);
+    }
+
+    @Test
+    @DisplayName("Deve usar o prazo padrão quando não houver outro configurado")
+    public void defaultDaysTest() {
+        assertThat(policy.dueDate(Book.builder().build(), null, LOAN_DATE)).isEqualTo(LOAN_DATE.plusDays(4));
+        assertThat(policy.dueDate(Book.builder().build(), "visitor", LOAN_DATE)).isEqualTo(LOAN_DATE.plusDays(4));
+    }
+
+    @Test
+    @DisplayName("Deve usar o prazo da classe do cliente")
+    public void customerClassDaysTest() {
+        assertThat(policy.dueDate(Book.builder().build(), "Student", LOAN_DATE)).isEqualTo(LOAN_DATE.plusDays(14));
+    }
+
+    @Test
+    @DisplayName("Deve priorizar o prazo do livro")
+    public void bookDaysTest() {
+        Book book = Book.builder().loanDays(2).build();
+
+        assertThat(policy.dueDate(book, "student", LOAN_DATE)).isEqualTo(LOAN_DATE.plusDays(2));
+    }
+}
@@ -0,0 +1,141 @@
+package br.com.nerdslab.libraryapi.service;
+
+import br.com.nerdslab.libraryapi.exception.BusinessException;
+import br.com.nerdslab.libraryapi.model.entity.Book;
+import br.com.nerdslab.libraryapi.model.entity.Loan;
+import br.com.nerdslab.libraryapi.model.repository.BookRepository;
+import br.com.nerdslab.libraryapi.model.repository.LoanRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@ExtendWith(SpringExtension.class)
+@ActiveProfiles("test")
+@SpringBootTest(properties = {
+        "logging.level.org.hibernate.engine.jdbc.spi.SqlExceptionHelper=OFF",
+        "logging.level.org.hibernate.engine.jdbc.batch.internal.BatchingBatch=OFF"
+})
+public class LoanServiceConcurrencyTest {
+
+    private static final int BOOKS = 20;
+    private static final int ATTEMPTS = 5000;
+
+    @Autowired
+    LoanService service;
+
+    @Autowired
+    BookRepository bookRepository;
+
+    @Autowired
+    LoanRepository loanRepository;
+
+    @AfterEach
+    public void tearDown() {
+        loanRepository.deleteAllInBatch();
+        bookRepository.deleteAllInBatch();
+    }
+
+    @Test
+    @DisplayName("Deve emprestar cada livro uma única vez sob tentativas concorrentes")
+    public void concurrentLoansTest() throws Exception {
+        // cenário
+        List<Book> books = createBooks("concurrent");
+        int threads = Math.max(4, Runtime.getRuntime().availableProcessors() * 2);
+
+        // execução
+        Attempts attempts = attempt(books, threads, ATTEMPTS);
+
+        // verificação
+        assertThat(attempts.errors).isEmpty();
+        assertThat(attempts.rejected.get()).isEqualTo(ATTEMPTS - BOOKS);
+        assertThat(books).allMatch(book -> attempts.loaned.get(book.getId()).get() == 1);
+        assertThat(loanRepository.count()).isEqualTo(BOOKS);
+        books.forEach(book -> assertThat(bookRepository.findActiveLoanId(book.getId())).isNotNull());
+        loanRepository.findAll().forEach(loan ->
+                assertThat(bookRepository.findActiveLoanId(loan.getBook().getId())).isEqualTo(loan.getId()));
+    }
+
+    @Test
+    @DisplayName("Deve permitir um novo empréstimo depois da devolução do livro")
+    public void loanAfterReturnTest() {
+        // cenário
+        Book book = createBooks("returned").get(0);
+        Loan loan = service.save(newLoan(book, 0));
+
+        // execução
+        loan.setReturned(true);
+        service.update(loan);
+        Loan secondLoan = service.save(newLoan(book, 1));
+
+        // verificação
+        assertThat(secondLoan.getId()).isNotNull();
+        assertThat(loanRepository.count()).isEqualTo(2);
+    }
+
+    private Attempts attempt(List<Book> books, int threads, int count) throws InterruptedException {
+        Attempts attempts = new Attempts();
+        books.forEach(book -> attempts.loaned.put(book.getId(), new AtomicInteger()));
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        for (int i = 0; i < count; i++) {
+            Book book = books.get(i % books.size());
+            Loan loan = newLoan(book, i);
+            executor.execute(() -> {
+                try {
+                    start.await();
+                    service.save(loan);
+                    attempts.loaned.get(book.getId()).incrementAndGet();
+                } catch (BusinessException e) {
+                    attempts.rejected.incrementAndGet();
+                } catch (Exception e) {
+                    attempts.errors.add(e);
+                }
+            });
+        }
+        start.countDown();
+        executor.shutdown();
+        assertThat(executor.awaitTermination(2, TimeUnit.MINUTES)).isTrue();
+        return attempts;
+    }
+
+    private List<Book> createBooks(String prefix) {
+        List<Book> books = IntStream.range(0, BOOKS)
+                .mapToObj(i -> Book.builder().title("Aventuras").author("Fulano").isbn(prefix + "-" + i).build())
+                .collect(Collectors.toList());
+        return bookRepository.saveAll(books);
+    }
+
+    private Loan newLoan(Book book, int customer) {
+        return Loan.builder().book(book).customer("Fulano " + customer).loanDate(LocalDate.now()).build();
+    }
+
+    private static class Attempts {
+        final Map<Long, AtomicInteger> loaned = new ConcurrentHashMap<>();
+        final AtomicInteger rejected = new AtomicInteger();
+        final Queue<Exception> errors = new ConcurrentLinkedQueue<>();
+    }
+
+}
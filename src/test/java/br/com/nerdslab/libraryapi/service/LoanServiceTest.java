@@ -4,6 +4,7 @@ import br.com.nerdslab.libraryapi.api.dto.LoanFilterDTO;
 import br.com.nerdslab.libraryapi.exception.BusinessException;
 import br.com.nerdslab.libraryapi.model.entity.Book;
 import br.com.nerdslab.libraryapi.model.entity.Loan;
+import br.com.nerdslab.libraryapi.model.repository.BookRepository;
 import br.com.nerdslab.libraryapi.model.repository.LoanRepository;
 import br.com.nerdslab.libraryapi.service.impl.LoanServiceImpl;
 import lombok.RequiredArgsConstructor;
@@ -14,11 +15,15 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.Mock;
 import org.mockito.Mockito;
+import org.hibernate.exception.ConstraintViolationException;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.data.domain.Example;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 
@@ -39,9 +44,18 @@ public class LoanServiceTest {
     @MockBean
     private LoanRepository repository;
 
+    @MockBean
+    private BookRepository bookRepository;
+
+    @MockBean
+    private OverdueTracker overdueTracker;
+
+    @MockBean
+    private AvailabilityIndex availabilityIndex;
+
     @BeforeEach
     public void setUp() {
-        this.service = new LoanServiceImpl(repository);
+        this.service = new LoanServiceImpl(repository, bookRepository, overdueTracker, availabilityIndex);
     }
 
     @Test
@@ -64,9 +78,8 @@ public class LoanServiceTest {
                 .book(book)
                 .build();
 
-        Mockito.when(repository.existsByBookAndNotReturned(book))
-                .thenReturn(false);
-        Mockito.when(repository.save(savingLoan))
+        Mockito.when(bookRepository.findActiveLoanId(book.getId())).thenReturn(null);
+        Mockito.when(repository.saveAndFlush(savingLoan))
                 .thenReturn(savedLoan);
 
         // execução
@@ -77,6 +90,53 @@ public class LoanServiceTest {
         assertThat(loan.getBook().getId()).isEqualTo(savedLoan.getBook().getId());
         assertThat(loan.getCustomer()).isEqualTo(savedLoan.getCustomer());
         assertThat(loan.getLoanDate()).isEqualTo(savedLoan.getLoanDate());
+        Mockito.verify(bookRepository).markLoaned(book.getId(), savedLoan.getId());
+        Mockito.verify(availabilityIndex).markLoaned(book.getId());
+        Mockito.verify(overdueTracker).track(savedLoan);
+    }
+
+    @Test
+    @DisplayName("Deve salvar um empréstimo já devolvido sem marcar o livro, mesmo com o livro emprestado")
+    public void saveReturnedLoanTest() {
+        // cenário
+        Loan loan = createLoan();
+        loan.setReturned(true);
+        Loan savedLoan = createLoan();
+        savedLoan.setId(1l);
+        savedLoan.setReturned(true);
+
+        Mockito.when(bookRepository.findActiveLoanId(loan.getBook().getId())).thenReturn(7l);
+        Mockito.when(repository.saveAndFlush(loan)).thenReturn(savedLoan);
+
+        // execução
+        Loan saved = service.save(loan);
+
+        // verificação
+        assertThat(saved).isEqualTo(savedLoan);
+        Mockito.verify(bookRepository, Mockito.never()).findActiveLoanId(Mockito.anyLong());
+        Mockito.verify(bookRepository, Mockito.never()).markLoaned(Mockito.anyLong(), Mockito.anyLong());
+        Mockito.verifyNoInteractions(availabilityIndex);
+        Mockito.verify(overdueTracker).track(savedLoan);
+    }
+
+    @Test
+    @DisplayName("Deve recusar o empréstimo pelo empréstimo ativo do livro sem tentar inseri-lo")
+    public void activeLoanSaveTest() {
+        // cenário
+        Book book = Book.builder().id(1l).build();
+        Loan savingLoan = Loan.builder().book(book).customer("Fulano").loanDate(LocalDate.now()).build();
+        Mockito.when(bookRepository.findActiveLoanId(book.getId())).thenReturn(7l);
+
+        // execução
+        Throwable exception = catchThrowable(() -> service.save(savingLoan));
+
+        // verificação
+        assertThat(exception)
+                .isInstanceOf(BusinessException.class)
+                .hasMessage("Book already loaned");
+        Mockito.verify(repository, Mockito.never()).saveAndFlush(Mockito.any(Loan.class));
+        Mockito.verify(bookRepository, Mockito.never()).markLoaned(Mockito.anyLong(), Mockito.anyLong());
+        Mockito.verifyNoInteractions(availabilityIndex);
     }
 
     @Test
@@ -91,8 +151,9 @@ public class LoanServiceTest {
                 .loanDate(LocalDate.now())
                 .build();
 
-        Mockito.when(repository.existsByBookAndNotReturned(book))
-                .thenReturn(true);
+        Mockito.when(repository.saveAndFlush(savingLoan))
+                .thenThrow(new DataIntegrityViolationException("active book",
+                        new ConstraintViolationException("active book", null, "UK_LOAN_ACTIVE_BOOK_INDEX_2")));
 
         // execução
         Throwable exception = catchThrowable(() -> service.save(savingLoan));
@@ -102,7 +163,9 @@ public class LoanServiceTest {
                 .isInstanceOf(BusinessException.class)
                 .hasMessage("Book already loaned");
 
-        Mockito.verify(repository, Mockito.never()).save(savingLoan);
+        Mockito.verify(bookRepository, Mockito.never()).markLoaned(Mockito.anyLong(), Mockito.anyLong());
+        Mockito.verifyNoInteractions(availabilityIndex);
+        Mockito.verify(overdueTracker, Mockito.never()).track(Mockito.any(Loan.class));
 
     }
 
@@ -140,6 +203,7 @@ public class LoanServiceTest {
         loan.setReturned(true);
 
         Mockito.when(repository.save(loan)).thenReturn(loan);
+        Mockito.when(bookRepository.markReturned(loan.getBook().getId(), loan.getId())).thenReturn(1);
 
         // execução
         Loan updatedLoan = service.update(loan);
@@ -147,9 +211,69 @@ public class LoanServiceTest {
         // verificação
         assertThat(updatedLoan.getReturned()).isTrue();
         Mockito.verify(repository).save(loan);
+        Mockito.verify(bookRepository).markReturned(loan.getBook().getId(), loan.getId());
+        Mockito.verify(availabilityIndex).markReturned(loan.getBook().getId());
+        Mockito.verify(overdueTracker).track(loan);
 
     }
 
+    @Test
+    @DisplayName("Não deve liberar o livro no índice quando o empréstimo devolvido não era o ativo")
+    public void updateStaleLoanTest() {
+        // cenário
+        Loan loan = createLoan();
+        loan.setId(1l);
+        loan.setReturned(true);
+
+        Mockito.when(repository.save(loan)).thenReturn(loan);
+        Mockito.when(bookRepository.markReturned(loan.getBook().getId(), loan.getId())).thenReturn(0);
+
+        // execução
+        service.update(loan);
+
+        // verificação
+        Mockito.verify(bookRepository).markReturned(loan.getBook().getId(), loan.getId());
+        Mockito.verifyNoInteractions(availabilityIndex);
+    }
+
+    @Test
+    @DisplayName("Não deve marcar o livro novamente ao atualizar um empréstimo em aberto")
+    public void updateOpenLoanTest() {
+        // cenário
+        Loan loan = createLoan();
+        loan.setId(1l);
+        loan.setActiveBookId(loan.getBook().getId());
+
+        Mockito.when(repository.save(loan)).thenReturn(loan);
+
+        // execução
+        service.update(loan);
+
+        // verificação
+        Mockito.verify(bookRepository, Mockito.never()).markLoaned(Mockito.anyLong(), Mockito.anyLong());
+        Mockito.verify(bookRepository, Mockito.never()).markReturned(Mockito.anyLong(), Mockito.anyLong());
+        Mockito.verifyNoInteractions(availabilityIndex);
+        Mockito.verify(overdueTracker).track(loan);
+    }
+
+    @Test
+    @DisplayName("Deve marcar o livro como emprestado ao reabrir um empréstimo devolvido")
+    public void updateReopenedLoanTest() {
+        // cenário
+        Loan loan = createLoan();
+        loan.setId(1l);
+        loan.setReturned(false);
+
+        Mockito.when(repository.save(loan)).thenReturn(loan);
+
+        // execução
+        service.update(loan);
+
+        // verificação
+        Mockito.verify(bookRepository).markLoaned(loan.getBook().getId(), loan.getId());
+        Mockito.verify(availabilityIndex).markLoaned(loan.getBook().getId());
+    }
+
     @Test
     @DisplayName("Deve filtrar empréstimos pelas propriedades")
     public void findBookTest() {
@@ -180,6 +304,41 @@ public class LoanServiceTest {
 
     }
 
+    @Test
+    @DisplayName("Deve buscar a primeira página de empréstimos sem cursor")
+    public void findAfterWithoutCursorTest() {
+        // cenário
+        LoanFilterDTO loanFilterDTO = LoanFilterDTO.builder().customer("Fulano").isbn("321").build();
+        Slice<Loan> slice = new SliceImpl<Loan>(Arrays.asList(createLoan()), PageRequest.of(0, 10), true);
+        Mockito.when(repository.findSliceByBookIsbnOrCustomer("321", "Fulano", PageRequest.of(0, 10)))
+                .thenReturn(slice);
+
+        // execução
+        Slice<Loan> result = service.findAfter(loanFilterDTO, null, null, 10);
+
+        // verificação
+        AssertionsForClassTypes.assertThat(result).isEqualTo(slice);
+        Mockito.verify(repository, Mockito.never()).findSliceByBookIsbnOrCustomerAfter(
+                Mockito.any(), Mockito.any(), Mockito.any(), Mockito.any(), Mockito.any());
+    }
+
+    @Test
+    @DisplayName("Deve buscar empréstimos a partir do cursor informado")
+    public void findAfterTest() {
+        // cenário
+        LoanFilterDTO loanFilterDTO = LoanFilterDTO.builder().customer("Fulano").isbn("321").build();
+        LocalDate loanDate = LocalDate.now();
+        Slice<Loan> slice = new SliceImpl<Loan>(Arrays.asList(createLoan()), PageRequest.of(0, 10), false);
+        Mockito.when(repository.findSliceByBookIsbnOrCustomerAfter("321", "Fulano", loanDate, 5l, PageRequest.of(0, 10)))
+                .thenReturn(slice);
+
+        // execução
+        Slice<Loan> result = service.findAfter(loanFilterDTO, loanDate, 5l, 10);
+
+        // verificação
+        AssertionsForClassTypes.assertThat(result).isEqualTo(slice);
+    }
+
     public static Loan createLoan() {
         Book book = Book.builder().id(1l).build();
         String customer = "Fulano";
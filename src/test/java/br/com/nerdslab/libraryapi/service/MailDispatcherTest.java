@@ -0,0 +1,238 @@
+package br.com.nerdslab.libraryapi.service;
+
+import br.com.nerdslab.libraryapi.model.entity.MailDeadLetter;
+import br.com.nerdslab.libraryapi.model.repository.MailDeadLetterRepository;
+import br.com.nerdslab.libraryapi.service.impl.MailDispatcherImpl;
+import com.icegreen.greenmail.util.GreenMail;
+import com.icegreen.greenmail.util.ServerSetupTest;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.mail.MailException;
+import org.springframework.mail.MailSendException;
+import org.springframework.mail.MailSender;
+import org.springframework.mail.SimpleMailMessage;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+import javax.mail.Message;
+import javax.mail.internet.MimeMessage;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@ExtendWith(SpringExtension.class)
+@ActiveProfiles("test")
+public class MailDispatcherTest {
+
+    private GreenMail smtp;
+
+    private MeterRegistry meterRegistry;
+
+    private MailDispatcherImpl dispatcher;
+
+    @MockBean
+    private MailDeadLetterRepository deadLetters;
+
+    @BeforeEach
+    public void setUp() {
+        smtp = new GreenMail(ServerSetupTest.SMTP);
+        smtp.start();
+        meterRegistry = new SimpleMeterRegistry();
+    }
+
+    @AfterEach
+    public void tearDown() throws InterruptedException {
+        if (dispatcher != null) {
+            dispatcher.destroy();
+        }
+        smtp.stop();
+    }
+
+    @Test
+    @DisplayName("Deve enviar um e-mail por destinatário")
+    public void dispatchTest() throws Exception {
+        // cenário
+        dispatcher = dispatcher(smtpSender(), 0, 3);
+        List<SimpleMailMessage> messages = messages(10);
+
+        // execução
+        dispatcher.dispatch(messages);
+
+        // verificação
+        assertThat(smtp.waitForIncomingEmail(10_000, 10)).isTrue();
+        MimeMessage[] received = smtp.getReceivedMessages();
+        assertThat(received).hasSize(10);
+        for (MimeMessage message : received) {
+            assertThat(message.getRecipients(Message.RecipientType.TO)).hasSize(1);
+        }
+        assertThat(received).extracting(message -> message.getRecipients(Message.RecipientType.TO)[0].toString())
+                .containsExactlyInAnyOrderElementsOf(
+                        messages.stream().map(message -> message.getTo()[0]).collect(Collectors.toList()));
+        // the counter moves after the server has answered the last batch
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (meterRegistry.counter("library.mail.sent").count() < 10 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(meterRegistry.counter("library.mail.sent").count()).isEqualTo(10);
+    }
+
+    @Test
+    @DisplayName("Deve respeitar a taxa de envio configurada")
+    public void rateTest() {
+        // cenário
+        dispatcher = dispatcher(smtpSender(), 20, 3);
+
+        // execução
+        long start = System.nanoTime();
+        dispatcher.dispatch(messages(10));
+        boolean received = smtp.waitForIncomingEmail(10_000, 10);
+        long elapsed = System.nanoTime() - start;
+
+        // verificação
+        assertThat(received).isTrue();
+        assertThat(elapsed).isGreaterThanOrEqualTo(200_000_000L);
+    }
+
+    @Test
+    @DisplayName("Deve reenviar apenas as mensagens recusadas")
+    public void retryTest() {
+        // cenário
+        List<SimpleMailMessage> messages = messages(3);
+        FakeMailSender sender = new FakeMailSender(
+                new MailSendException(Collections.singletonMap(messages.get(1), new RuntimeException("busy"))));
+        dispatcher = dispatcher(sender, 0, 3);
+
+        // execução
+        dispatcher.dispatch(messages);
+
+        // verificação
+        awaitUntil(() -> meterRegistry.counter("library.mail.sent").count() == 3);
+        assertThat(sender.calls).hasSize(2);
+        assertThat(sender.calls.get(1)).containsExactly(messages.get(1));
+        assertThat(meterRegistry.counter("library.mail.retried").count()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("Deve registrar as mensagens que esgotarem as tentativas")
+    public void deadLetterTest() {
+        // cenário
+        MailSendException refused = new MailSendException("connection refused");
+        FakeMailSender sender = new FakeMailSender(refused, refused, refused);
+        dispatcher = dispatcher(sender, 0, 3);
+
+        // execução
+        dispatcher.dispatch(messages(2));
+
+        // verificação
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<MailDeadLetter>> letters = ArgumentCaptor.forClass(List.class);
+        Mockito.verify(deadLetters, Mockito.timeout(5_000)).saveAll(letters.capture());
+        assertThat(sender.calls).hasSize(3);
+        assertThat(letters.getValue()).extracting(MailDeadLetter::getRecipient)
+                .containsExactly("cliente0@email.com", "cliente1@email.com");
+        assertThat(letters.getValue()).extracting(MailDeadLetter::getAttempts).containsOnly(3);
+        assertThat(meterRegistry.counter("library.mail.dead").count()).isEqualTo(2);
+    }
+
+    @Test
+    @DisplayName("Deve informar ao ouvinte as mensagens entregues e as que falharam")
+    public void deliveryListenerTest() {
+        // cenário
+        List<SimpleMailMessage> messages = messages(3);
+        MailSendException refused = new MailSendException(Collections.singletonMap(messages.get(1), new RuntimeException("refused")));
+        dispatcher = dispatcher(new FakeMailSender(refused, refused), 0, 2);
+        List<SimpleMailMessage> delivered = new CopyOnWriteArrayList<>();
+        List<SimpleMailMessage> failed = new CopyOnWriteArrayList<>();
+
+        // execução
+        dispatcher.dispatch(messages, new MailDispatcher.DeliveryListener() {
+            @Override
+            public void delivered(List<SimpleMailMessage> messages) {
+                delivered.addAll(messages);
+            }
+
+            @Override
+            public void failed(List<SimpleMailMessage> messages) {
+                failed.addAll(messages);
+            }
+        });
+
+        // verificação
+        awaitUntil(() -> failed.size() == 1);
+        assertThat(delivered).containsExactly(messages.get(0), messages.get(2));
+        assertThat(failed).containsExactly(messages.get(1));
+    }
+
+    private MailDispatcherImpl dispatcher(MailSender sender, double ratePerSecond, int maxAttempts) {
+        return new MailDispatcherImpl(sender, deadLetters, meterRegistry, 2, 10, 5, ratePerSecond, maxAttempts, 10, 100);
+    }
+
+    private void awaitUntil(BooleanSupplier condition) {
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (!condition.getAsBoolean() && System.currentTimeMillis() < deadline) {
+            Thread.yield();
+        }
+        assertThat(condition.getAsBoolean()).isTrue();
+    }
+
+    private JavaMailSenderImpl smtpSender() {
+        JavaMailSenderImpl sender = new JavaMailSenderImpl();
+        sender.setHost("localhost");
+        sender.setPort(ServerSetupTest.SMTP.getPort());
+        return sender;
+    }
+
+    private List<SimpleMailMessage> messages(int count) {
+        return IntStream.range(0, count)
+                .mapToObj(i -> {
+                    SimpleMailMessage message = new SimpleMailMessage();
+                    message.setFrom("mail@library-api.com");
+                    message.setTo("cliente" + i + "@email.com");
+                    message.setSubject("Livro com empréstimo atrasado");
+                    message.setText("Atenção!");
+                    return message;
+                })
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Throws the given failures on the first calls and accepts every call after them.
+     */
+    private static class FakeMailSender implements MailSender {
+
+        private final List<MailException> failures;
+        private final List<List<SimpleMailMessage>> calls = new CopyOnWriteArrayList<>();
+
+        FakeMailSender(MailException... failures) {
+            this.failures = Arrays.asList(failures);
+        }
+
+        @Override
+        public void send(SimpleMailMessage message) {
+            send(new SimpleMailMessage[]{message});
+        }
+
+        @Override
+        public void send(SimpleMailMessage... messages) {
+            calls.add(Arrays.asList(messages));
+            if (calls.size() <= failures.size()) {
+                throw failures.get(calls.size() - 1);
+            }
+        }
+    }
+}
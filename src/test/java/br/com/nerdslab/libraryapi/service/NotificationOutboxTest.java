@@ -0,0 +1,211 @@
+package br.com.nerdslab.libraryapi.service;
+
+import br.com.nerdslab.libraryapi.model.entity.Book;
+import br.com.nerdslab.libraryapi.model.entity.LateLoanNotification;
+import br.com.nerdslab.libraryapi.model.entity.Loan;
+import br.com.nerdslab.libraryapi.model.repository.LateLoanNotificationRepository;
+import br.com.nerdslab.libraryapi.service.impl.JobLockImpl;
+import br.com.nerdslab.libraryapi.service.impl.NotificationOutboxImpl;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.mail.SimpleMailMessage;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static br.com.nerdslab.libraryapi.model.repository.BookRepositoryTest.createNewBook;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+
+@ExtendWith(SpringExtension.class)
+@ActiveProfiles("test")
+@DataJpaTest
+@Import({NotificationOutboxImpl.class, JobLockImpl.class, SimpleMeterRegistry.class})
+public class NotificationOutboxTest {
+
+    @Autowired
+    private NotificationOutbox outbox;
+
+    @Autowired
+    private LateLoanNotificationRepository notifications;
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @MockBean
+    private EmailService emailService;
+
+    private int loanSequence;
+
+    private final Map<String, Double> counts = new HashMap<>();
+
+    /**
+     * The registry lives as long as the cached context, so counters are compared with their value
+     * before the test.
+     */
+    @BeforeEach
+    public void setUp() {
+        for (String name : Arrays.asList("library.lateloans.enqueued", "library.lateloans.notified", "library.lateloans.failed")) {
+            counts.put(name, meterRegistry.counter(name).count());
+        }
+        ReflectionTestUtils.setField(outbox, "lockAtLeastForMs", 0L);
+    }
+
+    @Test
+    @DisplayName("Deve registrar uma única notificação por empréstimo atrasado")
+    public void enqueueLateLoansTest() {
+        // cenário
+        ReflectionTestUtils.setField(outbox, "chunkSize", 2);
+        Loan first = createAndPersistLoan(LocalDate.now().minusDays(5), "a@email.com");
+        Loan second = createAndPersistLoan(LocalDate.now().minusDays(6), "b@email.com");
+        createAndPersistLoan(LocalDate.now(), "c@email.com");
+        Loan third = createAndPersistLoan(LocalDate.now().minusDays(7), "d@email.com");
+
+        // execução
+        outbox.enqueueLateLoans();
+        outbox.enqueueLateLoans();
+
+        // verificação
+        assertThat(notifications.findAll())
+                .extracting(LateLoanNotification::getLoanId, LateLoanNotification::getRecipient)
+                .containsExactlyInAnyOrder(
+                        tuple(first.getId(), "a@email.com"),
+                        tuple(second.getId(), "b@email.com"),
+                        tuple(third.getId(), "d@email.com"));
+        assertThat(increment("library.lateloans.enqueued")).isEqualTo(3);
+    }
+
+    @Test
+    @DisplayName("Deve registrar somente os empréstimos informados que estiverem vencidos e sem notificação")
+    public void enqueueLoanIdsTest() {
+        // cenário
+        Loan overdue = createAndPersistLoan(LocalDate.now().minusDays(5), "a@email.com");
+        Loan notYet = createAndPersistLoan(LocalDate.now(), "b@email.com");
+        Loan returned = createAndPersistLoan(LocalDate.now().minusDays(5), "c@email.com");
+        returned.setReturned(true);
+        LateLoanNotification notified = persistNotification("d@email.com", null);
+        entityManager.flush();
+
+        // execução
+        outbox.enqueue(Arrays.asList(overdue.getId(), notYet.getId(), returned.getId(), notified.getLoanId()));
+        outbox.enqueue(Collections.singletonList(overdue.getId()));
+
+        // verificação
+        assertThat(notifications.findAll()).extracting(LateLoanNotification::getLoanId)
+                .containsExactlyInAnyOrder(overdue.getId(), notified.getLoanId());
+        assertThat(increment("library.lateloans.enqueued")).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("Deve marcar as notificações entregues e as que falharam conforme o envio")
+    public void relayTest() {
+        // cenário
+        LateLoanNotification delivered = persistNotification("a@email.com", null);
+        LateLoanNotification failed = persistNotification("b@email.com", null);
+        LateLoanNotification unreachable = persistNotification(null, null);
+
+        // execução
+        outbox.relay();
+
+        // verificação
+        MailDispatcher.DeliveryListener listener = verifySentTo("a@email.com", "b@email.com");
+        listener.delivered(Collections.singletonList(message("a@email.com")));
+        listener.failed(Collections.singletonList(message("b@email.com")));
+        entityManager.clear();
+
+        assertThat(find(delivered).getDeliveredAt()).isNotNull();
+        assertThat(find(delivered).getFailedAt()).isNull();
+        assertThat(find(failed).getFailedAt()).isNotNull();
+        assertThat(find(failed).getDeliveredAt()).isNull();
+        assertThat(find(unreachable).getFailedAt()).isNotNull();
+        assertThat(increment("library.lateloans.notified")).isEqualTo(1);
+        assertThat(increment("library.lateloans.failed")).isEqualTo(2);
+    }
+
+    @Test
+    @DisplayName("Deve reenviar somente as notificações com a concessão expirada")
+    public void relayExpiredLeaseTest() {
+        // cenário
+        ReflectionTestUtils.setField(outbox, "leaseMs", 60_000L);
+        persistNotification("a@email.com", LocalDateTime.now().minusMinutes(5));
+        persistNotification("b@email.com", LocalDateTime.now().minusSeconds(5));
+        LateLoanNotification delivered = persistNotification("c@email.com", LocalDateTime.now().minusMinutes(5));
+        delivered.setDeliveredAt(LocalDateTime.now());
+
+        // execução
+        outbox.relay();
+        outbox.relay();
+
+        // verificação
+        verifySentTo("a@email.com");
+    }
+
+    private double increment(String counter) {
+        return meterRegistry.counter(counter).count() - counts.get(counter);
+    }
+
+    private MailDispatcher.DeliveryListener verifySentTo(String... recipients) {
+        ArgumentCaptor<MailDispatcher.DeliveryListener> listener =
+                ArgumentCaptor.forClass(MailDispatcher.DeliveryListener.class);
+        Mockito.verify(emailService).sendMails(Mockito.anyString(), Mockito.eq(Arrays.asList(recipients)), listener.capture());
+        Mockito.verifyNoMoreInteractions(emailService);
+        return listener.getValue();
+    }
+
+    private LateLoanNotification find(LateLoanNotification notification) {
+        Optional<LateLoanNotification> found = notifications.findById(notification.getId());
+        assertThat(found).isPresent();
+        return found.get();
+    }
+
+    private static SimpleMailMessage message(String to) {
+        SimpleMailMessage message = new SimpleMailMessage();
+        message.setTo(to);
+        return message;
+    }
+
+    private LateLoanNotification persistNotification(String recipient, LocalDateTime dispatchedAt) {
+        Loan loan = createAndPersistLoan(LocalDate.now().minusDays(5), recipient);
+        return entityManager.persist(LateLoanNotification.builder()
+                .loanId(loan.getId())
+                .recipient(recipient)
+                .createdAt(LocalDateTime.now())
+                .dispatchedAt(dispatchedAt)
+                .build());
+    }
+
+    private Loan createAndPersistLoan(LocalDate loanDate, String customerEmail) {
+        Book book = createNewBook("123-" + loanSequence++);
+        entityManager.persist(book);
+        return entityManager.persist(Loan.builder()
+                .book(book)
+                .customer("Fulano")
+                .customerEmail(customerEmail)
+                .loanDate(loanDate)
+                .dueDate(loanDate.plusDays(4))
+                .build());
+    }
+}
@@ -0,0 +1,115 @@
+package br.com.nerdslab.libraryapi.service;
+
+import br.com.nerdslab.libraryapi.model.entity.Loan;
+import br.com.nerdslab.libraryapi.model.repository.LoanRepository;
+import br.com.nerdslab.libraryapi.service.impl.OverdueTrackerImpl;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mockito;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.data.domain.Pageable;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@ExtendWith(SpringExtension.class)
+@ActiveProfiles("test")
+public class OverdueTrackerTest {
+
+    private static final LocalDate TODAY = LocalDate.now();
+
+    private OverdueTrackerImpl tracker;
+
+    @MockBean
+    private LoanRepository repository;
+
+    @BeforeEach
+    public void setUp() {
+        tracker = new OverdueTrackerImpl(repository, 4);
+        ReflectionTestUtils.setField(tracker, "chunkSize", 2);
+    }
+
+    @Test
+    @DisplayName("Deve indicar o empréstimo no dia seguinte ao vencimento, uma única vez")
+    public void expireTest() {
+        // cenário
+        tracker.track(loan(1L, TODAY, null));
+        tracker.track(loan(2L, TODAY.plusDays(2), null));
+
+        // execução e verificação
+        assertThat(tracker.expire(TODAY)).isEmpty();
+        assertThat(tracker.expire(TODAY.plusDays(1))).containsExactly(1L);
+        assertThat(tracker.expire(TODAY.plusDays(1))).isEmpty();
+        assertThat(tracker.expire(TODAY.plusDays(5))).containsExactly(2L);
+    }
+
+    @Test
+    @DisplayName("Deve reagendar o empréstimo alterado e esquecer o devolvido")
+    public void trackChangesTest() {
+        // cenário
+        tracker.track(loan(1L, TODAY, null));
+        tracker.track(loan(2L, TODAY, null));
+        tracker.track(loan(1L, TODAY.plusDays(3), null));
+        tracker.track(loan(2L, TODAY, true));
+
+        // execução e verificação
+        assertThat(tracker.expire(TODAY.plusDays(1))).isEmpty();
+        assertThat(tracker.expire(TODAY.plusDays(4))).containsExactly(1L);
+    }
+
+    @Test
+    @DisplayName("Deve aguardar a volta da roda para vencimentos além do seu tamanho")
+    public void beyondWheelTest() {
+        // cenário
+        tracker.track(loan(1L, TODAY.plusDays(9), null));
+
+        // execução e verificação
+        assertThat(tracker.expire(TODAY.plusDays(6))).isEmpty();
+        assertThat(tracker.expire(TODAY.plusDays(9))).isEmpty();
+        assertThat(tracker.expire(TODAY.plusDays(30))).containsExactly(1L);
+    }
+
+    @Test
+    @DisplayName("Deve carregar os empréstimos abertos do banco ao iniciar")
+    public void hydrateTest() {
+        // cenário
+        Mockito.when(repository.findActiveDueAfter(Mockito.eq(0L), Mockito.any(Pageable.class)))
+                .thenReturn(Arrays.asList(loanDue(3L, TODAY.minusDays(2)), loanDue(5L, TODAY)));
+        Mockito.when(repository.findActiveDueAfter(Mockito.eq(5L), Mockito.any(Pageable.class)))
+                .thenReturn(Collections.singletonList(loanDue(8L, TODAY.plusDays(1))));
+
+        // execução
+        tracker.run(null);
+
+        // verificação
+        assertThat(tracker.expire(TODAY)).containsExactly(3L);
+        assertThat(tracker.expire(TODAY.plusDays(2))).containsExactlyInAnyOrder(5L, 8L);
+        Mockito.verify(repository, Mockito.never()).findActiveDueAfter(Mockito.eq(8L), Mockito.any(Pageable.class));
+    }
+
+    private static Loan loan(Long id, LocalDate dueDate, Boolean returned) {
+        return Loan.builder().id(id).dueDate(dueDate).returned(returned).build();
+    }
+
+    private static LoanRepository.LoanDue loanDue(Long id, LocalDate dueDate) {
+        return new LoanRepository.LoanDue() {
+            @Override
+            public Long getId() {
+                return id;
+            }
+
+            @Override
+            public LocalDate getDueDate() {
+                return dueDate;
+            }
+        };
+    }
+}
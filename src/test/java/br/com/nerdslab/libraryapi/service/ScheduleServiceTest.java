@@ -0,0 +1,138 @@
+package br.com.nerdslab.libraryapi.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.mockito.Mockito;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Collections;
+
+@ExtendWith(SpringExtension.class)
+@ActiveProfiles("test")
+public class ScheduleServiceTest {
+
+    private ScheduleService service;
+
+    @MockBean
+    private NotificationOutbox notificationOutbox;
+
+    @MockBean
+    private OverdueTracker overdueTracker;
+
+    @MockBean
+    private AvailabilityReconciler availabilityReconciler;
+
+    @MockBean
+    private AvailabilityIndex availabilityIndex;
+
+    @MockBean
+    private BookSearchIndex bookSearchIndex;
+
+    @MockBean
+    private JobLock jobLock;
+
+    @BeforeEach
+    public void setUp() {
+        service = new ScheduleService(
+                notificationOutbox, overdueTracker, availabilityReconciler, availabilityIndex, bookSearchIndex, jobLock);
+        ReflectionTestUtils.setField(service, "tickMs", 60_000L);
+    }
+
+    @Test
+    @DisplayName("Deve registrar os empréstimos atrasados antes de enviar os e-mails")
+    public void sendMailToLateLoansTest() {
+        // execução
+        service.sendMailToLateLoans();
+
+        // verificação
+        InOrder inOrder = Mockito.inOrder(notificationOutbox);
+        inOrder.verify(notificationOutbox).enqueueLateLoans();
+        inOrder.verify(notificationOutbox).relay();
+    }
+
+    @Test
+    @DisplayName("Deve apenas reenviar as notificações pendentes")
+    public void relayLateLoanMailsTest() {
+        // execução
+        service.relayLateLoanMails();
+
+        // verificação
+        Mockito.verify(notificationOutbox).relay();
+        Mockito.verify(notificationOutbox, Mockito.never()).enqueueLateLoans();
+    }
+
+    @Test
+    @DisplayName("Deve registrar e enviar os empréstimos que acabaram de vencer sob a concessão do job")
+    public void notifyOverdueLoansTest() {
+        // cenário
+        Mockito.when(overdueTracker.expire(LocalDate.now())).thenReturn(Arrays.asList(1L, 2L));
+        ArgumentCaptor<Runnable> task = ArgumentCaptor.forClass(Runnable.class);
+
+        // execução
+        service.notifyOverdueLoans();
+
+        // verificação
+        Mockito.verify(jobLock).runLocked(Mockito.eq("overdue-loans"),
+                Mockito.eq(Duration.ofMinutes(1)), Mockito.eq(Duration.ofSeconds(30)), task.capture());
+        Mockito.verifyNoInteractions(overdueTracker, notificationOutbox);
+        task.getValue().run();
+        InOrder inOrder = Mockito.inOrder(notificationOutbox);
+        inOrder.verify(notificationOutbox).enqueue(Arrays.asList(1L, 2L));
+        inOrder.verify(notificationOutbox).relay();
+    }
+
+    @Test
+    @DisplayName("Não deve acessar o outbox quando nenhum empréstimo vencer")
+    public void noOverdueLoansTest() {
+        // cenário
+        Mockito.when(overdueTracker.expire(LocalDate.now())).thenReturn(Collections.emptyList());
+
+        // execução
+        service.notifyOverdueLoans();
+
+        // verificação
+        ArgumentCaptor<Runnable> task = ArgumentCaptor.forClass(Runnable.class);
+        Mockito.verify(jobLock).runLocked(Mockito.eq("overdue-loans"),
+                Mockito.any(Duration.class), Mockito.any(Duration.class), task.capture());
+        task.getValue().run();
+        Mockito.verifyNoInteractions(notificationOutbox);
+    }
+
+    @Test
+    @DisplayName("Deve reconstruir a disponibilidade dos livros sob a concessão do job e depois o índice local")
+    public void reconcileAvailabilityTest() {
+        // cenário
+        ArgumentCaptor<Runnable> task = ArgumentCaptor.forClass(Runnable.class);
+
+        // execução
+        service.reconcileAvailability();
+
+        // verificação
+        Mockito.verify(jobLock).runLocked(Mockito.eq("book-availability"),
+                Mockito.any(Duration.class), Mockito.any(Duration.class), task.capture());
+        Mockito.verifyNoInteractions(availabilityReconciler);
+        Mockito.verify(availabilityIndex).rebuild();
+        task.getValue().run();
+        Mockito.verify(availabilityReconciler).reconcile();
+    }
+
+    @Test
+    @DisplayName("Deve recontar o catálogo do índice de busca")
+    public void refreshSearchCatalogSizeTest() {
+        // execução
+        service.refreshSearchCatalogSize();
+
+        // verificação
+        Mockito.verify(bookSearchIndex).refreshCatalogSize();
+    }
+}
@@ -0,0 +1,82 @@
+package br.com.nerdslab.libraryapi.service;
+
+import br.com.nerdslab.libraryapi.model.entity.Book;
+import br.com.nerdslab.libraryapi.model.entity.Loan;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDate;
+
+import static br.com.nerdslab.libraryapi.model.repository.BookRepositoryTest.createNewBook;
+import static org.assertj.core.api.Assertions.assertThat;
+
+@ExtendWith(SpringExtension.class)
+@ActiveProfiles("test")
+@DataJpaTest
+@Import(VersionBackfill.class)
+public class VersionBackfillTest {
+
+    @Autowired
+    private VersionBackfill backfill;
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @MockBean
+    private EmailService emailService;
+
+    @Test
+    @DisplayName("Deve preencher a versão dos livros e empréstimos antigos")
+    public void backfillTest() {
+        // cenário
+        ReflectionTestUtils.setField(backfill, "chunkSize", 2);
+        Book first = entityManager.persist(createNewBook("legacy-1"));
+        Book second = entityManager.persist(createNewBook("legacy-2"));
+        Book current = entityManager.persist(createNewBook("current"));
+        Loan loan = entityManager.persist(Loan.builder()
+                .book(first)
+                .customer("Fulano")
+                .loanDate(LocalDate.now())
+                .build());
+        entityManager.flush();
+        clearVersion("book", first.getId());
+        clearVersion("book", second.getId());
+        clearVersion("loan", loan.getId());
+        entityManager.clear();
+        entityManager.getEntityManager().getEntityManagerFactory().getCache().evictAll();
+
+        // execução
+        backfill.backfill();
+
+        // verificação
+        Book legacy = entityManager.find(Book.class, second.getId());
+        assertThat(legacy.getVersion()).isZero();
+        assertThat(legacy.getLastModified()).isNotNull();
+        assertThat(entityManager.find(Book.class, first.getId()).getVersion()).isZero();
+        assertThat(entityManager.find(Loan.class, loan.getId()).getVersion()).isZero();
+        assertThat(entityManager.find(Book.class, current.getId()).getVersion()).isZero();
+
+        legacy.setTitle("Atualizado");
+        entityManager.flush();
+        assertThat(legacy.getVersion()).isEqualTo(1);
+    }
+
+    /**
+     * Rows as stored before the columns existed.
+     */
+    private void clearVersion(String table, Long id) {
+        entityManager.getEntityManager()
+                .createNativeQuery(" update " + table + " set version = null, last_modified = null where id = :id ")
+                .setParameter("id", id)
+                .executeUpdate();
+    }
+}
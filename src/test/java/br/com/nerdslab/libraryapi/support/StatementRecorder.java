@@ -0,0 +1,228 @@
+package br.com.nerdslab.libraryapi.support;
+
+import org.springframework.beans.factory.config.BeanPostProcessor;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.fail;
+
+/**
+ * Records every statement executed through the application's data source: its SQL, the parameters bound
+ * to it and how long it took. Imported by a test, it wraps the {@link DataSource} bean; the test clears it
+ * before the code under test runs and asserts on what was recorded afterwards, so a query count
+ * regression, such as an N+1, fails the build. Once cleared, only the statements of the clearing thread
+ * are recorded, leaving out the application's background jobs.
+ */
+public class StatementRecorder implements BeanPostProcessor {
+
+    private final List<RecordedStatement> statements = Collections.synchronizedList(new ArrayList<>());
+
+    private DataSource target;
+
+    private volatile Thread recordedThread;
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) {
+        if (!(bean instanceof DataSource) || target != null) {
+            return bean;
+        }
+        target = (DataSource) bean;
+        return proxy(DataSource.class, target, (method, args, result) -> result instanceof Connection
+                ? proxy(Connection.class, (Connection) result, this::statement)
+                : result);
+    }
+
+    public void clear() {
+        recordedThread = Thread.currentThread();
+        statements.clear();
+    }
+
+    public List<RecordedStatement> statements() {
+        synchronized (statements) {
+            return new ArrayList<>(statements);
+        }
+    }
+
+    public void assertStatementCount(int expected) {
+        List<RecordedStatement> recorded = statements();
+        if (recorded.size() != expected) {
+            fail("expected " + expected + " statements but ran " + recorded.size() + describe(recorded));
+        }
+    }
+
+    public void assertAtMost(int max) {
+        List<RecordedStatement> recorded = statements();
+        if (recorded.size() > max) {
+            fail("expected at most " + max + " statements but ran " + recorded.size() + describe(recorded));
+        }
+    }
+
+    /**
+     * Runs {@code explain} for every recorded select, with the parameters it was run with, and fails on the
+     * first plan that scans a whole table instead of going through an index.
+     */
+    public void assertNoFullScans() {
+        for (RecordedStatement statement : statements()) {
+            if (!statement.getSql().trim().toLowerCase().startsWith("select")) {
+                continue;
+            }
+            String plan = explain(statement);
+            if (plan.contains("tableScan")) {
+                fail("full table scan in:\n  " + statement.getSql() + "\nplan:\n  " + plan);
+            }
+        }
+    }
+
+    /**
+     * Fails unless the plan of some recorded select goes through the given index.
+     */
+    public void assertIndexUsed(String index) {
+        List<String> plans = statements().stream()
+                .filter(statement -> statement.getSql().trim().toLowerCase().startsWith("select"))
+                .map(this::explain)
+                .collect(Collectors.toList());
+        if (plans.stream().noneMatch(plan -> plan.toLowerCase().contains(index.toLowerCase()))) {
+            fail("no plan uses " + index + ":\n  " + String.join("\n  ", plans));
+        }
+    }
+
+    private String explain(RecordedStatement statement) {
+        try (Connection connection = target.getConnection();
+             PreparedStatement explain = connection.prepareStatement("explain " + statement.getSql())) {
+            for (Map.Entry<Integer, Object> parameter : statement.getParameters().entrySet()) {
+                explain.setObject(parameter.getKey(), parameter.getValue());
+            }
+            try (ResultSet plan = explain.executeQuery()) {
+                StringBuilder text = new StringBuilder();
+                while (plan.next()) {
+                    text.append(plan.getString(1)).append('\n');
+                }
+                return text.toString();
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException("could not explain " + statement.getSql(), e);
+        }
+    }
+
+    private static String describe(List<RecordedStatement> recorded) {
+        return recorded.stream()
+                .map(RecordedStatement::toString)
+                .collect(Collectors.joining("\n  ", ":\n  ", ""));
+    }
+
+    /**
+     * Prepared statements are recorded with their SQL; plain ones with the SQL given on execution.
+     */
+    private Object statement(Method method, Object[] args, Object result) {
+        if (result instanceof CallableStatement) {
+            return recording(CallableStatement.class, (Statement) result, (String) args[0]);
+        }
+        if (result instanceof PreparedStatement) {
+            return recording(PreparedStatement.class, (Statement) result, (String) args[0]);
+        }
+        if (result instanceof Statement) {
+            return recording(Statement.class, (Statement) result, null);
+        }
+        return result;
+    }
+
+    private <S extends Statement> S recording(Class<S> type, Statement statement, String preparedSql) {
+        Map<Integer, Object> parameters = new TreeMap<>();
+        int[] binds = {0};
+        return type.cast(Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{type}, (proxy, method, args) -> {
+            String name = method.getName();
+            if (name.startsWith("set") && args != null && args.length >= 2 && args[0] instanceof Integer) {
+                parameters.put((Integer) args[0], name.equals("setNull") ? null : args[1]);
+                binds[0]++;
+            } else if (name.equals("clearParameters")) {
+                parameters.clear();
+            }
+            if (!name.startsWith("execute")) {
+                return invoke(method, statement, args);
+            }
+            String sql = preparedSql != null ? preparedSql : (String) args[0];
+            long start = System.nanoTime();
+            try {
+                return invoke(method, statement, args);
+            } finally {
+                Thread recorded = recordedThread;
+                if (recorded == null || recorded == Thread.currentThread()) {
+                    statements.add(new RecordedStatement(sql, binds[0], new TreeMap<>(parameters), System.nanoTime() - start));
+                }
+                binds[0] = 0;
+            }
+        }));
+    }
+
+    private interface AfterCall {
+        Object apply(Method method, Object[] args, Object result) throws Throwable;
+    }
+
+    private <T> T proxy(Class<T> type, T delegate, AfterCall after) {
+        return type.cast(Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{type},
+                (InvocationHandler) (proxy, method, args) -> after.apply(method, args, invoke(method, delegate, args))));
+    }
+
+    private static Object invoke(Method method, Object target, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    public static class RecordedStatement {
+
+        private final String sql;
+        private final int binds;
+        private final Map<Integer, Object> parameters;
+        private final long nanos;
+
+        RecordedStatement(String sql, int binds, Map<Integer, Object> parameters, long nanos) {
+            this.sql = sql;
+            this.binds = binds;
+            this.parameters = parameters;
+            this.nanos = nanos;
+        }
+
+        public String getSql() {
+            return sql;
+        }
+
+        /**
+         * Parameters bound since the previous execution, all the rows of a batch included.
+         */
+        public int getBinds() {
+            return binds;
+        }
+
+        public Map<Integer, Object> getParameters() {
+            return parameters;
+        }
+
+        public long getNanos() {
+            return nanos;
+        }
+
+        @Override
+        public String toString() {
+            return sql + " [" + binds + " binds, " + nanos / 1_000 + "us]";
+        }
+    }
+}